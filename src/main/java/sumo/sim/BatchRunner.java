@@ -0,0 +1,165 @@
+package sumo.sim;
+
+import sumo.sim.data.CSV;
+import sumo.sim.logic.Scenario;
+import sumo.sim.logic.ScenarioResult;
+import sumo.sim.logic.ScenarioRunner;
+import sumo.sim.logic.StepScheduler;
+import sumo.sim.logic.SumoMapManager;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs every combination of maps, vehicle counts and green phase factors as independent headless simulations in parallel.
+ * <p>
+ *     Every {@link Scenario} gets its own SUMO process on a free port and its own {@link sumo.sim.logic.WrapperController}
+ *     (see {@link ScenarioRunner}). The runs share nothing, so a fixed pool of workers (one per core by default)
+ *     works through the list. The {@link ScenarioResult} of every run is written as one row of a summary CSV,
+ *     followed by a row aggregated over all successful runs.
+ * </p>
+ * Usage: {@code BatchRunner [--maps <a,b,...>] [--vehicles <n,m,...>] [--green <f,g,...>] [--steps <n>] [--workers <n>]
+ * [--out <summary.csv>] [--trace-dir <dir>] [--every <n>] [--mode <as-fast-as-possible|fixed-rate|real-time-factor>]
+ * [--delay <ms>] [--factor <x>]}, the pacing options are the ones of {@link HeadlessMain}
+ */
+public class BatchRunner {
+
+    //Logger
+    private static final Logger logger = java.util.logging.Logger.getLogger(BatchRunner.class.getName());
+
+    /**
+     * Main class to start a batch of headless runs
+     * @param args see class description
+     */
+    public static void main(String[] args) throws Exception {
+        StarLogger.setupLogger();
+
+        String[] maps = {"Frankfurt"};
+        String[] vehicles = {"0"};
+        String[] green = {"1.0"};
+        int steps = 3600;
+        int workers = Runtime.getRuntime().availableProcessors(); // one SUMO process per core
+        String out = "star-batch.csv";
+        String traceDir = null; // per step CSV per scenario, none by default
+        int every = 10;
+        StepScheduler.Mode mode = StepScheduler.Mode.AS_FAST_AS_POSSIBLE;
+        int delay = 50;
+        double factor = 1.0;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--maps" -> maps = args[i + 1].split(",");
+                case "--vehicles" -> vehicles = args[i + 1].split(",");
+                case "--green" -> green = args[i + 1].split(",");
+                case "--steps" -> steps = Integer.parseInt(args[i + 1]);
+                case "--workers" -> workers = Math.max(1, Integer.parseInt(args[i + 1]));
+                case "--out" -> out = args[i + 1];
+                case "--trace-dir" -> traceDir = args[i + 1];
+                case "--every" -> every = Integer.parseInt(args[i + 1]);
+                case "--mode" -> mode = HeadlessMain.parseMode(args[i + 1]);
+                case "--delay" -> delay = Integer.parseInt(args[i + 1]);
+                case "--factor" -> factor = Double.parseDouble(args[i + 1]);
+                default -> {
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+                }
+            }
+        }
+
+        SumoMapManager mapManager = new SumoMapManager(); // imported before the workers start, only read afterwards
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String map : maps) {
+            String name = HeadlessMain.resolveMap(mapManager, map.trim());
+            for (String v : vehicles) {
+                for (String g : green) {
+                    int count = Integer.parseInt(v.trim());
+                    double scale = Double.parseDouble(g.trim());
+                    Scenario base = new Scenario(name, steps, count, scale, every, null, mode, delay, factor);
+                    scenarios.add(traceDir == null ? base
+                            : new Scenario(name, steps, count, scale, every, new File(traceDir, base.getName() + ".csv").getPath(),
+                                    mode, delay, factor));
+                }
+            }
+        }
+        if (traceDir != null) new File(traceDir).mkdirs();
+
+        List<ScenarioResult> results = run(scenarios, mapManager, Math.min(workers, scenarios.size()));
+
+        CSV csv = new CSV(out);
+        csv.addToCSV(new String[]{ScenarioResult.CSV_HEADER});
+        for (ScenarioResult r : results) csv.addToCSV(new String[]{r.toCsvRow()});
+        csv.addToCSV(new String[]{aggregate(results)});
+        csv.close();
+
+        long failed = results.stream().filter(r -> !r.isSuccess()).count();
+        System.out.printf(Locale.ROOT, "%d scenarios, %d failed, summary in %s%n", results.size(), failed, out);
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    /**
+     * Runs the scenarios on a fixed pool of worker threads
+     * @param scenarios what to run
+     * @param mapManager knows every map of the scenarios
+     * @param workers number of simulations at the same time
+     * @return one result per scenario, in the order of scenarios
+     */
+    public static List<ScenarioResult> run(List<Scenario> scenarios, SumoMapManager mapManager, int workers) throws InterruptedException {
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, workers), r -> {
+            Thread t = new Thread(r, "scenario-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<ScenarioRunner> runners = new ArrayList<>();
+            for (Scenario s : scenarios) runners.add(new ScenarioRunner(s, mapManager));
+            List<ScenarioResult> results = new ArrayList<>();
+            for (Future<ScenarioResult> f : pool.invokeAll(runners)) {
+                try {
+                    ScenarioResult r = f.get();
+                    results.add(r);
+                    System.out.printf(Locale.ROOT, "%s: %d steps, %.0f steps/s%s%n", r.getScenario(), r.getSteps(),
+                            r.getStepsPerSecond(), r.isSuccess() ? "" : ", failed: " + r.getError());
+                } catch (Exception e) { // runners report failures in their result, this is a bug
+                    logger.log(Level.SEVERE, "Scenario runner failed", e);
+                    throw new RuntimeException(e);
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return summary row over all successful results, means of the per scenario values
+     */
+    private static String aggregate(List<ScenarioResult> results) {
+        int n = 0;
+        long steps = 0;
+        double simTime = 0, wall = 0, speed = 0, stopped = 0, maxDensity = 0;
+        int peakActive = 0, peakQueued = 0;
+        for (ScenarioResult r : results) {
+            if (!r.isSuccess()) continue;
+            n++;
+            steps += r.getSteps();
+            simTime += r.getSimTime();
+            wall += r.getWallSeconds();
+            speed += r.getMeanSpeed();
+            stopped += r.getMeanStopped();
+            peakActive = Math.max(peakActive, r.getPeakActive());
+            peakQueued = Math.max(peakQueued, r.getPeakQueued());
+            maxDensity = Math.max(maxDensity, r.getMaxDensity());
+        }
+        int d = Math.max(1, n);
+        return String.format(Locale.ROOT, "ALL(%d),,,,%d,%.2f,%.3f,%.1f,%.4f,%d,%d,%.2f,%.4f,,",
+                n, steps, simTime / d, wall, wall > 0 ? steps / wall : 0, speed / d, peakActive, peakQueued, stopped / d, maxDensity);
+    }
+}
@@ -1,9 +1,11 @@
 package sumo.sim;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.ImageCursor;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
 import javafx.scene.image.Image;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
@@ -11,6 +13,7 @@ import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 import sumo.sim.logic.SumoMapManager;
 import sumo.sim.logic.WrapperController;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import java.io.IOException;
@@ -26,7 +29,10 @@ import java.util.Objects;
 //GUI application
 public class GuiApplication extends Application {
     private static GuiController guiController; // static because you dont instance guiCon -> javafx instances the controller
-    private WrapperController wrapper;
+    private final Object loadLock = new Object();
+    private WrapperController loaded; // set by the loader, guarded by loadLock
+    private boolean closing; // guarded by loadLock, read by the loader while SUMO starts
+    private Thread loader;
 
     //Logger
     private static final Logger logger = java.util.logging.Logger.getLogger(GuiApplication.class.getName());
@@ -81,15 +87,68 @@ public class GuiApplication extends Application {
         // Establishing connection between WrappCon and GuiCon
 
         SumoMapManager mapManager = new SumoMapManager(); // initializes Maps
-        wrapper = new WrapperController(guiController, mapManager);
-        guiController.initializeCon(wrapper);
         guiController.setStageAndManager(stage, mapManager);
+
+        // loading the map off the FX thread, so the window stays responsive and shows the progress
+        // only the parts needing the simulation are disabled, File -> Close and the drag handle stay usable
+        // closing the window meanwhile cancels the load, the loader then closes the SUMO it started
+        guiController.setLoading(true);
+        loader = new Thread(() -> {
+            try {
+                WrapperController w = new WrapperController(guiController, mapManager, this::isClosing);
+                synchronized (loadLock) {
+                    if (closing) { // loaded just after stop() looked
+                        w.terminate();
+                        return;
+                    }
+                    loaded = w;
+                }
+                Platform.runLater(() -> {
+                    guiController.initializeCon(w);
+                    guiController.setLoading(false);
+                });
+            } catch (Throwable t) { // SUMO missing, bad map...: without a simulation there is nothing to show
+                if (isClosing()) return; // cancelled by stop()
+                logger.log(Level.SEVERE, "Failed to load the map", t);
+                Platform.runLater(() -> {
+                    Alert alert = new Alert(Alert.AlertType.ERROR);
+                    alert.initOwner(stage);
+                    alert.setTitle("STAR");
+                    alert.setHeaderText("Failed to start the simulation");
+                    alert.setContentText(t.getMessage() != null ? t.getMessage() : t.getClass().getSimpleName());
+                    alert.showAndWait();
+                    Platform.exit(); // runs stop()
+                });
+            }
+        }, "map-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private boolean isClosing() {
+        synchronized (loadLock) {
+            return closing;
+        }
     }
 
+    /**
+     * Terminates the simulation, also one that is still loading, before the JVM exits
+     * <p>
+     *     {@link System#exit(int)} would leave a SUMO process that is still starting running,
+     *     so the loader is given some time to notice the cancel and close it.
+     * </p>
+     */
     @Override
     public void stop() throws Exception {
-        if (this.wrapper != null) {
-            this.wrapper.terminate();
+        WrapperController w;
+        synchronized (loadLock) {
+            closing = true;
+            w = loaded;
+        }
+        if (w != null) {
+            w.terminate();
+        } else if (loader != null) {
+            loader.join(15_000); // SUMO is closed at its next loading step
         }
         // JavaFx stop
         super.stop();
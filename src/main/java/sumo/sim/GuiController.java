@@ -25,6 +25,7 @@ import java.util.logging.Logger;
 
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
+import sumo.sim.logic.StepScheduler;
 import sumo.sim.logic.SumoMapManager;
 import sumo.sim.logic.WrapperController;
 import sumo.sim.objects.*;
@@ -69,14 +70,14 @@ public class GuiController {
     @FXML
     private Canvas staticMap, dynamicMap, tlCanvas;
     @FXML
-    private Label timeLabel, vehicleCount, notSelectedLabel1, notSelectedLabel2;
+    private Label timeLabel, vehicleCount, notSelectedLabel1, notSelectedLabel2, loadingLabel;
     @FXML
     private Slider playSlider;
     @FXML
     private ListView<String> stateText; // list displaying data as a string
     @FXML
     private ChoiceBox<String> typeSelector, routeSelector, stressTestMode, tlSelector, importMapSelector,
-            startStreetSelector, endStreetSelector, phaseIndexSelector, phaseSetSelector;
+            startStreetSelector, endStreetSelector, phaseIndexSelector, phaseSetSelector, paceSelect;
     @FXML
     private CheckBox buttonView, dataView , showDensityAnchor, showButtons, showRouteHighlighting,
             showTrafficLightIDs, densityHeatmap, toggleTrafficLightPermanently;
@@ -113,6 +114,13 @@ public class GuiController {
     private WrapperController wrapperController;
     private final int defaultDelay;
     private final int maxDelay;
+    private int delay; // ms, shown by delaySelect in "ms-delay"
+    private int realTimeFactor = 1; // shown by delaySelect in "x real time"
+
+    // paceSelect, unit of the value in delaySelect -> StepScheduler.Mode
+    private static final String PACE_DELAY = "ms-delay";
+    private static final String PACE_REAL_TIME = "x real time";
+    private static final String PACE_MAX = "max speed";
     private SumoMapManager mapManager;
     private int opacity;
 
@@ -134,6 +142,7 @@ public class GuiController {
     public GuiController() {
         this.defaultDelay = 50;
         this.maxDelay = 999;
+        this.delay = defaultDelay;
         panSen = 2;
         this.opacity = 0;
     }
@@ -164,6 +173,7 @@ public class GuiController {
      */
     public void initializeCon(WrapperController wrapperController) {
         this.wrapperController = wrapperController;
+        loadingLabel.setText(""); // loading finished
 
         // allows map switching
         map1select.setDisable(false);
@@ -171,6 +181,7 @@ public class GuiController {
 
         // initializing which is only possible after wrapper con was created
         initializeDropDowns();
+        updateDelay(); // spinner may have changed while the map was loading
 
         // rendering
         stopRenderer(); // stops animation timer if already active
@@ -186,6 +197,30 @@ public class GuiController {
         updateTLPhaseText();
     }
 
+    /**
+     * Disables everything that needs the simulation while the first map is loaded.
+     * The top menu with File -> Close and the drag handle stay enabled, the window has no frame of its own.
+     * @param loading true while there is no {@link WrapperController} yet
+     */
+    public void setLoading(boolean loading) {
+        mainButtonBox.setDisable(loading);
+        dataPane.setDisable(loading);
+        staticMap.setDisable(loading); // zooming needs the renderer
+        mapsMenuButton.setDisable(loading);
+        filterMenuButton.setDisable(loading);
+        viewMenuButton.setDisable(loading);
+        delaySelect.setDisable(loading || selectedStepMode() == StepScheduler.Mode.AS_FAST_AS_POSSIBLE);
+    }
+
+    /**
+     * Shows the progress of loading a map, called on the FX thread by {@link WrapperController}
+     * @param step what is currently loaded
+     * @param fraction 0 to 1
+     */
+    public void showLoadingProgress(String step, double fraction) {
+        loadingLabel.setText(String.format("%s %d%%", step, Math.round(fraction * 100)));
+    }
+
     public void initializeDropDowns() {
         if (wrapperController==null) return;
 
@@ -274,10 +309,16 @@ public class GuiController {
 
     private void setUpInputs() {
         SpinnerValueFactory<Integer> valueFactory = // manages spinner
-                new SpinnerValueFactory.IntegerSpinnerValueFactory(1, 999, defaultDelay); //min, max, start
+                new SpinnerValueFactory.IntegerSpinnerValueFactory(0, 999, defaultDelay); //min, max, start; 0 = as fast as possible
         delaySelect.setValueFactory(valueFactory);
+        delaySelect.valueProperty().addListener((obs, old, val) -> updateDelay()); // applied live, no polling per step
         delaySelect.setEditable(true); // no longer read only
 
+        // the spinner shows ms between steps or the real time factor, depending on the pace
+        paceSelect.setItems(FXCollections.observableArrayList(PACE_DELAY, PACE_REAL_TIME, PACE_MAX));
+        paceSelect.setValue(PACE_DELAY);
+        paceSelect.getSelectionModel().selectedItemProperty().addListener((obs, old, val) -> onPaceSelected());
+
         TextField delayTextField = delaySelect.getEditor(); // split spinner into its components -> text field
         delayTextField.setOnAction(e -> validateInput(delayTextField)); // action = enter, check input after "enter"
 
@@ -388,9 +429,9 @@ public class GuiController {
      *
      * <p>
      * This method ensures that the value entered by the user is a valid integer
-     * within the allowed range (1 to {@link #maxDelay}). If the value is higher
-     * than {@link #maxDelay}, it is set to {@link #maxDelay}. If it is zero or negative,
-     * it is set to 1. In case the input cannot be parsed as an integer,
+     * within the allowed range (0 to {@link #maxDelay}). If the value is higher
+     * than {@link #maxDelay}, it is set to {@link #maxDelay}. If it is negative,
+     * it is set to 0 (as fast as possible). In case the input cannot be parsed as an integer,
      * the value is reset to the default delay ({@link #defaultDelay}).
      * </p>
      *
@@ -407,8 +448,8 @@ public class GuiController {
             if (val > maxDelay) {
                 val = maxDelay;
             }
-            if (val <= 0) {
-                val = 1;
+            if (val < 0) {
+                val = 0;
             }
             delaySelect.getValueFactory().setValue(val); // setting value
             editor.setText(String.valueOf(val));
@@ -709,8 +750,10 @@ public class GuiController {
     protected void onDensityHeatmapToggle(){
         if(densityHeatmap.isSelected()) {
             sr.setViewDensityOn(true);
+            wrapperController.setDensityEnabled(true); // densities are only counted while visible
         }else{
             sr.setViewDensityOn(false);
+            wrapperController.setDensityEnabled(false);
         }
     }
 
@@ -764,7 +807,6 @@ public class GuiController {
      *
      * <p>
      *     <li> {@link #updateTime()} updates time based on sim time. </li>
-     *     <li> {@link #updateDelay()} updates delay. </li>
      *     <li> {@link #updateCountVeh()} updates how many cars are spawned. </li>
      *     <li> {@link #updateTLPhaseText()} updates TL menu phase text. </li>
      * </p>
@@ -772,19 +814,48 @@ public class GuiController {
     public void doSimStep() {
         // updates UI elements
         updateTime();
-        updateDelay();
         updateCountVeh();
         if (trafficLightMenu.isVisible()) { updateTLPhaseText(); }
         this.updateDataPane();
     }
 
     /**
-     * Updates selected value, if changed, and calls {@link WrapperController#changeDelay(int)} method to set value.
+     * Takes the value of the spinner as delay or real time factor, depending on {@link #paceSelect},
+     * and hands mode, delay and factor to the {@link WrapperController}. Called when the spinner or the pace changes.
      */
     public void updateDelay() {
-        if (delaySelect.getValue() != wrapperController.getDelay()) {
-            wrapperController.changeDelay(delaySelect.getValue());
+        Integer value = delaySelect.getValue();
+        StepScheduler.Mode mode = selectedStepMode();
+        if (value != null && mode == StepScheduler.Mode.FIXED_RATE) {
+            delay = value;
+        } else if (value != null && mode == StepScheduler.Mode.REAL_TIME_FACTOR) {
+            if (value < 1) { // 0 times real time would never step
+                delaySelect.getValueFactory().setValue(1); // calls this again
+                return;
+            }
+            realTimeFactor = value;
         }
+        if (wrapperController == null) return; // applied in initializeCon
+        wrapperController.changeDelay(delay);
+        wrapperController.setRealTimeFactor(realTimeFactor);
+        wrapperController.setStepMode(mode);
+    }
+
+    /**
+     * Shows the value of the selected pace in the spinner and applies the pace, "max speed" has no value
+     */
+    private void onPaceSelected() {
+        StepScheduler.Mode mode = selectedStepMode();
+        delaySelect.setDisable(mode == StepScheduler.Mode.AS_FAST_AS_POSSIBLE);
+        delaySelect.getValueFactory().setValue(mode == StepScheduler.Mode.REAL_TIME_FACTOR ? realTimeFactor : delay);
+        updateDelay();
+    }
+
+    private StepScheduler.Mode selectedStepMode() {
+        String pace = paceSelect.getValue();
+        if (PACE_REAL_TIME.equals(pace)) return StepScheduler.Mode.REAL_TIME_FACTOR;
+        if (PACE_MAX.equals(pace)) return StepScheduler.Mode.AS_FAST_AS_POSSIBLE;
+        return StepScheduler.Mode.FIXED_RATE;
     }
 
     private String rawSecondsToHMS(int seconds) {
@@ -823,20 +894,20 @@ public class GuiController {
     public void updateDataPane() {
 
         Locale.setDefault(Locale.US);
-        VehicleList vehicles = wrapperController.getVehicles();
+        FleetStatistics stats = wrapperController.getVehicles().getStatistics(); // one snapshot per update
         String currentTab = tabPane.getSelectionModel().getSelectedItem().getText();
 
         //Graphs Updates
         //must be outside of if, else it would only update if on graph tab
 
         //Get Graph Data
-        int activeCount = vehicles.getActiveCount();
+        int activeCount = stats.getActiveCount();
         int simTime = (int)wrapperController.getTime();
         int overallVehicleCount = wrapperController.getAllVehicleCount();
-        int queuedCount = vehicles.getQueuedCount();
+        int queuedCount = stats.getQueuedCount();
         int exitedCount = overallVehicleCount - activeCount - queuedCount;
-        int currentlyStopped = vehicles.getStoppedCount();
-        int stoppedTime = vehicles.getStoppedTime();
+        int currentlyStopped = stats.getStoppedCount();
+        int stoppedTime = stats.getStoppedTime();
 
         float stoppedPercentage = 0f;
         if (activeCount > 0) {
@@ -853,8 +924,8 @@ public class GuiController {
             this.DepartedVehicles.setText(Integer.toString(exitedCount));
             this.VehiclesCurrentlyStopped.setText(String.format("%d (%.2f%%)", currentlyStopped, stoppedPercentage));
             this.TotalTimeSpentStopped.setText(this.rawSecondsToHMS(stoppedTime));
-            this.MeanSpeed.setText(String.format("%.2f m/s", vehicles.getMeanSpeed()));
-            this.SpeedSD.setText(String.format("%.2f m/s", vehicles.getSpeedStdDev()));
+            this.MeanSpeed.setText(String.format("%.2f m/s", stats.getMeanSpeed()));
+            this.SpeedSD.setText(String.format("%.2f m/s", stats.getSpeedStdDev()));
         } else if (currentTab.equals("Selected")) {
             SelectableObject selectedObject = wrapperController.getSelectedObject();
             if(selectedObject != null) {
@@ -917,29 +988,10 @@ public class GuiController {
     }
 
     private SelectableObject findClickableObject(double worldX, double worldY) {
-        for(VehicleWrap v : wrapperController.getVehicles().getVehicles()) {
-            var pos = v.getPosition();
-            int radius = v.getSelectRadius();
-            double minX = pos.x - radius;
-            double maxX = pos.x + radius;
-            double minY = pos.y - radius;
-            double maxY = pos.y + radius;
-            if(worldX <= maxX &&  worldX >= minX && worldY <= maxY && worldY >= minY) {
-                return v;
-            }
-        }
-        for(TrafficLightWrap tl : wrapperController.getTrafficLights().getTrafficlights()) {
-            var pos = tl.getPosition();
-            int radius = tl.getSelectRadius();
-            double minX = pos.x - radius;
-            double maxX = pos.x + radius;
-            double minY = pos.y - radius;
-            double maxY = pos.y + radius;
-            if(worldX <= maxX &&  worldX >= minX && worldY <= maxY && worldY >= minY) {
-                return tl;
-            }
-        }
-        return null;
+        // vehicles first, both lookups use the spatial indices of the renderer
+        VehicleWrap v = sr.findVehicleAt(worldX, worldY);
+        if (v != null) return v;
+        return sr.findTrafficLightAt(worldX, worldY);
     }
 
     public void setupSelectionHandler() {
@@ -1083,7 +1135,7 @@ public class GuiController {
      */
     @FXML
     protected void closeApplication() {
-        renderLoop.stop(); // terminates Animation Timer
+        if (renderLoop != null) renderLoop.stop(); // terminates Animation Timer, not started while the first map loads
         Platform.exit(); // terminates JavaFX thread, runs "stop" method in GuiAppl
         //wrapperController.terminate(); // terminates sumo connection and wrapCon thread
     }
@@ -1158,7 +1210,8 @@ public class GuiController {
         gc = staticMap.getGraphicsContext2D();
 
         sr = new SimulationRenderer(staticMap,gc,wrapperController.getJunctions(),wrapperController.getStreets(),
-                wrapperController.getVehicles(), wrapperController.getTrafficLights(), wrapperController.getRoutes());
+                wrapperController.getVehicles(), wrapperController.getTrafficLights(), wrapperController.getRoutes(),
+                wrapperController.getFrames());
         renderUpdate();
     }
 
@@ -1297,10 +1350,8 @@ public class GuiController {
         String id = tlSelector.getValue();
         if (id == null) return;
         String phase = wrapperController.getPhaseAtIndex(id,index);
-        //List<String> controlledStreets = wrapperController.getControlledLanesAtIndex(tlSelector.getValue(), Integer.parseInt(phaseIndexSelector.getValue()));
-        String[] controlledStreets = wrapperController.getTLCurrentState(id);
         GraphicsContext gcTL = tlCanvas.getGraphicsContext2D();
-        sr.renderTrafficLightPreview(tlSelector.getValue(), controlledStreets, phase, tlCanvas, gcTL );
+        sr.renderTrafficLightPreview(id, phase, tlCanvas, gcTL );
     }
 
 }
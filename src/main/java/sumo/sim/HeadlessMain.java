@@ -0,0 +1,96 @@
+package sumo.sim;
+
+import sumo.sim.logic.Scenario;
+import sumo.sim.logic.ScenarioResult;
+import sumo.sim.logic.ScenarioRunner;
+import sumo.sim.logic.StepScheduler;
+import sumo.sim.logic.SumoMapManager;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * Runs a simulation without the JavaFX GUI, e.g. for scenario sweeps on machines without a display.
+ * <p>
+ *     The {@link sumo.sim.logic.WrapperController} is created without a {@link GuiController}, the steps are done on the
+ *     main thread, see {@link ScenarioRunner}. By default back to back as fast as SUMO answers, {@code --mode} paces them
+ *     like the GUI does (e.g. {@code --mode real-time-factor --factor 10}). The statistics of the
+ *     {@link sumo.sim.objects.VehicleList} and {@link sumo.sim.objects.StreetList} are written to a CSV file.
+ *     Several scenarios at once are run by {@link BatchRunner}.
+ * </p>
+ * Usage: {@code HeadlessMain [--map <name or .sumocfg>] [--steps <n>] [--every <n>] [--vehicles <n>] [--green <factor>] [--out <file.csv>]
+ * [--mode <as-fast-as-possible|fixed-rate|real-time-factor>] [--delay <ms>] [--factor <x>]}
+ */
+public class HeadlessMain {
+
+    /**
+     * Main class to start a headless run
+     * @param args see class description
+     */
+    public static void main(String[] args) {
+        StarLogger.setupLogger();
+
+        String map = "Frankfurt";
+        int steps = 3600;
+        int every = 1; // write every n-th step
+        int vehicles = 0; // spread over all routes at the start, like the stress test
+        double green = 1.0;
+        String out = "star-results.csv";
+        StepScheduler.Mode mode = StepScheduler.Mode.AS_FAST_AS_POSSIBLE;
+        int delay = 50; // fixed-rate
+        double factor = 1.0; // real-time-factor
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--map" -> map = args[i + 1];
+                case "--steps" -> steps = Integer.parseInt(args[i + 1]);
+                case "--every" -> every = Integer.parseInt(args[i + 1]);
+                case "--vehicles" -> vehicles = Integer.parseInt(args[i + 1]);
+                case "--green" -> green = Double.parseDouble(args[i + 1]);
+                case "--out" -> out = args[i + 1];
+                case "--mode" -> mode = parseMode(args[i + 1]);
+                case "--delay" -> delay = Integer.parseInt(args[i + 1]);
+                case "--factor" -> factor = Double.parseDouble(args[i + 1]);
+                default -> {
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+                }
+            }
+        }
+
+        SumoMapManager mapManager = new SumoMapManager();
+        map = resolveMap(mapManager, map);
+
+        ScenarioResult result = new ScenarioRunner(new Scenario(map, steps, vehicles, green, every, out, mode, delay, factor), mapManager).call();
+        System.out.printf(Locale.ROOT, "%d steps in %.1f s (%.0f steps/s), results in %s%n",
+                result.getSteps(), result.getWallSeconds(), result.getStepsPerSecond(), out);
+        System.exit(result.isSuccess() ? 0 : 1);
+    }
+
+    /**
+     * @param mode e.g. "real-time-factor" for {@link StepScheduler.Mode#REAL_TIME_FACTOR}
+     * @return the mode, exits if there is none with this name
+     */
+    static StepScheduler.Mode parseMode(String mode) {
+        try {
+            return StepScheduler.Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown mode " + mode + ", expected as-fast-as-possible, fixed-rate or real-time-factor");
+            System.exit(2);
+            return null;
+        }
+    }
+
+    /**
+     * @param map name of a map or path of a .sumocfg, which is imported
+     * @return name of the map in the mapManager, exits if the config cannot be imported
+     */
+    static String resolveMap(SumoMapManager mapManager, String map) {
+        if (!map.endsWith(".sumocfg")) return map;
+        String name = mapManager.importMap(new File(map));
+        if (name == null) {
+            System.err.println("Config or its .net/.rou files not found: " + map);
+            System.exit(2);
+        }
+        return name;
+    }
+}
@@ -0,0 +1,282 @@
+package sumo.sim;
+
+import sumo.sim.objects.JunctionList;
+import sumo.sim.objects.JunctionWrap;
+import sumo.sim.objects.LaneWrap;
+import sumo.sim.objects.Street;
+import sumo.sim.objects.StreetList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Simplified network geometry for low zoom levels, organized in tiles, used by {@link SimulationRenderer}.
+ * <p>
+ *     Level 0 is the full detail network drawn by the renderer itself. Every further level is used below a zoom threshold
+ *     ({@link MapTilePyramid#LEVEL_MAX_ZOOM}) and contains
+ * </p>
+ * <ul>
+ *     <li>one polyline per street instead of one per lane (merged lanes, drawn with the summed lane width)</li>
+ *     <li>street and junction shapes simplified with Douglas-Peucker, with a tolerance of about one pixel at that zoom</li>
+ *     <li>no dashed center lines, junctions smaller than the tolerance are dropped</li>
+ * </ul>
+ * <p>
+ *     Each level divides the network bounds ({@link JunctionList#getMinPosX()}, ...) into square tiles of
+ *     {@link MapTilePyramid#TILE_PIXELS} screen pixels at the level's threshold zoom, every element is stored
+ *     in the tile containing its center. While panning and zooming only the tiles overlapping the view are visited.
+ * </p>
+ * <p>
+ *     The pyramid is built on a background thread, until it is ready {@link MapTilePyramid#levelFor(double)} returns 0
+ *     and the full detail network is drawn.
+ * </p>
+ */
+class MapTilePyramid {
+
+    /**
+     * One simplified street or junction
+     */
+    static final class Shape {
+        final Street street; // null for junctions
+        final double[] x;
+        final double[] y;
+        final double width; // stroke width in m, 0 for junction polygons
+
+        Shape(Street street, double[] x, double[] y, double width) {
+            this.street = street;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+        }
+    }
+
+    /**
+     * Tiles of one level
+     */
+    private static final class TileLevel {
+        final double tileSize;
+        final int columns;
+        final int rows;
+        final List<Shape>[] tiles;
+        double maxHalfExtent; // largest half bounding box of a shape, tiles are searched with this margin
+
+        @SuppressWarnings("unchecked")
+        TileLevel(double tileSize, int columns, int rows) {
+            this.tileSize = tileSize;
+            this.columns = columns;
+            this.rows = rows;
+            this.tiles = new List[columns * rows];
+        }
+    }
+
+    static final double[] LEVEL_MAX_ZOOM = {Double.POSITIVE_INFINITY, 1.5, 0.75, 0.35}; // level k is used below LEVEL_MAX_ZOOM[k]
+    private static final double TILE_PIXELS = 512;
+    private static final double DEFAULT_LANE_WIDTH = 3.2;
+
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    private volatile TileLevel[] levels; // null until built, index 0 unused
+
+    //Logger
+    private static final Logger logger = java.util.logging.Logger.getLogger(MapTilePyramid.class.getName());
+
+    /**
+     * Starts building the pyramid in the background. Bounds of streets and junctions have to be calculated before.
+     * @param sl streets to simplify
+     * @param jl junctions to simplify, also provides the network bounds
+     */
+    MapTilePyramid(StreetList sl, JunctionList jl) {
+        this.minX = jl.getMinPosX();
+        this.minY = jl.getMinPosY();
+        this.maxX = jl.getMaxPosX();
+        this.maxY = jl.getMaxPosY();
+        Thread builder = new Thread(() -> {
+            try {
+                build(sl, jl);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Failed to build map tiles, rendering full detail", e);
+            }
+        }, "map-tiles");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /**
+     * @param zoom current zoom (pixels per m)
+     * @return level to draw, 0 for full detail (also while the pyramid is not ready)
+     */
+    int levelFor(double zoom) {
+        if (levels == null) return 0;
+        int level = 0;
+        for (int k = 1; k < LEVEL_MAX_ZOOM.length; k++) {
+            if (zoom < LEVEL_MAX_ZOOM[k]) level = k;
+        }
+        return level;
+    }
+
+    /**
+     * Passes every shape of a level in the tiles overlapping the given world bounds to the consumer.
+     * @param level level returned by {@link MapTilePyramid#levelFor(double)}, must be greater than 0
+     */
+    void forEachShape(int level, double minX, double maxX, double minY, double maxY, Consumer<Shape> consumer) {
+        TileLevel l = levels[level];
+        double margin = l.maxHalfExtent;
+        int c0 = column(l, minX - margin);
+        int c1 = column(l, maxX + margin);
+        int r0 = row(l, minY - margin);
+        int r1 = row(l, maxY + margin);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                List<Shape> tile = l.tiles[r * l.columns + c];
+                if (tile == null) continue;
+                for (Shape s : tile) consumer.accept(s);
+            }
+        }
+    }
+
+    private int column(TileLevel l, double x) {
+        return Math.clamp((int) Math.floor((x - minX) / l.tileSize), 0, l.columns - 1);
+    }
+
+    private int row(TileLevel l, double y) {
+        return Math.clamp((int) Math.floor((y - minY) / l.tileSize), 0, l.rows - 1);
+    }
+
+    private void build(StreetList sl, JunctionList jl) {
+        TileLevel[] built = new TileLevel[LEVEL_MAX_ZOOM.length];
+        for (int k = 1; k < LEVEL_MAX_ZOOM.length; k++) {
+            double tolerance = 1.0 / LEVEL_MAX_ZOOM[k]; // ~1 px at the highest zoom of this level
+            double tileSize = TILE_PIXELS / LEVEL_MAX_ZOOM[k];
+            int columns = Math.max(1, (int) Math.ceil((maxX - minX) / tileSize));
+            int rows = Math.max(1, (int) Math.ceil((maxY - minY) / tileSize));
+            TileLevel level = new TileLevel(tileSize, columns, rows);
+
+            for (Street s : sl.getStreets()) {
+                double[][] center = mergeLanes(s);
+                if (center == null) continue;
+                double width = 0;
+                for (LaneWrap l : s.getLanes()) width += l.getWidth() > 0 ? l.getWidth() : DEFAULT_LANE_WIDTH;
+                double[][] simple = simplify(center[0], center[1], tolerance);
+                add(level, new Shape(s, simple[0], simple[1], width), s.getMinX(), s.getMaxX(), s.getMinY(), s.getMaxY());
+            }
+            for (JunctionWrap jw : jl.getJunctions()) {
+                double[] jx = jw.getShapeX();
+                double[] jy = jw.getShapeY();
+                if (jx == null || jy == null || jx.length < 3) continue;
+                // sub-pixel junctions are covered by the streets
+                if (jw.getMaxX() - jw.getMinX() < tolerance && jw.getMaxY() - jw.getMinY() < tolerance) continue;
+                double[][] simple = simplify(jx, jy, tolerance);
+                if (simple[0].length < 3) continue;
+                add(level, new Shape(null, simple[0], simple[1], 0), jw.getMinX(), jw.getMaxX(), jw.getMinY(), jw.getMaxY());
+            }
+            built[k] = level;
+        }
+        levels = built;
+    }
+
+    private void add(TileLevel level, Shape shape, double minX, double maxX, double minY, double maxY) {
+        int c = column(level, (minX + maxX) / 2);
+        int r = row(level, (minY + maxY) / 2);
+        int index = r * level.columns + c;
+        if (level.tiles[index] == null) level.tiles[index] = new ArrayList<>();
+        level.tiles[index].add(shape);
+        level.maxHalfExtent = Math.max(level.maxHalfExtent, Math.max(maxX - minX, maxY - minY) / 2);
+    }
+
+    /**
+     * Center line of a street: mean of its lane shapes if they have the same number of points, otherwise its middle lane
+     * @return {x, y}, null if the street has no shape
+     */
+    private static double[][] mergeLanes(Street s) {
+        List<LaneWrap> lanes = s.getLanes();
+        if (lanes.isEmpty()) return null;
+        LaneWrap middle = lanes.get(lanes.size() / 2);
+        double[] mx = middle.getShapeX();
+        double[] my = middle.getShapeY();
+        if (mx == null || my == null || mx.length < 2) return null;
+
+        double[] x = new double[mx.length];
+        double[] y = new double[my.length];
+        for (LaneWrap l : lanes) {
+            double[] lx = l.getShapeX();
+            double[] ly = l.getShapeY();
+            if (lx == null || ly == null || lx.length != x.length) {
+                return new double[][]{mx, my};
+            }
+            for (int i = 0; i < x.length; i++) {
+                x[i] += lx[i];
+                y[i] += ly[i];
+            }
+        }
+        for (int i = 0; i < x.length; i++) {
+            x[i] /= lanes.size();
+            y[i] /= lanes.size();
+        }
+        return new double[][]{x, y};
+    }
+
+    /**
+     * Douglas-Peucker simplification, keeps the first and last point
+     * @param tolerance maximum distance of a removed point to the simplified line in m
+     * @return {x, y} of the kept points
+     */
+    static double[][] simplify(double[] x, double[] y, double tolerance) {
+        int n = x.length;
+        if (n <= 2) return new double[][]{x, y};
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        int[] stack = new int[2 * n];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        double tolSq = tolerance * tolerance;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double maxDist = -1;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                double d = segmentDistanceSq(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (d > maxDist) {
+                    maxDist = d;
+                    index = i;
+                }
+            }
+            if (index != -1 && maxDist > tolSq) {
+                keep[index] = true;
+                stack[top++] = first;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = last;
+            }
+        }
+        int count = 0;
+        for (boolean k : keep) if (k) count++;
+        double[] sx = new double[count];
+        double[] sy = new double[count];
+        int j = 0;
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                sx[j] = x[i];
+                sy[j] = y[i];
+                j++;
+            }
+        }
+        return new double[][]{sx, sy};
+    }
+
+    private static double segmentDistanceSq(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : Math.clamp(((px - ax) * dx + (py - ay) * dy) / lengthSq, 0, 1);
+        double cx = ax + t * dx - px;
+        double cy = ay + t * dy - py;
+        return cx * cx + cy * cy;
+    }
+}
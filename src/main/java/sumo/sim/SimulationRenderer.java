@@ -10,9 +10,14 @@ import javafx.geometry.VPos;
 import javafx.scene.text.Font;
 import javafx.scene.text.TextAlignment;
 import javafx.scene.paint.Paint;
+import sumo.sim.logic.SimulationFrame;
 import sumo.sim.objects.*;
+import sumo.sim.util.StaticRTree;
+import sumo.sim.util.TripleBuffer;
 
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -23,6 +28,14 @@ import java.util.logging.Logger;
  * and draws the static network (streets, junctions) as well as dynamic objects
  * (vehicles, traffic lights) frame by frame.
  * </p>
+ * <p>
+ * Dynamic objects are drawn from the latest {@link SimulationFrame} published by the simulation thread,
+ * never from the live lists, so every frame shows one consistent simulation step.
+ * </p>
+ * <p>
+ * Culling and selection use spatial indices: {@link StaticRTree}s for streets, junctions and traffic lights,
+ * and the vehicle grid of the {@link SimulationFrame}, so a frame only touches what is visible.
+ * </p>
  */
 public class SimulationRenderer {
 
@@ -49,15 +62,27 @@ public class SimulationRenderer {
     private final TrafficLightList tls;
     private final Font tlFont;
     private final RouteList rl;
+    private final TripleBuffer<SimulationFrame> frames;
+    private SimulationFrame frame; // latest complete step, taken once per render
     private String RouteID;
 
     private double viewMinX;
     private double viewMaxX;
     private double viewMinY;
     private double viewMaxY;
+    private final StaticLayerCache staticLayer = new StaticLayerCache();
+    private final MapTilePyramid tiles; // simplified network for low zoom
+    private final StaticRTree<Street> streetIndex;
+    private final StaticRTree<JunctionWrap> junctionIndex;
+    private final StaticRTree<Integer> lightIndex; // index in TrafficLightList#getTrafficlights()
+    private final ArrayList<Street> visibleStreets = new ArrayList<>(); // reused query results
+    private final ArrayList<JunctionWrap> visibleJunctions = new ArrayList<>();
+    private final ArrayList<Integer> visibleLights = new ArrayList<>();
+    private final VehicleBatcher vehicleBatcher = new VehicleBatcher(1.5, 3); // ? set length / width in vehicle class -> internal
 
     //Logger
     private static final Logger logger = java.util.logging.Logger.getLogger(SimulationRenderer.class.getName());
+    private static final int MAX_SELECT_RADIUS = 10; // search area for click selection, exact test uses the object's radius
 
     /**
      * Constructs a new SimulationRenderer called by {@link GuiController}
@@ -74,13 +99,15 @@ public class SimulationRenderer {
      * @param sl     The list of streets to render -> to get its associated lanes
      * @param vl     The list of vehicles to render.
      * @param tls    The list of traffic lights to render.
+     * @param frames Snapshots of the dynamic objects published by the simulation thread
      * <br>
      * <p>
      *      Initializes scale, zoom and rotation as well as CamX/Y which is centered by {@link JunctionList#getCenterPosX()}
      *
      * </p>
      */
-    public SimulationRenderer(Canvas canvas, GraphicsContext gc, JunctionList jl, StreetList sl, VehicleList vl, TrafficLightList tls, RouteList rl) {
+    public SimulationRenderer(Canvas canvas, GraphicsContext gc, JunctionList jl, StreetList sl, VehicleList vl, TrafficLightList tls, RouteList rl,
+                              TripleBuffer<SimulationFrame> frames) {
 
         this.showTrafficLightIDs = true;
         this.showRouteHighlighting = true;
@@ -96,6 +123,8 @@ public class SimulationRenderer {
         this.vl = vl;
         this.tls = tls;
         this.rl = rl;
+        this.frames = frames;
+        this.frame = frames.latest();
         this.camX = jl.getCenterPosX(); // center Position is max + min / 2
         this.camY = jl.getCenterPosY();
         double scaleX = (jl.getMaxPosX() - jl.getMinPosX()); // e.g : max 3, min -3 -> 3 -- 3 = 6 -> difference
@@ -111,6 +140,20 @@ public class SimulationRenderer {
         for (JunctionWrap j: jl.getJunctions()) {
             j.calculateBounds();
         }
+        this.tiles = new MapTilePyramid(sl, jl); // built in the background, full detail until ready
+
+        StaticRTree.Builder<Street> streets = new StaticRTree.Builder<>();
+        for (Street s : sl.getStreets()) {
+            if (s.getLanes().isEmpty()) continue; // no bounds
+            streets.add(s, s.getMinX(), s.getMaxX(), s.getMinY(), s.getMaxY());
+        }
+        this.streetIndex = streets.build();
+        StaticRTree.Builder<JunctionWrap> junctions = new StaticRTree.Builder<>();
+        for (JunctionWrap j : jl.getJunctions()) {
+            junctions.add(j, j.getMinX(), j.getMaxX(), j.getMinY(), j.getMaxY());
+        }
+        this.junctionIndex = junctions.build();
+        this.lightIndex = buildLightIndex();
         //scale = 1;
     }
 
@@ -123,7 +166,10 @@ public class SimulationRenderer {
      */
     public void initRender() throws RenderingException {
 
+        frame = frames.latest(); // newest published step, stays unchanged while drawing
         updateViewportBounds();
+        visibleLights.clear();
+        lightIndex.query(viewMinX, viewMaxX, viewMinY, viewMaxY, visibleLights::add);
         // area the size of canvas : frame -> canvas cords.
         // -> network: only do the following rendering with objects inside this restricting area;
         gc.setTransform(new Affine()); // transformation matrix, clears canvas
@@ -185,11 +231,12 @@ public class SimulationRenderer {
 
     private void renderSelectableObjects() {
         gc.setFill(Color.rgb(66,245,245,0.5));
-        for(VehicleWrap v: vl.getVehicles()) {
-            float width = v.getSelectRadius()*2;
-            gc.fillRect(v.getPosition().x-width/2, v.getPosition().y-width/2, width, width);
-        }
-        for(TrafficLightWrap tl : tls.getTrafficlights()) {
+        frame.forEachVehicleIn(viewMinX, viewMaxX, viewMinY, viewMaxY, i -> {
+            float width = frame.getVehicle(i).getSelectRadius()*2;
+            gc.fillRect(frame.getX(i)-width/2, frame.getY(i)-width/2, width, width);
+        });
+        for (int t : visibleLights) {
+            TrafficLightWrap tl = tls.getTrafficlights().get(t);
             float width = tl.getSelectRadius()*2;
             gc.fillRect(tl.getPosition().x-width/2, tl.getPosition().y-width/2, width, width);
         }
@@ -200,50 +247,60 @@ public class SimulationRenderer {
      * of dynamic elements (Vehicle / TL)
      *
      * <p>
-     *     Performs rendering by parsing raw shapes of objects onto gc via the given lists
+     *     The static elements are rasterized by {@link #renderStaticLayer(GraphicsContext, double, double, double, double)}
+     *     into a {@link StaticLayerCache} and only redrawn when zoom, rotation, canvas size or street coloring change,
+     *     or the camera leaves the cached margin. Dynamic elements are drawn on top every frame.
      * </p>
      */
     private void renderMap() throws RenderingException {
-        // map color
-        gc.setFill(Color.BLACK);
-        gc.setStroke(Color.BLACK);
-        gc.setLineWidth(scale);
+        // streets and junctions only change with the camera or the street coloring -> drawn from the cached image
+        Object style = staticStyle();
+        if (!staticLayer.draw(gc, currentTransform, zoom, rotation, map.getWidth(), map.getHeight(), style)) {
+            staticLayer.rebuild(zoom, rotation, camX, camY, map.getWidth(), map.getHeight(), style, this::renderStaticLayer);
+            staticLayer.draw(gc, currentTransform, zoom, rotation, map.getWidth(), map.getHeight(), style);
+        }
+        renderVehicle();
+        renderTrafficLight();
+        if (showDensityAnchor) renderDensityAnchor();
+        if (showTrafficLightIDs && seeTrafficLightIDs) displayTrafficLights();
+    }
 
-        List<String> currentRoute = (pickedARoute && RouteID != null) ? rl.getAllRoutes().get(RouteID) : null;
+    /**
+     * Everything the static layer depends on besides the camera, the cached image is redrawn if this changes
+     * @return key of the current street coloring
+     */
+    private Object staticStyle() {
+        String highlighted = (pickedARoute && RouteID != null && showRouteHighlighting) ? RouteID : null;
+        // only relevant while shown, changes only if a street gets another color (not with every step)
+        int densityVersion = viewDensityOn ? sl.getDensityEngine().getBucketVersion() : -1;
+        return Arrays.asList(highlighted, densityVersion, tiles.levelFor(zoom)); // level changes once the tiles are built
+    }
 
-        for (Street s : sl.getStreets()) {
-            String streetId = s.getId();
+    /**
+     * Draws streets (lanes, center lines) and junctions inside the given world bounds.
+     * Called by {@link StaticLayerCache} to rasterize the static layer, not every frame.
+     *
+     * @param g    GraphicsContext of the offscreen canvas, already transformed to world coordinates
+     */
+    private void renderStaticLayer(GraphicsContext g, double minX, double maxX, double minY, double maxY) {
+        // map color
+        g.setFill(Color.BLACK);
+        g.setStroke(Color.BLACK);
+        g.setLineWidth(scale);
 
-            if (currentRoute != null && !currentRoute.isEmpty() && showRouteHighlighting) {
+        List<String> currentRoute = (pickedARoute && RouteID != null) ? rl.getAllRoutes().get(RouteID) : null;
 
-                String startId = currentRoute.getFirst();
+        int level = tiles.levelFor(zoom);
+        if (level > 0) {
+            renderSimplifiedLayer(g, level, currentRoute, minX, maxX, minY, maxY);
+            return;
+        }
 
-                if (streetId.equals(startId)) {
-                    gc.setStroke(Color.GREEN);
-                }
-                else if (currentRoute.contains(streetId)) {
-                    gc.setStroke(Color.RED);
-                }
-                else {
-                    gc.setStroke(Color.BLACK);
-                }
-            // density rendering, colors lanes based on density
-            } else if (viewDensityOn){
-                if (s.getDensity() >=100.0){
-                    gc.setStroke(Color.rgb(163, 29, 45, 0.6));
-                } else if ((s.getDensity() < 100.0) && (s.getDensity() >= 50.0)) {
-                    gc.setStroke(Color.rgb(217, 126, 22, 0.6));
-                } else if ((s.getDensity() < 50.0) && (s.getDensity() >= 20.0)) {
-                    gc.setStroke(Color.rgb(231, 240, 58, 0.6));
-                }else {
-                    gc.setStroke(Color.rgb(96, 219, 68, 0.6));
-                }
-            } else {
-                gc.setStroke(Color.rgb(0,0,0,0.6)); // standard street color
-            }
+        visibleStreets.clear();
+        streetIndex.query(minX, maxX, minY, maxY, visibleStreets::add); // only streets overlapping the area
+        for (Street s : visibleStreets) {
+            g.setStroke(streetStroke(s, currentRoute));
             // stroke Polyline for lanes
-            if (s.getMaxX() < viewMinX || s.getMinX() > viewMaxX
-                    || s.getMaxY() < viewMinY || s.getMinY() > viewMaxY) continue;
             int countLanes = s.getLanes().size();
             int laneIndex = 0;
             double[] meanLaneX = null;
@@ -273,10 +330,10 @@ public class SimulationRenderer {
                 // Draws Lanes
                 if (rawX.length >= 2) {
                     // if there are at least 2 values in pointCount -> it's a line e.g. : [54.7, 38.75]
-                    gc.setFill(Color.BLACK);
-                    gc.setLineWidth(3.3); // should be adjustable
-                    gc.setLineDashes(null);
-                    gc.strokePolyline(rawX, rawY, rawX.length);
+                    g.setFill(Color.BLACK);
+                    g.setLineWidth(3.3); // should be adjustable
+                    g.setLineDashes(null);
+                    g.strokePolyline(rawX, rawY, rawX.length);
                 }
             }
 
@@ -289,13 +346,13 @@ public class SimulationRenderer {
                     meanLaneY[i] /= countLanes;
                 }
 
-                gc.setStroke(Color.WHITE);
-                gc.setLineWidth(0.25);
-                gc.setLineDashes(10d, 10d);
+                g.setStroke(Color.WHITE);
+                g.setLineWidth(0.25);
+                g.setLineDashes(10d, 10d);
 
                 // experimental , needs fixing
                 if (countLanes == 2) {
-                    gc.strokePolyline(meanLaneX, meanLaneY, meanLaneX.length); // middle line
+                    g.strokePolyline(meanLaneX, meanLaneY, meanLaneX.length); // middle line
                 } else if (countLanes % 2 == 0) {
 
                 } else if (countLanes % 2 == 1) {
@@ -304,12 +361,12 @@ public class SimulationRenderer {
             }
         }
 
-        for (JunctionWrap jw : jl.getJunctions()) { // every junction in junction list
-            if (jw.getMaxX() < viewMinX || jw.getMinX() > viewMaxX
-                    || jw.getMaxY() < viewMinY || jw.getMinY() > viewMaxY) continue;
-            gc.setFill(Color.BLACK);
-            gc.setStroke(Color.BLACK);
-            gc.setLineWidth(scale);
+        visibleJunctions.clear();
+        junctionIndex.query(minX, maxX, minY, maxY, visibleJunctions::add);
+        for (JunctionWrap jw : visibleJunctions) { // every junction overlapping the area
+            g.setFill(Color.BLACK);
+            g.setStroke(Color.BLACK);
+            g.setLineWidth(scale);
             double[] rawX = jw.getShapeX();
             double[] rawY = jw.getShapeY();
 
@@ -320,19 +377,69 @@ public class SimulationRenderer {
             // [54.7, 38.75] 2 -> line
             // > 3 elements in array : polygon
             if (rawX.length >= 3) {
-                gc.fillPolygon(rawX, rawY, rawX.length); // fills polygon
-                //gc.strokePolygon(rawX, rawY, rawX.length); // border
+                g.fillPolygon(rawX, rawY, rawX.length); // fills polygon
+                //g.strokePolygon(rawX, rawY, rawX.length); // border
             } else if (rawX.length == 2) {
-                //gc.strokeLine(screenX[0], screenY[0], screenX[1], screenY[1]);
+                //g.strokeLine(screenX[0], screenY[0], screenX[1], screenY[1]);
             } else {
-                gc.fillOval(rawX[0] - 2, rawY[0] - 2, 4, 4);
+                g.fillOval(rawX[0] - 2, rawY[0] - 2, 4, 4);
             }
 
         }
-        renderVehicle();
-        renderTrafficLight();
-        if (showDensityAnchor) renderDensityAnchor();
-        if (showTrafficLightIDs && seeTrafficLightIDs) displayTrafficLights();
+    }
+
+    /**
+     * Stroke color of a street: route highlighting, density coloring or the standard street color
+     * @param s street to draw
+     * @param currentRoute edges of the highlighted route, null if none
+     */
+    private Paint streetStroke(Street s, List<String> currentRoute) {
+        String streetId = s.getId();
+
+        if (currentRoute != null && !currentRoute.isEmpty() && showRouteHighlighting) {
+
+            String startId = currentRoute.getFirst();
+
+            if (streetId.equals(startId)) {
+                return Color.GREEN;
+            }
+            else if (currentRoute.contains(streetId)) {
+                return Color.RED;
+            }
+            else {
+                return Color.BLACK;
+            }
+        // density rendering, colors lanes based on density
+        } else if (viewDensityOn){
+            // buckets of the DensityEngine, a new bucket of any street redraws the static layer
+            switch (DensityEngine.bucket(s.getDensity())) {
+                case 3: return Color.rgb(163, 29, 45, 0.6);
+                case 2: return Color.rgb(217, 126, 22, 0.6);
+                case 1: return Color.rgb(231, 240, 58, 0.6);
+                default: return Color.rgb(96, 219, 68, 0.6);
+            }
+        } else {
+            return Color.rgb(0,0,0,0.6); // standard street color
+        }
+    }
+
+    /**
+     * Draws the simplified streets and junctions of a {@link MapTilePyramid} level (merged lanes, no center lines),
+     * only the tiles inside the given world bounds are visited.
+     */
+    private void renderSimplifiedLayer(GraphicsContext g, int level, List<String> currentRoute,
+                                       double minX, double maxX, double minY, double maxY) {
+        g.setLineDashes(null);
+        g.setFill(Color.BLACK);
+        tiles.forEachShape(level, minX, maxX, minY, maxY, shape -> {
+            if (shape.street == null) {
+                g.fillPolygon(shape.x, shape.y, shape.x.length); // junction
+            } else {
+                g.setStroke(streetStroke(shape.street, currentRoute));
+                g.setLineWidth(shape.width);
+                g.strokePolyline(shape.x, shape.y, shape.x.length);
+            }
+        });
     }
 
     private void updateViewportBounds() {
@@ -368,7 +475,8 @@ public class SimulationRenderer {
         gc.setTextBaseline(VPos.CENTER);
         gc.setFont(tlFont);
 
-        for (TrafficLightWrap tl : tls.getTrafficlights()) {
+        for (int t : visibleLights) {
+            TrafficLightWrap tl = tls.getTrafficlights().get(t);
             // save and restore context, as each traffic light gets a unique translation
             gc.save();
 
@@ -393,46 +501,86 @@ public class SimulationRenderer {
     }
 
     /**
-     * Iterates {@link VehicleList} and calls {@link #drawTriangleCar(VehicleWrap, double, double)} for every vehicle (still on the map)
+     * Adds every vehicle of the current {@link SimulationFrame} inside the view to the {@link VehicleBatcher}
+     * and draws them with one fill per color
      */
     private void renderVehicle() throws RenderingException {
-        for (VehicleWrap v : vl.getVehicles()) {
-            if (!v.exists() && v.getPosition() == null) continue;
-            // no need to translate coordinates since translation is already applied to graphics context
-            if (v.getPosition().getX() <= viewMinX || v.getPosition().getX() >= viewMaxX
-             || v.getPosition().getY() <= viewMinY || v.getPosition().getY() >= viewMaxY) continue;
-            this.drawTriangleCar(v, 1.5, 3); // ? set length / width in vehicle class -> internal
-        }
+        // no need to translate coordinates since translation is already applied to graphics context
+        frame.forEachVehicleIn(viewMinX, viewMaxX, viewMinY, viewMaxY,
+                i -> vehicleBatcher.add(frame.getX(i), frame.getY(i), frame.getAngle(i), frame.getColor(i)));
+        vehicleBatcher.flush(gc);
     }
 
     /**
-     * Helper method to draw a single vehicle as a triangle.
-     * Saves gc state and applies new state for rendering vehicle, restores gc state after wards
-     *
-     * @param v      The vehicle wrapper object.
-     * @param width  Half-width of the vehicle base.
-     * @param length Distance from center to front/back.
+     * Finds the vehicle whose selection box contains the world position, using the vehicle grid of the frame drawn last
+     * @return vehicle or null
      */
-    private void drawTriangleCar(VehicleWrap v, double width, double length) {
-        if (v.exists()) {
-            gc.save(); // saves previous gc state
-            gc.translate(v.getPosition().getX(), v.getPosition().getY()); // new offset
-            gc.rotate(-v.getAngle() + 180); // mirror along x -> rotate 180 degree
-            gc.setFill(v.getColor());
-            double[] xPoints = {0, -width, width}; // width relative to start point 0 , 0
-            double[] yPoints = {-length, length, length}; // set 3 Polygon point relative to car position
-            gc.fillPolygon(xPoints, yPoints, 3); // 3 ->  length
-
-            gc.restore(); // restores previous
+    public VehicleWrap findVehicleAt(double worldX, double worldY) {
+        SimulationFrame f = frame;
+        VehicleWrap[] found = new VehicleWrap[1];
+        f.forEachVehicleIn(worldX - MAX_SELECT_RADIUS, worldX + MAX_SELECT_RADIUS,
+                worldY - MAX_SELECT_RADIUS, worldY + MAX_SELECT_RADIUS, i -> {
+            VehicleWrap v = f.getVehicle(i);
+            int radius = v.getSelectRadius();
+            if (found[0] == null && Math.abs(f.getX(i) - worldX) <= radius && Math.abs(f.getY(i) - worldY) <= radius) {
+                found[0] = v;
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * Finds the traffic light whose selection box contains the world position
+     * @return traffic light or null
+     */
+    public TrafficLightWrap findTrafficLightAt(double worldX, double worldY) {
+        List<TrafficLightWrap> lights = tls.getTrafficlights();
+        TrafficLightWrap[] found = new TrafficLightWrap[1];
+        lightIndex.query(worldX, worldX, worldY, worldY, t -> {
+            TrafficLightWrap tl = lights.get(t);
+            Point2D.Double pos = tl.getPosition();
+            int radius = tl.getSelectRadius();
+            if (found[0] == null && Math.abs(pos.x - worldX) <= radius && Math.abs(pos.y - worldY) <= radius) {
+                found[0] = tl;
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * Indexes every traffic light with the bounds of its position (plus selection radius) and the ends of its controlled lanes,
+     * where the stop bars are drawn
+     */
+    private StaticRTree<Integer> buildLightIndex() {
+        StaticRTree.Builder<Integer> builder = new StaticRTree.Builder<>();
+        List<TrafficLightWrap> lights = tls.getTrafficlights();
+        for (int t = 0; t < lights.size(); t++) {
+            TrafficLightWrap tl = lights.get(t);
+            Point2D.Double pos = tl.getPosition();
+            double r = tl.getSelectRadius();
+            double minX = pos.x - r, maxX = pos.x + r, minY = pos.y - r, maxY = pos.y + r;
+            for (Street s : tl.getControlledStreets()) {
+                for (LaneWrap l : s.getLanes()) {
+                    double[] x = l.getShapeX();
+                    double[] y = l.getShapeY();
+                    if (x == null || x.length == 0) continue;
+                    minX = Math.min(minX, x[x.length - 1] - 1);
+                    maxX = Math.max(maxX, x[x.length - 1] + 1);
+                    minY = Math.min(minY, y[y.length - 1] - 1);
+                    maxY = Math.max(maxY, y[y.length - 1] + 1);
+                }
+            }
+            builder.add(t, minX, maxX, minY, maxY);
         }
+        return builder.build();
     }
 
     /**
      * draws a "density anchor" on the road network, this shows the average car position, which is helpful for visualizing congestion
      */
     private void renderDensityAnchor() {
-        Point2D.Double meanPos = vl.getMeanPosition();
-        if (meanPos != null) {
+        Point2D.Double meanPos = new Point2D.Double(frame.getMeanX(), frame.getMeanY());
+        if (!Double.isNaN(meanPos.x)) {
             double width = 5;
             // subtracting half the width to account for oval center
             gc.setFill(Color.rgb(220, 35, 15, 0.8));
@@ -450,72 +598,46 @@ public class SimulationRenderer {
      * <p>
      * It matches the current light state string (e.g., "GrGr") to the controlled lanes
      * by checking if the controlled lanes are equivalent to {@link LaneWrap} ids. If they are, rendering is performed
-     * and a line is drawn at the end of the lane with the corresponding color using {@link TrafficLightWrap#getCurrentState()}
+     * and a line is drawn at the end of the lane with the corresponding color using the state captured in the {@link SimulationFrame}
      * </p>
      */
     private void renderTrafficLight() {
-        for (TrafficLightWrap tl : tls.getTrafficlights()) {
-            //tl.setCurrentState();
-            String[] state = tl.getCurrentState(); // [R, lane_R ,y , lane_y , r, lane_r ] format
-            if (state == null) continue; // protection
-
-            Color lightColor;
-            gc.setLineWidth(2.0);
-
-            for (Street controlledStreet : tl.getControlledStreets()) {
-                for (LaneWrap l : controlledStreet.getLanes()) { // lanes of streets , maybe performance hashmap
-                    for (int j = 0; j < state.length; j += 2) {
-                        if (state[j + 1] == null) continue;
-                        if (state[j + 1].equals(l.getLaneID())) { //  maybe performance hashmap
-                            switch (state[j]) { // if state like "g" equals...
-                                case "G", "g" -> lightColor = Color.GREEN;
-                                case "y" -> lightColor = Color.YELLOW;
-                                case "r" -> lightColor = Color.RED;
-                                default -> lightColor = Color.GRAY;
-                            }
-                            gc.setStroke(lightColor);
-                            break; // lane found
-                        }
-                    }
-
-                    double[] rawX = l.getShapeX();
-                    double[] rawY = l.getShapeY();
-
-                    double endX = rawX[rawX.length - 1]; // 3
-                    double endY = rawY[rawX.length - 1]; // 2
-
-                    double prevX = rawX[rawX.length - 2]; // 2
-                    double prevY = rawY[rawX.length - 2]; // 1
-
-                    //(P_prev -> P_end) direction vector (target-start)
-                    double dx = endX - prevX; // 1
-                    double dy = endY - prevY; // 1
-
-                    // normalize length to 1 , because value can be really high
-                    double length = Math.sqrt(dx * dx + dy * dy); // 1+1=2
-
-                    double ndx = dx / length;
-                    double ndy = dy / length; // 0.5
-                    // length of vector is now exactly 1 , can change size here?
-
-                    double perpX = -ndy; // rotates 90 degree to the left when negating x and switching x and y
-                    double perpY = ndx;
-
-                    double halfWidth = 2.0 / 2.0; // pre-determined -> should adjust with lane width
-
-                    double lineX1 = endX + (perpX * halfWidth); // line X2/Y2 <---"-"-*-"+"---> lineX1/Y1 , (* = endpoint)
-                    double lineY1 = endY + (perpY * halfWidth);
-
-                    double lineX2 = endX - (perpX * halfWidth);
-                    double lineY2 = endY - (perpY * halfWidth);
-
-                    gc.strokeLine(lineX1, lineY1, lineX2, lineY2);
+        List<TrafficLightWrap> lights = tls.getTrafficlights();
+        gc.setLineWidth(2.0);
+        Color current = null;
+        for (int t : visibleLights) {
+            TrafficLightWrap tl = lights.get(t);
+            String state = frame.getTlState(t); // e.g. "GrGr", one char per signal index
+            if (state == null || state.isEmpty()) continue; // protection
+
+            int[] laneSignal = tl.getLaneSignals();
+            double[] bars = tl.getStopBars(); // x1, y1, x2, y2 per lane
+            for (int k = 0; k < laneSignal.length; k++) {
+                int sig = laneSignal[k];
+                if (sig < 0 || sig >= state.length()) continue; // lane not controlled by a signal
+                Color lightColor = signalColor(state.charAt(sig));
+                if (lightColor != current) { // state changes only between groups of lanes
+                    gc.setStroke(lightColor);
+                    current = lightColor;
                 }
+                gc.strokeLine(bars[k * 4], bars[k * 4 + 1], bars[k * 4 + 2], bars[k * 4 + 3]);
             }
-
         }
     }
 
+    /**
+     * @param signal char of a SUMO red-yellow-green state
+     * @return color of the stop bar
+     */
+    private static Color signalColor(char signal) {
+        return switch (signal) {
+            case 'G', 'g' -> Color.GREEN;
+            case 'y' -> Color.YELLOW;
+            case 'r' -> Color.RED;
+            default -> Color.GRAY;
+        };
+    }
+
     /**
      * Is called by {@link GuiController#mapPan()}
      * @param x
@@ -543,17 +665,9 @@ public class SimulationRenderer {
         }
     }
 
-    public void renderTrafficLightPreview(String id, String[] streets, String phase, Canvas canvas, GraphicsContext gcTL) {
+    public void renderTrafficLightPreview(String id, String phase, Canvas canvas, GraphicsContext gcTL) {
         TrafficLightWrap tl = tls.getTL(id);
-        if (tl == null) return;
-
-        // filter irrelevant information of streets array
-        String[] streetsOnly = new String[streets.length/2];
-        int j=1;
-        for  (int i = 0; i < streetsOnly.length; i++) {
-            streetsOnly[i] = streets[j];
-            j+=2;
-        }
+        if (tl == null || phase == null) return;
 
         gcTL.save();
         gcTL.setFill(Color.GRAY);
@@ -581,69 +695,24 @@ public class SimulationRenderer {
             }
         }
 
-        // render streets
-        Color colorTL;
-        gcTL.setLineWidth(3.5);
-
-        for (Street controlledStreet : tl.getControlledStreets()) {
-            for (LaneWrap l : controlledStreet.getLanes()) {
-                for (int i = 0; i < streetsOnly.length; i++) {
-                    if (streetsOnly[i] == null) continue;
-                    if (streetsOnly[i].equals(l.getLaneID())) { //  maybe performance hashmap
-                        double[] rawX = l.getShapeX();
-                        double[] rawY = l.getShapeY();
-                        gcTL.setStroke(Color.DARKGRAY);
-                        gcTL.strokePolyline(rawX, rawY, rawX.length);
-                        switch (""+phase.charAt(i)) { // if state like "g" equals...
-                            case "G", "g" -> colorTL = Color.GREEN;
-                            case "y" -> colorTL = Color.YELLOW;
-                            case "r" -> colorTL = Color.RED;
-                            default -> colorTL = Color.GRAY;
-                        }
-                        gcTL.setStroke(colorTL);
-                        gcTL.setLineWidth(2.5);
-                        break;
-                    }
-
-                }
-                // render TL
-                double[] rawX = l.getShapeX();
-                double[] rawY = l.getShapeY();
-
-                double endX = rawX[rawX.length - 1]; // 3
-                double endY = rawY[rawX.length - 1]; // 2
-
-                double prevX = rawX[rawX.length - 2]; // 2
-                double prevY = rawY[rawX.length - 2]; // 1
-
-                //(P_prev -> P_end) direction vector (target-start)
-                double dx = endX - prevX; // 1
-                double dy = endY - prevY; // 1
-
-                // normalize length to 1 , because value can be really high
-                double length = Math.sqrt(dx * dx + dy * dy); // 1+1=2
-
-                double ndx = dx / length;
-                double ndy = dy / length; // 0.5
-                // length of vector is now exactly 1 , can change size here?
-
-                double perpX = -ndy; // rotates 90 degree to the left when negating x and switching x and y
-                double perpY = ndx;
-
-                double halfWidth = 2.0 / 2.0; // pre-determined -> should adjust with lane width
-
-                double lineX1 = endX + (perpX * halfWidth); // line X2/Y2 <---"-"-*-"+"---> lineX1/Y1 , (* = endpoint)
-                double lineY1 = endY + (perpY * halfWidth);
-
-                double lineX2 = endX - (perpX * halfWidth);
-                double lineY2 = endY - (perpY * halfWidth);
-
-                gcTL.strokeLine(lineX1, lineY1, lineX2, lineY2);
-            }
-
+        // render controlled lanes and their stop bars
+        LaneWrap[] lanes = tl.getSignalLanes();
+        int[] laneSignal = tl.getLaneSignals();
+        double[] bars = tl.getStopBars();
+        for (int k = 0; k < lanes.length; k++) {
+            int sig = laneSignal[k];
+            if (sig < 0 || sig >= phase.length()) continue;
+            double[] rawX = lanes[k].getShapeX();
+            double[] rawY = lanes[k].getShapeY();
+            gcTL.setLineWidth(3.5);
+            gcTL.setStroke(Color.DARKGRAY);
+            gcTL.strokePolyline(rawX, rawY, rawX.length);
+
+            gcTL.setLineWidth(2.5);
+            gcTL.setStroke(signalColor(phase.charAt(sig)));
+            gcTL.strokeLine(bars[k * 4], bars[k * 4 + 1], bars[k * 4 + 2], bars[k * 4 + 3]);
         }
 
-
         gcTL.restore();
     }
 
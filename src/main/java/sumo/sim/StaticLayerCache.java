@@ -0,0 +1,122 @@
+package sumo.sim;
+
+import javafx.geometry.Point2D;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Affine;
+
+import java.util.Objects;
+
+/**
+ * Offscreen image of the static network layer (streets and junctions) used by {@link SimulationRenderer}.
+ * <p>
+ *     The network is drawn once into an offscreen {@link Canvas} that is larger than the view by {@link StaticLayerCache#MARGIN}
+ *     on every side and then copied into a {@link WritableImage}. Every frame only this image is drawn,
+ *     shifted by the camera movement since it was created. The image is rebuilt when zoom, rotation,
+ *     canvas size or the style (route highlighting, densities) change, or when the camera was panned beyond the margin.
+ * </p>
+ */
+class StaticLayerCache {
+
+    /**
+     * Draws the static elements inside the given world bounds onto an already transformed GraphicsContext
+     */
+    interface Painter {
+        void paint(GraphicsContext g, double minX, double maxX, double minY, double maxY);
+    }
+
+    private static final double MARGIN = 0.25; // part of the view size cached on every side for panning
+
+    private final Canvas offscreen = new Canvas();
+    private final SnapshotParameters params = new SnapshotParameters();
+    private final Affine transform = new Affine();
+    private final Affine identity = new Affine();
+    private WritableImage image;
+
+    // key of the cached image
+    private boolean valid;
+    private double zoom;
+    private double rotation;
+    private double camX;
+    private double camY;
+    private double width;
+    private double height;
+    private Object style;
+
+    StaticLayerCache() {
+        params.setFill(Color.TRANSPARENT);
+    }
+
+    /**
+     * Draws the cached image if it still matches the view.
+     *
+     * @param gc   GraphicsContext of the visible canvas, its transform is restored to {@code view}
+     * @param view current camera transformation (world -> canvas)
+     * @return false if the cache has to be rebuilt first
+     */
+    boolean draw(GraphicsContext gc, Affine view, double zoom, double rotation, double width, double height, Object style) {
+        if (!valid || image == null || zoom != this.zoom || rotation != this.rotation
+                || width != this.width || height != this.height || !Objects.equals(style, this.style)) {
+            return false;
+        }
+        // where the cached camera center is now, the offset is the panning since the image was made
+        Point2D center = view.transform(camX, camY);
+        double offsetX = center.getX() - width / 2;
+        double offsetY = center.getY() - height / 2;
+        if (Math.abs(offsetX) > width * MARGIN || Math.abs(offsetY) > height * MARGIN) {
+            return false;
+        }
+        gc.setTransform(identity);
+        gc.drawImage(image, center.getX() - image.getWidth() / 2, center.getY() - image.getHeight() / 2);
+        gc.setTransform(view);
+        return true;
+    }
+
+    /**
+     * Rasterizes the static layer around the current camera.
+     *
+     * @param painter draws the streets and junctions
+     */
+    void rebuild(double zoom, double rotation, double camX, double camY, double width, double height, Object style, Painter painter) {
+        double imageWidth = Math.ceil(width * (1 + 2 * MARGIN));
+        double imageHeight = Math.ceil(height * (1 + 2 * MARGIN));
+        if (imageWidth < 1 || imageHeight < 1) {
+            valid = false;
+            return;
+        }
+        offscreen.setWidth(imageWidth);
+        offscreen.setHeight(imageHeight);
+        GraphicsContext g = offscreen.getGraphicsContext2D();
+        g.setTransform(identity);
+        g.clearRect(0, 0, imageWidth, imageHeight);
+
+        // same transformation as SimulationRenderer#transform(), centered on the larger canvas
+        transform.setToIdentity();
+        transform.appendTranslation(imageWidth / 2, imageHeight / 2);
+        transform.appendRotation(rotation);
+        transform.appendScale(zoom, -zoom);
+        transform.appendTranslation(-camX, -camY);
+        g.setTransform(transform);
+
+        // covers the rotated image as well
+        double halfWorld = Math.hypot(imageWidth, imageHeight) / 2 / zoom;
+        painter.paint(g, camX - halfWorld, camX + halfWorld, camY - halfWorld, camY + halfWorld);
+
+        if (image == null || image.getWidth() != imageWidth || image.getHeight() != imageHeight) {
+            image = new WritableImage((int) imageWidth, (int) imageHeight);
+        }
+        image = offscreen.snapshot(params, image);
+
+        this.zoom = zoom;
+        this.rotation = rotation;
+        this.camX = camX;
+        this.camY = camY;
+        this.width = width;
+        this.height = height;
+        this.style = style;
+        this.valid = true;
+    }
+}
@@ -0,0 +1,102 @@
+package sumo.sim;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects vehicle triangles per color and draws every color group as one filled path, used by {@link SimulationRenderer}.
+ * <p>
+ *     The vertices are rotated and translated here instead of changing the transformation of the GraphicsContext per vehicle,
+ *     so there is no save/restore, no transform change and only one fill per color each frame.
+ *     The vertex buffers are kept between frames and only grow.
+ * </p>
+ */
+class VehicleBatcher {
+
+    /**
+     * Triangles of one color
+     */
+    private static final class Batch {
+        final Color color;
+        double[] vertices = new double[6 * 64]; // x0, y0, x1, y1, x2, y2 per triangle
+        int count; // triangles
+
+        Batch(Color color) {
+            this.color = color;
+        }
+    }
+
+    private final double width; // half-width of the vehicle base
+    private final double length; // distance from center to front/back
+    private final Map<Color, Batch> batches = new HashMap<>(); // kept between frames
+    private final ArrayList<Batch> used = new ArrayList<>(); // batches with triangles in the current frame
+
+    /**
+     * @param width  Half-width of the vehicle base.
+     * @param length Distance from center to front/back.
+     */
+    VehicleBatcher(double width, double length) {
+        this.width = width;
+        this.length = length;
+    }
+
+    /**
+     * Adds one vehicle triangle, same shape as before: tip at (0, -length), base at (+-width, length),
+     * rotated by {@code -angle + 180} degrees (mirrored along x) and moved to the vehicle position.
+     * @param x     vehicle position
+     * @param y     vehicle position
+     * @param angle SUMO angle in degrees
+     * @param color fill color
+     */
+    void add(double x, double y, double angle, Color color) {
+        if (color == null) color = Color.BLACK;
+        Batch b = batches.get(color);
+        if (b == null) {
+            b = new Batch(color);
+            batches.put(color, b);
+        }
+        if (b.count == 0) used.add(b);
+        int o = b.count * 6;
+        if (o + 6 > b.vertices.length) b.vertices = Arrays.copyOf(b.vertices, b.vertices.length * 2);
+
+        double rad = Math.toRadians(-angle + 180);
+        double cos = Math.cos(rad);
+        double sin = Math.sin(rad);
+        double[] v = b.vertices;
+        // tip (0, -length)
+        v[o] = x + length * sin;
+        v[o + 1] = y - length * cos;
+        // base (-width, length) and (width, length)
+        v[o + 2] = x - width * cos - length * sin;
+        v[o + 3] = y - width * sin + length * cos;
+        v[o + 4] = x + width * cos - length * sin;
+        v[o + 5] = y + width * sin + length * cos;
+        b.count++;
+    }
+
+    /**
+     * Fills all collected triangles, one path per color, and clears the batches for the next frame
+     * @param gc GraphicsContext already transformed to world coordinates
+     */
+    void flush(GraphicsContext gc) {
+        for (Batch b : used) {
+            gc.setFill(b.color);
+            gc.beginPath();
+            double[] v = b.vertices;
+            for (int o = 0; o < b.count * 6; o += 6) {
+                gc.moveTo(v[o], v[o + 1]);
+                gc.lineTo(v[o + 2], v[o + 3]);
+                gc.lineTo(v[o + 4], v[o + 5]);
+                gc.closePath();
+            }
+            gc.fill();
+            b.count = 0;
+        }
+        used.clear();
+    }
+}
@@ -0,0 +1,257 @@
+package sumo.sim.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Binary cache of a {@link NetworkModel}, stored beside the {@code .sumocfg} as {@code <net file>.starcache}.
+ *
+ * <p>
+ *     Reopening a map reads the cache via memory-mapped I/O instead of parsing the {@code .net.xml} again.
+ *     The cache is keyed by size and modification time of the net file, a changed net file is parsed and the cache rewritten.
+ * </p>
+ * <p>
+ *     Layout (big endian): header (magic, version, net size, net mtime), string table (every ID once),
+ *     then edges with lanes, junctions, traffic light programs and connections.
+ *     IDs are stored as indices into the string table (-1 for null), shapes as a point count followed by the
+ *     packed x and y doubles.
+ * </p>
+ */
+public final class NetworkCache {
+    private static final int MAGIC = 0x53544152; // "STAR"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8; // magic, version, net size, net mtime
+
+    //Logger
+    private static final Logger logger = java.util.logging.Logger.getLogger(NetworkCache.class.getName());
+
+    private NetworkCache() { }
+
+    /**
+     * @param configPath the {@code .sumocfg} of the map
+     * @param netPath the {@code .net.xml} of the map
+     * @return path of the cache file beside the config
+     */
+    public static Path pathFor(File configPath, File netPath) {
+        File dir = configPath.getAbsoluteFile().getParentFile();
+        return new File(dir, netPath.getName() + ".starcache").toPath();
+    }
+
+    /**
+     * Reads the cached model if it was written for the current version of the net file
+     * @param cachePath cache file
+     * @param netFile the {@code .net.xml} the cache was written for
+     * @return the model, null if there is no up-to-date cache
+     */
+    public static NetworkModel read(Path cachePath, File netFile) {
+        if (!Files.isRegularFile(cachePath)) return null;
+        try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+            // header checked with a plain read: an outdated cache is never mapped, so write() can replace it right away
+            // (a mapping stays open until the buffer is garbage collected, on Windows the file cannot be replaced meanwhile)
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) { }
+            if (header.hasRemaining()) return null; // too short
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) return null;
+            if (header.getLong() != netFile.length() || header.getLong() != netFile.lastModified()) return null; // outdated
+
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, channel.size() - HEADER_SIZE);
+
+            String[] strings = new String[buf.getInt()];
+            byte[] bytes = new byte[64];
+            for (int i = 0; i < strings.length; i++) {
+                int len = buf.getInt();
+                if (bytes.length < len) bytes = new byte[len];
+                buf.get(bytes, 0, len);
+                strings[i] = new String(bytes, 0, len, StandardCharsets.UTF_8);
+            }
+
+            NetworkModel.Builder b = NetworkModel.builder();
+            for (int e = buf.getInt(); e > 0; e--) {
+                NetworkModel.Edge edge = b.addEdge(str(strings, buf), str(strings, buf), str(strings, buf));
+                for (int l = buf.getInt(); l > 0; l--) {
+                    String id = str(strings, buf);
+                    double length = buf.getDouble();
+                    double width = buf.getDouble();
+                    double[][] xy = readShape(buf);
+                    b.addLane(edge, new NetworkModel.Lane(id, xy[0], xy[1], length, width));
+                }
+            }
+            for (int j = buf.getInt(); j > 0; j--) {
+                String id = str(strings, buf);
+                String type = str(strings, buf);
+                double x = buf.getDouble();
+                double y = buf.getDouble();
+                String[] inc = new String[buf.getInt()];
+                for (int i = 0; i < inc.length; i++) inc[i] = str(strings, buf);
+                double[][] xy = readShape(buf);
+                b.addJunction(new NetworkModel.Junction(id, type, x, y, inc, xy[0], xy[1]));
+            }
+            for (int t = buf.getInt(); t > 0; t--) {
+                NetworkModel.TlLogic logic = b.addTlLogic(str(strings, buf), str(strings, buf), str(strings, buf), buf.getDouble());
+                for (int p = buf.getInt(); p > 0; p--) {
+                    double duration = buf.getDouble();
+                    b.addPhase(logic, duration, str(strings, buf));
+                }
+            }
+            for (int c = buf.getInt(); c > 0; c--) {
+                String from = str(strings, buf);
+                String to = str(strings, buf);
+                int fromLane = buf.getInt();
+                int toLane = buf.getInt();
+                b.addConnection(new NetworkModel.Connection(from, to, fromLane, toLane,
+                        str(strings, buf), str(strings, buf), buf.getInt()));
+            }
+            return b.build();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to read network cache, parsing .net.xml instead", e);
+            return null;
+        }
+    }
+
+    private static String str(String[] strings, ByteBuffer buf) {
+        int i = buf.getInt();
+        return i < 0 ? null : strings[i];
+    }
+
+    private static double[][] readShape(ByteBuffer buf) {
+        int n = buf.getInt();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        buf.asDoubleBuffer().get(x); // bulk copy, the view does not advance buf
+        buf.position(buf.position() + n * Double.BYTES);
+        buf.asDoubleBuffer().get(y);
+        buf.position(buf.position() + n * Double.BYTES);
+        return new double[][]{x, y};
+    }
+
+    /**
+     * Writes the model to a temporary file and moves it over the cache, a failed write never leaves a broken cache.
+     * @param model the model parsed from netFile
+     * @param cachePath cache file
+     * @param netFile the {@code .net.xml} the model was parsed from
+     */
+    public static void write(NetworkModel model, Path cachePath, File netFile) {
+        Path tmp = null;
+        try {
+            // unique name, parallel simulations of one map may write the cache at the same time
+            tmp = Files.createTempFile(cachePath.toAbsolutePath().getParent(), cachePath.getFileName() + ".", ".tmp");
+            StringTable table = new StringTable();
+            // first pass: collect every string, so the table can be written before the records
+            for (NetworkModel.Edge e : model.getEdges()) {
+                table.add(e.getId()); table.add(e.getFrom()); table.add(e.getTo());
+                for (NetworkModel.Lane l : e.getLanes()) table.add(l.getId());
+            }
+            for (NetworkModel.Junction j : model.getJunctions()) {
+                table.add(j.getId()); table.add(j.getType());
+                for (String inc : j.getIncLanes()) table.add(inc);
+            }
+            for (NetworkModel.TlLogic t : model.getTlLogics()) {
+                table.add(t.getId()); table.add(t.getType()); table.add(t.getProgramID());
+                for (NetworkModel.Phase p : t.getPhases()) table.add(p.getState());
+            }
+            for (NetworkModel.Connection c : model.getConnections()) {
+                table.add(c.getFrom()); table.add(c.getTo()); table.add(c.getVia()); table.add(c.getTl());
+            }
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(netFile.length());
+                out.writeLong(netFile.lastModified());
+
+                out.writeInt(table.strings.size());
+                for (String s : table.strings) {
+                    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+
+                out.writeInt(model.getEdgeCount());
+                for (NetworkModel.Edge e : model.getEdges()) {
+                    out.writeInt(table.ref(e.getId())); out.writeInt(table.ref(e.getFrom())); out.writeInt(table.ref(e.getTo()));
+                    out.writeInt(e.getLanes().size());
+                    for (NetworkModel.Lane l : e.getLanes()) {
+                        out.writeInt(table.ref(l.getId()));
+                        out.writeDouble(l.getLength());
+                        out.writeDouble(l.getWidth());
+                        writeShape(out, l.getShapeX(), l.getShapeY());
+                    }
+                }
+                List<NetworkModel.Junction> junctions = new ArrayList<>();
+                model.getJunctions().forEach(junctions::add);
+                out.writeInt(junctions.size());
+                for (NetworkModel.Junction j : junctions) {
+                    out.writeInt(table.ref(j.getId())); out.writeInt(table.ref(j.getType()));
+                    out.writeDouble(j.getX()); out.writeDouble(j.getY());
+                    out.writeInt(j.getIncLanes().length);
+                    for (String inc : j.getIncLanes()) out.writeInt(table.ref(inc));
+                    writeShape(out, j.getShapeX(), j.getShapeY());
+                }
+                List<NetworkModel.TlLogic> logics = new ArrayList<>();
+                model.getTlLogics().forEach(logics::add);
+                out.writeInt(logics.size());
+                for (NetworkModel.TlLogic t : logics) {
+                    out.writeInt(table.ref(t.getId())); out.writeInt(table.ref(t.getType())); out.writeInt(table.ref(t.getProgramID()));
+                    out.writeDouble(t.getOffset());
+                    out.writeInt(t.getPhases().size());
+                    for (NetworkModel.Phase p : t.getPhases()) {
+                        out.writeDouble(p.getDuration());
+                        out.writeInt(table.ref(p.getState()));
+                    }
+                }
+                out.writeInt(model.getConnections().size());
+                for (NetworkModel.Connection c : model.getConnections()) {
+                    out.writeInt(table.ref(c.getFrom())); out.writeInt(table.ref(c.getTo()));
+                    out.writeInt(c.getFromLane()); out.writeInt(c.getToLane());
+                    out.writeInt(table.ref(c.getVia())); out.writeInt(table.ref(c.getTl()));
+                    out.writeInt(c.getLinkIndex());
+                }
+            }
+            Files.move(tmp, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to write network cache", e);
+            try { if (tmp != null) Files.deleteIfExists(tmp); } catch (IOException ignored) { }
+        }
+    }
+
+    private static void writeShape(DataOutputStream out, double[] x, double[] y) throws IOException {
+        int n = x == null ? 0 : x.length;
+        out.writeInt(n);
+        for (int i = 0; i < n; i++) out.writeDouble(x[i]);
+        for (int i = 0; i < n; i++) out.writeDouble(y[i]);
+    }
+
+    /**
+     * Assigns every distinct string an index
+     */
+    private static final class StringTable {
+        final List<String> strings = new ArrayList<>();
+        final Map<String, Integer> index = new HashMap<>();
+
+        void add(String s) {
+            if (s != null && !index.containsKey(s)) {
+                index.put(s, strings.size());
+                strings.add(s);
+            }
+        }
+
+        int ref(String s) { return s == null ? -1 : index.get(s); }
+    }
+}
@@ -0,0 +1,588 @@
+package sumo.sim.data;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * Typed model of a {@code .net.xml}: edges, lanes, junctions, traffic light programs and connections.
+ *
+ * <p>
+ *     Built once per map load by {@link Builder} in a single streaming pass, which only collects the attributes.
+ *     Afterward the shape strings are parsed in parallel. {@link NetworkModel#loadAsync(String, Progress)}
+ *     runs both on a background thread, so the file can be read while SUMO is still starting up.
+ *     All lists ({@code StreetList}, {@code JunctionList}, {@code TrafficLightList}) are created from the same model
+ *     instead of re-reading the file themselves.
+ * </p>
+ * <p>
+ *     Lanes without a {@code width} attribute get SUMO's default width of {@value #DEFAULT_LANE_WIDTH}.
+ *     Objects missing in the file have to be loaded via TraCI by the caller.
+ * </p>
+ */
+public class NetworkModel {
+    public static final double DEFAULT_LANE_WIDTH = 3.2;
+
+    //Logger
+    private static final Logger logger = java.util.logging.Logger.getLogger(NetworkModel.class.getName());
+
+    /**
+     * Receives the loading progress, called from the loading threads
+     */
+    public interface Progress {
+        /**
+         * @param step what is currently loaded, e.g. "Reading network"
+         * @param fraction 0 to 1
+         */
+        void update(String step, double fraction);
+    }
+
+    /**
+     * A non-internal edge with its lanes ordered by index
+     */
+    public static final class Edge {
+        private final String id;
+        private final String from;
+        private final String to;
+        private final List<Lane> lanes = new ArrayList<>(2);
+
+        Edge(String id, String from, String to) {
+            this.id = id;
+            this.from = from;
+            this.to = to;
+        }
+
+        public String getId() { return id; }
+        public String getFrom() { return from; }
+        public String getTo() { return to; }
+        public List<Lane> getLanes() { return lanes; }
+    }
+
+    /**
+     * Geometry of one lane
+     */
+    public static final class Lane {
+        private final String id;
+        private final String shape; // raw attribute, parsed in the second phase
+        private final double length;
+        private final double width;
+        private double[] x, y;
+
+        Lane(String id, String shape, double length, double width) {
+            this.id = id;
+            this.shape = shape;
+            this.length = length;
+            this.width = width;
+        }
+
+        Lane(String id, double[] x, double[] y, double length, double width) {
+            this(id, (String) null, length, width);
+            this.x = x;
+            this.y = y;
+        }
+
+        public String getId() { return id; }
+        public double[] getShapeX() { return x; }
+        public double[] getShapeY() { return y; }
+        public double getLength() { return length; }
+        public double getWidth() { return width; }
+    }
+
+    /**
+     * Position and geometry of one junction
+     */
+    public static final class Junction {
+        private final String id;
+        private final String type; // e.g. priority, traffic_light, dead_end, internal
+        private final double x, y;
+        private final String[] incLanes;
+        private final String shape; // raw attribute, may be null
+        private double[] shapeX, shapeY;
+
+        Junction(String id, String type, double x, double y, String[] incLanes, String shape) {
+            this.id = id;
+            this.type = type;
+            this.x = x;
+            this.y = y;
+            this.incLanes = incLanes;
+            this.shape = shape;
+        }
+
+        Junction(String id, String type, double x, double y, String[] incLanes, double[] shapeX, double[] shapeY) {
+            this(id, type, x, y, incLanes, (String) null);
+            this.shapeX = shapeX;
+            this.shapeY = shapeY;
+        }
+
+        public String getId() { return id; }
+        public String getType() { return type; }
+        public double getX() { return x; }
+        public double getY() { return y; }
+        public String[] getIncLanes() { return incLanes; }
+        public double[] getShapeX() { return shapeX; }
+        public double[] getShapeY() { return shapeY; }
+    }
+
+    /**
+     * One program of a traffic light ({@code <tlLogic>})
+     */
+    public static final class TlLogic {
+        private final String id;
+        private final String type; // static, actuated, delay_based ...
+        private final String programID;
+        private final double offset;
+        private final List<Phase> phases = new ArrayList<>();
+
+        TlLogic(String id, String type, String programID, double offset) {
+            this.id = id;
+            this.type = type;
+            this.programID = programID;
+            this.offset = offset;
+        }
+
+        public String getId() { return id; }
+        public String getType() { return type; }
+        public String getProgramID() { return programID; }
+        public double getOffset() { return offset; }
+        public List<Phase> getPhases() { return phases; }
+    }
+
+    /**
+     * One phase of a {@link TlLogic}
+     */
+    public static final class Phase {
+        private final double duration;
+        private final String state; // e.g. "GGrr", one char per signal index
+
+        Phase(double duration, String state) {
+            this.duration = duration;
+            this.state = state;
+        }
+
+        public double getDuration() { return duration; }
+        public String getState() { return state; }
+    }
+
+    /**
+     * A connection between two lanes of non-internal edges
+     */
+    public static final class Connection {
+        private final String from, to;
+        private final int fromLane, toLane;
+        private final String via; // internal lane, may be null
+        private final String tl; // controlling traffic light, may be null
+        private final int linkIndex; // signal index, -1 if not controlled
+
+        Connection(String from, String to, int fromLane, int toLane, String via, String tl, int linkIndex) {
+            this.from = from;
+            this.to = to;
+            this.fromLane = fromLane;
+            this.toLane = toLane;
+            this.via = via;
+            this.tl = tl;
+            this.linkIndex = linkIndex;
+        }
+
+        public String getFrom() { return from; }
+        public String getTo() { return to; }
+        public int getFromLane() { return fromLane; }
+        public int getToLane() { return toLane; }
+        public String getFromLaneID() { return from + "_" + fromLane; }
+        public String getToLaneID() { return to + "_" + toLane; }
+        public String getVia() { return via; }
+        public String getTl() { return tl; }
+        public int getLinkIndex() { return linkIndex; }
+    }
+
+    private final Map<String, Edge> edges = new LinkedHashMap<>(); // file order -> stable handles
+    private final Map<String, Junction> junctions = new LinkedHashMap<>();
+    private final Map<String, List<TlLogic>> tlLogics = new HashMap<>();
+    private final List<Connection> connections = new ArrayList<>();
+    private final Map<String, Connection[]> tlLinks = new HashMap<>(); // tl -> connections by link index
+
+    private NetworkModel() { }
+
+    /**
+     * Loads the model on a background thread
+     * @param netPath path of the {@code .net.xml}
+     * @param progress receives the progress, may be null
+     * @return future completed with the model, or exceptionally if the file could not be read
+     */
+    public static CompletableFuture<NetworkModel> loadAsync(String netPath, Progress progress) {
+        return loadAsync(netPath, null, progress);
+    }
+
+    /**
+     * Loads the model on a background thread, from the {@link NetworkCache} if it is up to date.
+     * Otherwise the {@code .net.xml} is parsed and the cache is (re)written after the future completed.
+     * @param netPath path of the {@code .net.xml}
+     * @param cachePath path of the cache file, null to always parse
+     * @param progress receives the progress, may be null
+     * @return future completed with the model, or exceptionally if the file could not be read
+     */
+    public static CompletableFuture<NetworkModel> loadAsync(String netPath, Path cachePath, Progress progress) {
+        CompletableFuture<NetworkModel> future = new CompletableFuture<>();
+        Thread loader = new Thread(() -> {
+            try {
+                NetworkModel cached = cachePath != null ? NetworkCache.read(cachePath, new File(netPath)) : null;
+                if (cached != null) {
+                    if (progress != null) progress.update("Reading network cache", 1.0);
+                    future.complete(cached);
+                    return;
+                }
+                NetworkModel model = load(netPath, progress);
+                future.complete(model);
+                if (cachePath != null) NetworkCache.write(model, cachePath, new File(netPath)); // next load is mapped
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }, "network-loader");
+        loader.setDaemon(true);
+        loader.start();
+        return future;
+    }
+
+    /**
+     * Loads the model on the calling thread
+     * @param netPath path of the {@code .net.xml}
+     * @param progress receives the progress, may be null
+     * @return the model of the network
+     */
+    public static NetworkModel load(String netPath, Progress progress) {
+        Progress p = progress != null ? progress : (step, fraction) -> { };
+        File file = new File(netPath);
+        Builder builder = new Builder(p, Math.max(1, file.length()));
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            builder.read(in);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Failed to read network model from .net.xml", e);
+            throw new RuntimeException(e);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds a {@link NetworkModel} in a single pass over the file
+     */
+    public static final class Builder {
+        private final NetworkModel model = new NetworkModel();
+        private final List<Lane> lanes = new ArrayList<>();
+        private final Progress progress;
+        private final long size;
+
+        /**
+         * @param progress receives the progress
+         * @param size expected number of bytes, for the progress
+         */
+        public Builder(Progress progress, long size) {
+            this.progress = progress;
+            this.size = size;
+        }
+
+        /**
+         * Streams the whole document once, collecting every element the model needs
+         * @param input the {@code .net.xml}
+         */
+        public void read(InputStream input) throws Exception {
+            CountingInputStream in = new CountingInputStream(input);
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            Edge edge = null; // current non-internal edge, null inside internal edges
+            TlLogic logic = null; // current tlLogic
+            long reported = 0;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) continue;
+                switch (reader.getLocalName()) {
+                    case "edge" -> edge = edge(reader);
+                    case "lane" -> {
+                        if (edge != null) lane(reader, edge);
+                    }
+                    case "junction" -> junction(reader);
+                    case "tlLogic" -> logic = tlLogic(reader);
+                    case "phase" -> {
+                        if (logic != null) addPhase(logic,
+                                Double.parseDouble(reader.getAttributeValue(null, "duration")),
+                                reader.getAttributeValue(null, "state"));
+                    }
+                    case "connection" -> connection(reader);
+                    default -> { }
+                }
+                if (in.count - reported > size / 100) { // about every percent
+                    reported = in.count;
+                    progress.update("Reading network", 0.5 * Math.min(1.0, (double) reported / size));
+                }
+            }
+            reader.close();
+        }
+
+        private Edge edge(XMLStreamReader reader) {
+            String id = reader.getAttributeValue(null, "id");
+            String from = reader.getAttributeValue(null, "from");
+            String to = reader.getAttributeValue(null, "to");
+            String function = reader.getAttributeValue(null, "function");
+            if (id == null || from == null || to == null || (function != null && !function.equals("normal"))) return null;
+            return addEdge(id, from, to);
+        }
+
+        private void lane(XMLStreamReader reader, Edge edge) {
+            String width = reader.getAttributeValue(null, "width");
+            addLane(edge, new Lane(reader.getAttributeValue(null, "id"),
+                    reader.getAttributeValue(null, "shape"),
+                    Double.parseDouble(reader.getAttributeValue(null, "length")),
+                    width != null ? Double.parseDouble(width) : DEFAULT_LANE_WIDTH));
+        }
+
+        private void junction(XMLStreamReader reader) {
+            String inc = reader.getAttributeValue(null, "incLanes");
+            addJunction(new Junction(reader.getAttributeValue(null, "id"),
+                    reader.getAttributeValue(null, "type"),
+                    Double.parseDouble(reader.getAttributeValue(null, "x")),
+                    Double.parseDouble(reader.getAttributeValue(null, "y")),
+                    inc == null || inc.isBlank() ? new String[0] : inc.trim().split("\\s+"),
+                    reader.getAttributeValue(null, "shape")));
+        }
+
+        private TlLogic tlLogic(XMLStreamReader reader) {
+            String offset = reader.getAttributeValue(null, "offset");
+            return addTlLogic(reader.getAttributeValue(null, "id"),
+                    reader.getAttributeValue(null, "type"),
+                    reader.getAttributeValue(null, "programID"),
+                    offset != null ? Double.parseDouble(offset) : 0);
+        }
+
+        private void connection(XMLStreamReader reader) {
+            String from = reader.getAttributeValue(null, "from");
+            if (from == null || from.startsWith(":")) return; // internal connections are not needed
+            String linkIndex = reader.getAttributeValue(null, "linkIndex");
+            addConnection(new Connection(from,
+                    reader.getAttributeValue(null, "to"),
+                    Integer.parseInt(reader.getAttributeValue(null, "fromLane")),
+                    Integer.parseInt(reader.getAttributeValue(null, "toLane")),
+                    reader.getAttributeValue(null, "via"),
+                    reader.getAttributeValue(null, "tl"),
+                    linkIndex != null ? Integer.parseInt(linkIndex) : -1));
+        }
+
+        // adders shared by the XML pass and NetworkCache
+
+        Edge addEdge(String id, String from, String to) {
+            Edge e = new Edge(id, from, to);
+            model.edges.put(id, e);
+            return e;
+        }
+
+        void addLane(Edge edge, Lane lane) {
+            edge.lanes.add(lane);
+            lanes.add(lane);
+        }
+
+        void addJunction(Junction junction) {
+            model.junctions.put(junction.id, junction);
+        }
+
+        TlLogic addTlLogic(String id, String type, String programID, double offset) {
+            TlLogic logic = new TlLogic(id, type, programID, offset);
+            model.tlLogics.computeIfAbsent(id, k -> new ArrayList<>(1)).add(logic);
+            return logic;
+        }
+
+        void addPhase(TlLogic logic, double duration, String state) {
+            logic.phases.add(new Phase(duration, state));
+        }
+
+        void addConnection(Connection connection) {
+            model.connections.add(connection);
+        }
+
+        /**
+         * Indexes the connections by traffic light and parses all shapes in parallel (only those given as attribute)
+         * @return the finished model
+         */
+        public NetworkModel build() {
+            Map<String, List<Connection>> byTl = new HashMap<>();
+            for (Connection c : model.connections) {
+                if (c.tl != null && c.linkIndex >= 0) byTl.computeIfAbsent(c.tl, k -> new ArrayList<>()).add(c);
+            }
+            for (Map.Entry<String, List<Connection>> entry : byTl.entrySet()) {
+                int n = 0;
+                for (Connection c : entry.getValue()) n = Math.max(n, c.linkIndex + 1);
+                Connection[] links = new Connection[n];
+                for (Connection c : entry.getValue()) {
+                    if (links[c.linkIndex] == null) links[c.linkIndex] = c; // first connection of a signal index
+                }
+                model.tlLinks.put(entry.getKey(), links);
+            }
+
+            // second phase: parsing the shapes is independent per lane / junction
+            List<Junction> junctionList = new ArrayList<>(model.junctions.values());
+            int total = lanes.size() + junctionList.size();
+            int step = Math.max(1, total / 100);
+            AtomicInteger done = new AtomicInteger();
+            IntStream.range(0, total).parallel().forEach(i -> {
+                if (i < lanes.size()) {
+                    Lane l = lanes.get(i);
+                    if (l.x == null) {
+                        double[][] xy = parseShape(l.shape);
+                        l.x = xy[0];
+                        l.y = xy[1];
+                    }
+                } else {
+                    Junction j = junctionList.get(i - lanes.size());
+                    if (j.shapeX == null) {
+                        double[][] xy = parseShape(j.shape);
+                        j.shapeX = xy[0];
+                        j.shapeY = xy[1];
+                    }
+                }
+                int d = done.incrementAndGet();
+                if (d % step == 0) progress.update("Parsing geometry", 0.5 + 0.5 * d / total);
+            });
+            progress.update("Parsing geometry", 1.0);
+            return model; // parallel stream has finished -> all shapes are visible to the caller
+        }
+    }
+
+    /**
+     * Parses a SUMO shape attribute ("x1,y1 x2,y2 ...")
+     * @param shape attribute value, may be null
+     * @return {x[], y[]}, empty arrays if null
+     */
+    static double[][] parseShape(String shape) {
+        if (shape == null || shape.isBlank()) return new double[][]{new double[0], new double[0]};
+        int n = 1;
+        for (int i = 0; i < shape.length(); i++) {
+            if (shape.charAt(i) == ' ') n++;
+        }
+        double[] x = new double[n];
+        double[] y = new double[n];
+        int count = 0;
+        int start = 0;
+        int len = shape.length();
+        while (start < len) {
+            int end = shape.indexOf(' ', start);
+            if (end < 0) end = len;
+            if (end > start) {
+                int comma = shape.indexOf(',', start);
+                // 3D shapes ("x,y,z") are reduced to x and y
+                int comma2 = shape.indexOf(',', comma + 1);
+                int yEnd = (comma2 >= 0 && comma2 < end) ? comma2 : end;
+                x[count] = Double.parseDouble(shape.substring(start, comma));
+                y[count] = Double.parseDouble(shape.substring(comma + 1, yEnd));
+                count++;
+            }
+            start = end + 1;
+        }
+        if (count < n) { // double spaces
+            x = Arrays.copyOf(x, count);
+            y = Arrays.copyOf(y, count);
+        }
+        return new double[][]{x, y};
+    }
+
+    /**
+     * @return a builder for models not read from a {@code .net.xml}, e.g. by {@link NetworkCache}
+     */
+    static Builder builder() { return new Builder((step, fraction) -> { }, 1); }
+
+    /**
+     * @return all non-internal edges in file order
+     */
+    public Iterable<Edge> getEdges() { return edges.values(); }
+
+    public int getEdgeCount() { return edges.size(); }
+
+    /**
+     * @param edgeID ID of a non-internal edge
+     * @return the edge, null if unknown
+     */
+    public Edge getEdge(String edgeID) { return edges.get(edgeID); }
+
+    /**
+     * @param edgeID ID of a non-internal edge
+     * @return lanes of the edge ordered by index, empty if the edge is unknown
+     */
+    public List<Lane> getLanes(String edgeID) {
+        Edge e = edges.get(edgeID);
+        return e != null ? e.lanes : Collections.emptyList();
+    }
+
+    /**
+     * @return all traffic light programs
+     */
+    public Iterable<TlLogic> getTlLogics() {
+        List<TlLogic> all = new ArrayList<>();
+        for (List<TlLogic> programs : tlLogics.values()) all.addAll(programs);
+        return all;
+    }
+
+    /**
+     * @return all junctions in file order
+     */
+    public Iterable<Junction> getJunctions() { return junctions.values(); }
+
+    /**
+     * @param id junction ID
+     * @return the junction, null if unknown
+     */
+    public Junction getJunction(String id) { return junctions.get(id); }
+
+    /**
+     * @param tlID traffic light ID
+     * @return the first program of the traffic light, null if unknown
+     */
+    public TlLogic getTlLogic(String tlID) {
+        List<TlLogic> programs = tlLogics.get(tlID);
+        return programs == null || programs.isEmpty() ? null : programs.getFirst();
+    }
+
+    /**
+     * @param tlID traffic light ID
+     * @return the connection controlled by every signal index (null for unused indices), null if unknown
+     */
+    public Connection[] getControlledLinks(String tlID) { return tlLinks.get(tlID); }
+
+    /**
+     * @return all connections starting on a non-internal edge, in file order
+     */
+    public List<Connection> getConnections() { return connections; }
+
+    /**
+     * Counts the bytes read, to report the progress of the streaming pass
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count; // only the reading thread
+
+        CountingInputStream(InputStream in) { super(in); }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
@@ -3,15 +3,14 @@ package sumo.sim.data;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.input.SAXBuilder;
-import org.jdom2.output.Format;
-import org.jdom2.output.XMLOutputter;
 
 import javax.xml.stream.*;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,7 +23,7 @@ public class XML {
 // XML file read/write class
 
     private FileInputStream file;
-    private static XMLInputFactory factory = null;
+    private final XMLInputFactory factory;
     private String path;
 
     //Logger
@@ -45,63 +44,29 @@ public class XML {
 
     /**
      * Sets the Duration of a specific Traffic Light of a Junction
-     * This then overwrites the <phase><duration></duration></phase> segment of the .net.xml
+     * This then overwrites the <phase duration=""> attribute of the .net.xml.
+     * The file is patched in the background by {@link XmlPatcher}, repeated calls for the same phase are coalesced.
      * @param id
      * @param phaseIndex
      * @param newDuration
      * @param programID
+     * @return completed once the file was written
      */
-    public void setPhaseDuration(String id, String programID, int phaseIndex, double newDuration){
-        try {
-            SAXBuilder builder = new SAXBuilder();
-            Document doc = builder.build(path);
-            Element root = doc.getRootElement();
-
-            for(Element tlLogic : root.getChildren("tlLlogic")) {
-                if(!(tlLogic.getAttributeValue("id").equals(id)&&tlLogic.getAttributeValue("programID").equals(programID))) {
-                    continue;
-                }
-
-                List<Element> phases = tlLogic.getChildren("phase");
-                phases.get(phaseIndex).setAttribute("duration", String.valueOf(newDuration));
-            }
-
-            new XMLOutputter(Format.getPrettyFormat()).output(doc, new FileOutputStream(path));
-
-        }catch (Exception e){
-            logger.log(Level.FINE, "Failed to set phase duration in .net.xml", e);
-            throw new RuntimeException(e.getMessage());
-        }
+    public CompletableFuture<Void> setPhaseDuration(String id, String programID, int phaseIndex, double newDuration){
+        return XmlPatcher.forFile(Path.of(path)).submit(XmlPatcher.phaseDuration(id, programID, phaseIndex, newDuration));
     }
 
     /**
      * Sets the Phase Duration of one Specific TrafficLight by its Phase state
+     * The file is patched in the background by {@link XmlPatcher}.
      * @param id ID of Junction that has the TrafficLights
      * @param programID ProgrammID, needed for identification in xml
      * @param state State of the Phase you want to change
      * @param newDuration New Duration wanted for the phase
+     * @return completed once the file was written
      */
-    public void setPhaseDurationByState(String id, String programID, String state, double newDuration){
-        try {
-            SAXBuilder builder = new SAXBuilder();
-            Document doc = builder.build(path);
-            Element root = doc.getRootElement();
-
-            for(Element tlLogic : root.getChildren("tlLlogic")) {
-                if(!(tlLogic.getAttributeValue("id").equals(id)&&tlLogic.getAttributeValue("programID").equals(programID))) {
-                    continue;
-                }
-                List<Element> phases = tlLogic.getChildren("phase");
-                for(Element phase : phases) {
-                    if(phase.getAttributeValue("state").equals(state)){
-                        phase.setAttribute("duration", String.valueOf(newDuration));
-                    }
-                }
-            }
-        }catch (Exception e){
-            logger.log(Level.FINE, "Failed to set phase duration in .net.xml", e);
-            throw new RuntimeException(e.getMessage());
-        }
+    public CompletableFuture<Void> setPhaseDurationByState(String id, String programID, String state, double newDuration){
+        return XmlPatcher.forFile(Path.of(path)).submit(XmlPatcher.phaseDurationByState(id, programID, state, newDuration));
     }
 
     public Map<String, String> getConfigInputs() {
@@ -327,35 +292,20 @@ public class XML {
     }
 
     /**
-     * Creates a new Route in the rou.xml.
+     * Creates a new Route in the rou.xml, replacing a route with the same id.
+     * The file is patched in the background by {@link XmlPatcher}, the caller does not wait for the disk.
      * @param id
      * @param edges
+     * @return completed once the file was written
      */
-    public void newRoute(String id, List<String> edges) {
+    public CompletableFuture<Void> newRoute(String id, List<String> edges) {
         if (edges == null || edges.isEmpty()) {
             throw new IllegalArgumentException("Route needs at least one edge!");
         }
-
-        try {
-            SAXBuilder builder = new SAXBuilder();
-            Document doc = builder.build(path);
-            Element root = doc.getRootElement();
-
-            root.getChildren("route").removeIf(r -> id.equals(r.getAttributeValue("id")));
-
-            Element route = new Element("route");
-            route.setAttribute("id", id);
-            route.setAttribute("edges", String.join(" ", edges));
-
-            root.addContent(route);
-
-            XMLOutputter out = new XMLOutputter(Format.getPrettyFormat());
-            out.output(doc, new FileOutputStream(path));
-
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Failed to add route to .rou.xml", e);
-            throw new RuntimeException("Error writing new route to XML.", e);
-        }
+        return XmlPatcher.forFile(Path.of(path)).submit(XmlPatcher.route(id, edges))
+                .whenComplete((v, e) -> {
+                    if (e != null) logger.log(Level.SEVERE, "Failed to add route to .rou.xml", e);
+                });
     }
 
 }
@@ -0,0 +1,364 @@
+package sumo.sim.data;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies small edits to a SUMO XML file by streaming it, instead of building and pretty-printing a whole document.
+ *
+ * <p>
+ *     The file is copied through a {@link XMLStreamReader} / {@link XMLStreamWriter} pair, only the elements targeted
+ *     by an {@link Edit} are changed. Attribute order and empty elements are kept, so the diff of the file stays small. The result is written to a temporary file which is then renamed over the original,
+ *     so readers never see a half written file.
+ * </p>
+ * <p>
+ *     Edits are run on a single background I/O thread. Edits submitted while a pass is pending are applied in the same pass,
+ *     and an edit replaces a pending edit with the same {@link Edit#key()} (e.g. dragging a duration slider only writes the last value).
+ * </p>
+ */
+public final class XmlPatcher {
+    private static final ExecutorService IO = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "xml-io");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final Map<Path, XmlPatcher> PATCHERS = new ConcurrentHashMap<>();
+
+    //Logger
+    private static final Logger logger = java.util.logging.Logger.getLogger(XmlPatcher.class.getName());
+
+    private final Path file;
+    private final Map<String, Edit> pending = new LinkedHashMap<>(); // guarded by this
+    private CompletableFuture<Void> scheduled; // pass the pending edits belong to, null if none
+
+    private XmlPatcher(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @param file XML file to edit
+     * @return the patcher of this file, edits of one file are always applied in order
+     */
+    public static XmlPatcher forFile(Path file) {
+        return PATCHERS.computeIfAbsent(file.toAbsolutePath().normalize(), XmlPatcher::new);
+    }
+
+    /**
+     * Start tag of an element, attributes keep their order from the file
+     */
+    public static final class Element {
+        private final String name;
+        private final List<String> names = new ArrayList<>(); // qualified, namespace declarations as "xmlns:x"
+        private final List<String> values = new ArrayList<>();
+
+        public Element(String name) { this.name = name; }
+
+        public String getName() { return name; }
+
+        /**
+         * @return value of the attribute, null if not set
+         */
+        public String get(String attribute) {
+            int i = names.indexOf(attribute);
+            return i < 0 ? null : values.get(i);
+        }
+
+        /**
+         * Replaces the attribute in place or appends it
+         */
+        public Element set(String attribute, String value) {
+            int i = names.indexOf(attribute);
+            if (i < 0) {
+                names.add(attribute);
+                values.add(value);
+            } else {
+                values.set(i, value);
+            }
+            return this;
+        }
+    }
+
+    /**
+     * One change to the document
+     */
+    public interface Edit {
+        /**
+         * @return edits with the same key replace each other while pending
+         */
+        String key();
+
+        /**
+         * Called for every start tag.
+         * @param parents enclosing elements, innermost first
+         * @param element the element, may be modified
+         * @param index index of the element among the siblings with the same name
+         * @return false to drop the element with its children
+         */
+        default boolean onStart(Deque<Element> parents, Element element, int index) { return true; }
+
+        /**
+         * Called before the end tag of the root element, added elements are written as empty elements.
+         */
+        default void beforeRootEnd(List<Element> append) { }
+    }
+
+    /**
+     * Queues an edit, the file is patched on the I/O thread.
+     * @param edit the change
+     * @return completed once the file containing this edit was renamed into place
+     */
+    public synchronized CompletableFuture<Void> submit(Edit edit) {
+        pending.remove(edit.key()); // re-insert -> keeps submission order of the latest value
+        pending.put(edit.key(), edit);
+        if (scheduled == null) {
+            CompletableFuture<Void> pass = new CompletableFuture<>();
+            scheduled = pass;
+            IO.execute(() -> run(pass));
+        }
+        return scheduled;
+    }
+
+    private void run(CompletableFuture<Void> pass) {
+        List<Edit> edits;
+        synchronized (this) {
+            edits = new ArrayList<>(pending.values());
+            pending.clear();
+            scheduled = null; // edits from now on go into the next pass
+        }
+        try {
+            apply(edits);
+            pass.complete(null);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to patch " + file, e);
+            pass.completeExceptionally(e);
+        }
+    }
+
+    private void apply(List<Edit> edits) throws Exception {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file));
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16)) {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+            Deque<Element> parents = new ArrayDeque<>();
+            Deque<Map<String, Integer>> siblings = new ArrayDeque<>(); // per open element: child name -> count
+            siblings.push(new HashMap<>());
+            Element open = null; // start tag not written yet, becomes an empty element if the end tag follows directly
+            int skipDepth = 0; // > 0 while inside a dropped element
+            String indent = ""; // whitespace before the next tag, dropped together with a dropped element
+
+            writer.writeStartDocument("UTF-8", reader.getVersion() == null ? "1.0" : reader.getVersion());
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (skipDepth > 0) {
+                    if (event == XMLStreamConstants.START_ELEMENT) skipDepth++;
+                    else if (event == XMLStreamConstants.END_ELEMENT) skipDepth--;
+                    continue;
+                }
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (parents.size() == 1) { // end of root
+                        List<Element> append = new ArrayList<>();
+                        for (Edit edit : edits) edit.beforeRootEnd(append);
+                        for (Element e : append) {
+                            if (open != null) { writeStart(writer, open, false); open = null; }
+                            writer.writeCharacters("\n    ");
+                            writeStart(writer, e, true);
+                        }
+                    }
+                    if (!indent.isEmpty()) {
+                        if (open != null) { writeStart(writer, open, false); open = null; }
+                        writer.writeCharacters(indent);
+                        indent = "";
+                    }
+                    if (open != null) {
+                        writeStart(writer, open, true);
+                        open = null;
+                    } else {
+                        writer.writeEndElement();
+                    }
+                    parents.pop();
+                    siblings.pop();
+                    continue;
+                }
+                if (open != null) {
+                    writeStart(writer, open, false);
+                    open = null;
+                }
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        Element element = readStart(reader);
+                        int index = siblings.peek().merge(element.getName(), 1, Integer::sum) - 1;
+                        boolean keep = true;
+                        for (Edit edit : edits) {
+                            if (!edit.onStart(parents, element, index)) { keep = false; break; }
+                        }
+                        if (!keep) {
+                            skipDepth = 1;
+                            indent = "";
+                            continue;
+                        }
+                        writer.writeCharacters(indent);
+                        indent = "";
+                        if (parents.isEmpty()) writer.writeCharacters("\n"); // whitespace outside the root is not reported
+                        parents.push(element);
+                        siblings.push(new HashMap<>());
+                        open = element;
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.SPACE -> {
+                        if (reader.isWhiteSpace()) {
+                            indent += reader.getText();
+                        } else {
+                            writer.writeCharacters(indent + reader.getText());
+                            indent = "";
+                        }
+                    }
+                    case XMLStreamConstants.CDATA -> writer.writeCData(reader.getText());
+                    case XMLStreamConstants.COMMENT -> {
+                        writer.writeCharacters(parents.isEmpty() ? "\n" : indent);
+                        indent = "";
+                        writer.writeComment(reader.getText());
+                    }
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION -> {
+                        writer.writeCharacters(parents.isEmpty() ? "\n" : indent);
+                        indent = "";
+                        writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+                    }
+                    case XMLStreamConstants.DTD -> writer.writeDTD(reader.getText());
+                    case XMLStreamConstants.ENTITY_REFERENCE -> writer.writeEntityRef(reader.getLocalName());
+                    default -> { } // END_DOCUMENT
+                }
+            }
+            writer.writeCharacters("\n");
+            writer.writeEndDocument();
+            writer.flush();
+            writer.close();
+            reader.close();
+        } catch (Exception e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Element readStart(XMLStreamReader reader) {
+        Element element = new Element(qualified(reader.getPrefix(), reader.getLocalName()));
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            element.set(prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix, reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            element.set(qualified(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+        }
+        return element;
+    }
+
+    private static String qualified(String prefix, String local) {
+        return prefix == null || prefix.isEmpty() ? local : prefix + ":" + local;
+    }
+
+    private static void writeStart(XMLStreamWriter writer, Element element, boolean empty) throws XMLStreamException {
+        if (empty) writer.writeEmptyElement(element.getName());
+        else writer.writeStartElement(element.getName());
+        for (int i = 0; i < element.names.size(); i++) {
+            writer.writeAttribute(element.names.get(i), element.values.get(i));
+        }
+    }
+
+    private static boolean isTlLogic(Element parent, String id, String programID) {
+        return parent != null && parent.getName().equals("tlLogic")
+                && id.equals(parent.get("id"))
+                && (programID == null || programID.equals(parent.get("programID")));
+    }
+
+    /**
+     * Sets the duration of one phase of a {@code <tlLogic>}
+     * @param id traffic light ID
+     * @param programID program ID, null for every program
+     * @param phaseIndex index of the phase
+     * @param duration new duration
+     */
+    public static Edit phaseDuration(String id, String programID, int phaseIndex, double duration) {
+        return new Edit() {
+            @Override
+            public String key() { return "phase/" + id + "/" + programID + "/" + phaseIndex; }
+
+            @Override
+            public boolean onStart(Deque<Element> parents, Element element, int index) {
+                if (index == phaseIndex && element.getName().equals("phase") && isTlLogic(parents.peek(), id, programID)) {
+                    element.set("duration", String.valueOf(duration));
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Sets the duration of every phase with the given state of a {@code <tlLogic>}
+     * @param id traffic light ID
+     * @param programID program ID, null for every program
+     * @param state state of the phases, e.g. "GGrr"
+     * @param duration new duration
+     */
+    public static Edit phaseDurationByState(String id, String programID, String state, double duration) {
+        return new Edit() {
+            @Override
+            public String key() { return "phaseState/" + id + "/" + programID + "/" + state; }
+
+            @Override
+            public boolean onStart(Deque<Element> parents, Element element, int index) {
+                if (element.getName().equals("phase") && state.equals(element.get("state"))
+                        && isTlLogic(parents.peek(), id, programID)) {
+                    element.set("duration", String.valueOf(duration));
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Adds a {@code <route>} to the root element, replacing a route with the same ID
+     * @param id route ID
+     * @param edges edge IDs of the route
+     */
+    public static Edit route(String id, List<String> edges) {
+        String joined = String.join(" ", edges);
+        return new Edit() {
+            @Override
+            public String key() { return "route/" + id; }
+
+            @Override
+            public boolean onStart(Deque<Element> parents, Element element, int index) {
+                return !(parents.size() == 1 && element.getName().equals("route") && id.equals(element.get("id")));
+            }
+
+            @Override
+            public void beforeRootEnd(List<Element> append) {
+                append.add(new Element("route").set("id", id).set("edges", joined));
+            }
+        };
+    }
+}
@@ -0,0 +1,77 @@
+package sumo.sim.logic;
+
+import java.util.Locale;
+
+/**
+ * Parameters of one headless simulation run, see {@link ScenarioRunner}.
+ * Immutable, so one scenario list can be handed to several worker threads.
+ */
+public final class Scenario {
+    private final String map;
+    private final int steps;
+    private final int vehicles;
+    private final double greenScale;
+    private final int traceEvery;
+    private final String tracePath;
+    private final StepScheduler.Mode stepMode;
+    private final int delay;
+    private final double realTimeFactor;
+
+    /**
+     * Scenario stepping as fast as possible
+     * @param map name of the map in the {@link SumoMapManager}
+     * @param steps number of simulation steps
+     * @param vehicles vehicles spread over all routes before the first step (like the stress test), 0 for none
+     * @param greenScale factor for the duration of every green phase, 1 keeps the signal timings of the map
+     * @param traceEvery write a CSV row every n-th step
+     * @param tracePath CSV file for the per step rows, null for none
+     */
+    public Scenario(String map, int steps, int vehicles, double greenScale, int traceEvery, String tracePath) {
+        this(map, steps, vehicles, greenScale, traceEvery, tracePath, StepScheduler.Mode.AS_FAST_AS_POSSIBLE, 0, 1.0);
+    }
+
+    /**
+     * @param map name of the map in the {@link SumoMapManager}
+     * @param steps number of simulation steps
+     * @param vehicles vehicles spread over all routes before the first step (like the stress test), 0 for none
+     * @param greenScale factor for the duration of every green phase, 1 keeps the signal timings of the map
+     * @param traceEvery write a CSV row every n-th step
+     * @param tracePath CSV file for the per step rows, null for none
+     * @param stepMode how the steps are paced, see {@link StepScheduler.Mode}
+     * @param delay ms between two steps in {@link StepScheduler.Mode#FIXED_RATE}
+     * @param realTimeFactor simulated seconds per wall second in {@link StepScheduler.Mode#REAL_TIME_FACTOR}
+     */
+    public Scenario(String map, int steps, int vehicles, double greenScale, int traceEvery, String tracePath,
+                    StepScheduler.Mode stepMode, int delay, double realTimeFactor) {
+        if (!(realTimeFactor > 0)) throw new IllegalArgumentException("Real time factor must be positive: " + realTimeFactor);
+        this.map = map;
+        this.steps = steps;
+        this.vehicles = vehicles;
+        this.greenScale = greenScale;
+        this.traceEvery = Math.max(1, traceEvery);
+        this.tracePath = tracePath;
+        this.stepMode = stepMode;
+        this.delay = Math.max(0, delay);
+        this.realTimeFactor = realTimeFactor;
+    }
+
+    public String getMap() { return map; }
+    public int getSteps() { return steps; }
+    public int getVehicles() { return vehicles; }
+    public double getGreenScale() { return greenScale; }
+    public int getTraceEvery() { return traceEvery; }
+    public String getTracePath() { return tracePath; }
+    public StepScheduler.Mode getStepMode() { return stepMode; }
+    public int getDelay() { return delay; }
+    public double getRealTimeFactor() { return realTimeFactor; }
+
+    /**
+     * @return short unique name of the parameter combination, e.g. "Frankfurt-v500-g1.20"
+     */
+    public String getName() {
+        return String.format(Locale.ROOT, "%s-v%d-g%.2f", map, vehicles, greenScale);
+    }
+
+    @Override
+    public String toString() { return getName(); }
+}
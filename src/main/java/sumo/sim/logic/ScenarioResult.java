@@ -0,0 +1,83 @@
+package sumo.sim.logic;
+
+import java.util.Locale;
+
+/**
+ * Aggregated statistics of one {@link Scenario}, returned by {@link ScenarioRunner}.
+ */
+public final class ScenarioResult {
+    /**
+     * Column names of {@link #toCsvRow()}
+     */
+    public static final String CSV_HEADER = "scenario,map,vehicles,greenScale,steps,simTime,wallSeconds,stepsPerSecond,"
+            + "meanSpeed,peakActive,peakQueued,meanStopped,maxDensity,densestStreet,error";
+
+    private final Scenario scenario;
+    private final int steps;
+    private final double simTime;
+    private final double wallSeconds;
+    private final double meanSpeed;
+    private final int peakActive;
+    private final int peakQueued;
+    private final double meanStopped;
+    private final double maxDensity;
+    private final String densestStreet;
+    private final String error;
+
+    ScenarioResult(Scenario scenario, int steps, double simTime, double wallSeconds, double meanSpeed,
+                   int peakActive, int peakQueued, double meanStopped, double maxDensity, String densestStreet, String error) {
+        this.scenario = scenario;
+        this.steps = steps;
+        this.simTime = simTime;
+        this.wallSeconds = wallSeconds;
+        this.meanSpeed = meanSpeed;
+        this.peakActive = peakActive;
+        this.peakQueued = peakQueued;
+        this.meanStopped = meanStopped;
+        this.maxDensity = maxDensity;
+        this.densestStreet = densestStreet;
+        this.error = error;
+    }
+
+    public Scenario getScenario() { return scenario; }
+
+    /**
+     * @return steps done, less than requested if the run failed
+     */
+    public int getSteps() { return steps; }
+    public double getSimTime() { return simTime; }
+    public double getWallSeconds() { return wallSeconds; }
+    public double getStepsPerSecond() { return wallSeconds > 0 ? steps / wallSeconds : 0; }
+
+    /**
+     * @return mean speed over all vehicles and steps in m/s (weighted by the active vehicles per step)
+     */
+    public double getMeanSpeed() { return meanSpeed; }
+    public int getPeakActive() { return peakActive; }
+    public int getPeakQueued() { return peakQueued; }
+
+    /**
+     * @return mean number of stopped vehicles per step
+     */
+    public double getMeanStopped() { return meanStopped; }
+
+    /**
+     * @return highest density of a street seen in the run, vehicles per km
+     */
+    public double getMaxDensity() { return maxDensity; }
+    public String getDensestStreet() { return densestStreet; }
+
+    /**
+     * @return message of the failure, null if all steps were done
+     */
+    public String getError() { return error; }
+    public boolean isSuccess() { return error == null; }
+
+    public String toCsvRow() {
+        return String.format(Locale.ROOT, "%s,%s,%d,%.2f,%d,%.2f,%.3f,%.1f,%.4f,%d,%d,%.2f,%.4f,%s,%s",
+                scenario.getName(), scenario.getMap(), scenario.getVehicles(), scenario.getGreenScale(),
+                steps, simTime, wallSeconds, getStepsPerSecond(), meanSpeed, peakActive, peakQueued, meanStopped,
+                maxDensity, densestStreet == null ? "" : densestStreet,
+                error == null ? "" : "\"" + error.replace("\"", "'") + "\"");
+    }
+}
@@ -0,0 +1,180 @@
+package sumo.sim.logic;
+
+import javafx.scene.paint.Color;
+import sumo.sim.data.CSV;
+import sumo.sim.objects.FleetStatistics;
+import sumo.sim.objects.Street;
+import sumo.sim.objects.TrafficLightPhase;
+import sumo.sim.objects.TrafficLightWrap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs one {@link Scenario} headless: own SUMO process on a free port, own {@link WrapperController} without GUI,
+ * steps on the calling thread, paced by the {@link StepScheduler} of the wrapper in the mode of the scenario
+ * (by default back to back as fast as SUMO answers).
+ * <p>
+ *     Nothing is shared with other runners, so several can run in parallel (see {@link sumo.sim.BatchRunner}).
+ *     A failed run does not throw, its {@link ScenarioResult} carries the error and the steps done until then.
+ * </p>
+ */
+public class ScenarioRunner implements Callable<ScenarioResult> {
+    /**
+     * Column names of the per step rows
+     */
+    public static final String TRACE_HEADER = "step,time,active,queued,stopped,stoppedTime,meanSpeed,speedStdDev,densestStreet,maxDensity";
+    private static final int START_ATTEMPTS = 3; // a free port can be taken by another SUMO before ours binds it
+
+    private final Scenario scenario;
+    private final SumoMapManager mapManager;
+
+    //Logger
+    private static final Logger logger = java.util.logging.Logger.getLogger(ScenarioRunner.class.getName());
+
+    /**
+     * @param scenario what to run
+     * @param mapManager knows the map of the scenario, only read
+     */
+    public ScenarioRunner(Scenario scenario, SumoMapManager mapManager) {
+        this.scenario = scenario;
+        this.mapManager = mapManager;
+    }
+
+    @Override
+    public ScenarioResult call() {
+        long start = System.nanoTime();
+        WrapperController wrapper = null;
+        CSV trace = null;
+        int done = 0;
+        double speedSum = 0; // speed * active vehicles, summed over the steps
+        long vehicleSteps = 0;
+        long stoppedSum = 0;
+        int peakActive = 0;
+        int peakQueued = 0;
+        double maxDensity = 0;
+        String densestStreet = null;
+        String error = null;
+        try {
+            wrapper = open();
+            wrapper.setDensityEnabled(true);
+            StepScheduler pacer = wrapper.getScheduler(); // not started, only paces the steps of this thread
+            pacer.setMode(scenario.getStepMode());
+            pacer.setDelay(scenario.getDelay());
+            pacer.setRealTimeFactor(scenario.getRealTimeFactor());
+            // queued, sent with the first step
+            List<CompletableFuture<Void>> setup = new ArrayList<>();
+            if (scenario.getGreenScale() != 1.0) setup.add(scaleGreenPhases(wrapper, scenario.getGreenScale()));
+            if (scenario.getVehicles() > 0 && !wrapper.isRouteListEmpty()) {
+                setup.add(wrapper.StressTest(scenario.getVehicles(), Color.RED, null));
+            }
+            if (scenario.getTracePath() != null) {
+                trace = new CSV(scenario.getTracePath());
+                trace.addToCSV(new String[]{TRACE_HEADER});
+            }
+
+            for (int step = 1; step <= scenario.getSteps(); step++) {
+                double simBefore = wrapper.getTime();
+                wrapper.doStepUpdate();
+                done = step;
+                if (step == 1) awaitSetup(setup); // a run without its vehicles or signal timings is worthless
+
+                FleetStatistics stats = wrapper.getVehicles().getStatistics();
+                if (stats.getActiveCount() > 0) {
+                    speedSum += stats.getMeanSpeed() * stats.getActiveCount();
+                    vehicleSteps += stats.getActiveCount();
+                }
+                stoppedSum += stats.getStoppedCount();
+                peakActive = Math.max(peakActive, stats.getActiveCount());
+                peakQueued = Math.max(peakQueued, stats.getQueuedCount());
+                Street densest = densest(wrapper);
+                if (densest != null && densest.getDensity() > maxDensity) {
+                    maxDensity = densest.getDensity();
+                    densestStreet = densest.getId();
+                }
+                if (trace != null && step % scenario.getTraceEvery() == 0) {
+                    trace.addToCSV(new String[]{traceRow(step, wrapper.getTime(), stats, densest)});
+                }
+                pacer.pace(wrapper.getTime() - simBefore);
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Scenario " + scenario + " stopped after " + done + " steps", e);
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        } finally {
+            if (trace != null) {
+                try { trace.close(); } catch (Exception e) { logger.log(Level.WARNING, "Failed to close trace", e); }
+            }
+            if (wrapper != null) wrapper.terminate();
+        }
+        return new ScenarioResult(scenario, done, wrapper != null ? wrapper.getTime() : 0,
+                (System.nanoTime() - start) / 1e9, vehicleSteps > 0 ? speedSum / vehicleSteps : 0,
+                peakActive, peakQueued, done > 0 ? (double) stoppedSum / done : 0, maxDensity, densestStreet, error);
+    }
+
+    private WrapperController open() {
+        RuntimeException last = null;
+        for (int attempt = 1; attempt <= START_ATTEMPTS; attempt++) {
+            try {
+                return new WrapperController(null, mapManager, scenario.getMap(), 0);
+            } catch (IllegalArgumentException e) {
+                throw e; // unknown map, retrying does not help
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Failed to start SUMO for " + scenario + ", attempt " + attempt, e);
+                last = e;
+            }
+        }
+        throw last;
+    }
+
+    /**
+     * Multiplies the duration of every green phase (green signals, no yellow) of every traffic light
+     * @return completed once every changed program was written, exceptionally if any failed
+     */
+    private static CompletableFuture<Void> scaleGreenPhases(WrapperController wrapper, double factor) {
+        List<CompletableFuture<Void>> changed = new ArrayList<>();
+        for (TrafficLightWrap light : wrapper.getTrafficLights().getTrafficlights()) {
+            for (TrafficLightPhase phase : light.getTrafficLightPhases()) {
+                String state = phase.getState();
+                boolean green = state.indexOf('G') >= 0 || state.indexOf('g') >= 0;
+                boolean yellow = state.indexOf('y') >= 0 || state.indexOf('Y') >= 0;
+                if (green && !yellow) changed.add(light.setPhaseDurationPermanently(phase.getIndex(), phase.getDuration() * factor));
+            }
+        }
+        return CompletableFuture.allOf(changed.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Waits for the changes queued before the first step, they were sent with it
+     * @param setup futures of the queued changes
+     * @throws IllegalStateException if one of them failed, the run is marked as failed
+     */
+    private static void awaitSetup(List<CompletableFuture<Void>> setup) {
+        try {
+            CompletableFuture.allOf(setup.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new IllegalStateException("Setup of the scenario failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    private static Street densest(WrapperController wrapper) {
+        Street densest = null;
+        for (Street s : wrapper.getStreets().getStreets()) {
+            if (densest == null || s.getDensity() > densest.getDensity()) densest = s;
+        }
+        return densest;
+    }
+
+    private static String traceRow(int step, double time, FleetStatistics stats, Street densest) {
+        return String.format(Locale.ROOT, "%d,%.2f,%d,%d,%d,%d,%.4f,%.4f,%s,%.4f", step, time,
+                stats.getActiveCount(), stats.getQueuedCount(), stats.getStoppedCount(), stats.getStoppedTime(),
+                stats.getMeanSpeed(), stats.getSpeedStdDev(),
+                densest == null ? "" : densest.getId(), densest == null ? 0.0 : densest.getDensity());
+    }
+}
@@ -0,0 +1,116 @@
+package sumo.sim.logic;
+
+import javafx.scene.paint.Color;
+import sumo.sim.objects.FleetStatistics;
+import sumo.sim.objects.TrafficLightList;
+import sumo.sim.objects.TrafficLightWrap;
+import sumo.sim.objects.VehicleList;
+import sumo.sim.objects.VehicleWrap;
+import sumo.sim.util.UniformGrid;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Snapshot of everything the renderer needs from one simulation step.
+ * <p>
+ *     Filled by {@link WrapperController#doStepUpdate()} after all lists were updated and then published via a
+ *     {@link sumo.sim.util.TripleBuffer}, so the renderer draws positions, angles and traffic light states
+ *     that all belong to the same step, no matter how the simulation and the frame rate relate.
+ * </p>
+ * <p>
+ *     The arrays are reused and only grow, capturing a step does not allocate in the steady state.
+ *     The vehicle positions are additionally sorted into a {@link UniformGrid} for culling and selection.
+ * </p>
+ */
+public class SimulationFrame {
+    private static final String NO_STATE = "";
+
+    private double simTime;
+    private int vehicleCount;
+    private double[] x = new double[64];
+    private double[] y = new double[64];
+    private double[] angle = new double[64];
+    private Color[] colors = new Color[64];
+    private VehicleWrap[] vehicles = new VehicleWrap[64]; // for selection
+    private String[] tlStates = new String[0]; // same order as TrafficLightList#getTrafficlights()
+    private double meanX = Double.NaN;
+    private double meanY = Double.NaN;
+    private final UniformGrid grid = new UniformGrid(50); // vehicle indices by position
+
+    /**
+     * Copies the current state of the lists into this frame, only called by the simulation thread.
+     * @param simTime simulation time of the step
+     * @param vl vehicles
+     * @param tl traffic lights
+     */
+    void capture(double simTime, VehicleList vl, TrafficLightList tl) {
+        this.simTime = simTime;
+
+        int n = 0;
+        for (VehicleWrap v : vl.getVehicles()) {
+            if (!v.exists()) continue; // queued vehicles are not on the map
+            if (n == x.length) grow(n * 2);
+            x[n] = v.getX();
+            y[n] = v.getY();
+            angle[n] = v.getAngle();
+            colors[n] = v.getColor();
+            vehicles[n] = v;
+            n++;
+        }
+        Arrays.fill(vehicles, n, vehicleCount > n ? vehicleCount : n, null); // no references to arrived vehicles
+        Arrays.fill(colors, n, vehicleCount > n ? vehicleCount : n, null);
+        this.vehicleCount = n;
+        grid.build(x, y, n);
+
+        FleetStatistics stats = vl.getStatistics();
+        this.meanX = stats.getMeanX();
+        this.meanY = stats.getMeanY();
+
+        List<TrafficLightWrap> lights = tl.getTrafficlights();
+        if (tlStates.length != lights.size()) tlStates = new String[lights.size()];
+        for (int i = 0; i < tlStates.length; i++) {
+            String state = lights.get(i).getSignalState(); // immutable, replaced on every update
+            tlStates[i] = state != null ? state : NO_STATE;
+        }
+    }
+
+    private void grow(int size) {
+        x = Arrays.copyOf(x, size);
+        y = Arrays.copyOf(y, size);
+        angle = Arrays.copyOf(angle, size);
+        colors = Arrays.copyOf(colors, size);
+        vehicles = Arrays.copyOf(vehicles, size);
+    }
+
+    public double getSimTime() { return simTime; }
+    /**
+     * @return number of vehicles on the road network, valid indices for the vehicle getters are below
+     */
+    public int getVehicleCount() { return vehicleCount; }
+    public double getX(int i) { return x[i]; }
+    public double getY(int i) { return y[i]; }
+    public double getAngle(int i) { return angle[i]; }
+    public Color getColor(int i) { return colors[i]; }
+    public VehicleWrap getVehicle(int i) { return vehicles[i]; }
+    /**
+     * @param tlIndex index in {@link TrafficLightList#getTrafficlights()}
+     * @return state in the format of {@link TrafficLightWrap#getSignalState()}, null if not captured yet
+     */
+    public String getTlState(int tlIndex) { return tlIndex < tlStates.length ? tlStates[tlIndex] : null; }
+    /**
+     * Passes the index of every vehicle inside the rectangle to the consumer
+     */
+    public void forEachVehicleIn(double minX, double maxX, double minY, double maxY, IntConsumer consumer) {
+        grid.query(minX, maxX, minY, maxY, consumer);
+    }
+    /**
+     * Passes the index of every vehicle within the radius around (x, y) to the consumer
+     */
+    public void forEachVehicleWithin(double x, double y, double radius, IntConsumer consumer) {
+        grid.queryRadius(x, y, radius, consumer);
+    }
+    public double getMeanX() { return meanX; }
+    public double getMeanY() { return meanY; }
+}
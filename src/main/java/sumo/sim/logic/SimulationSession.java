@@ -0,0 +1,135 @@
+package sumo.sim.logic;
+
+import it.polito.appeal.traci.SumoTraciConnection;
+import sumo.sim.data.NetworkCache;
+import sumo.sim.data.NetworkModel;
+import sumo.sim.objects.*;
+
+import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One started SUMO process of a map together with every list loaded from it.
+ * <p>
+ *     Opening a session is the slow part of starting a map: SUMO has to start and load the network,
+ *     the {@link NetworkModel} is read and the lists ask SUMO for their initial state.
+ *     A session does not step by itself, so it can be opened ahead of time in the background
+ *     (see {@link SumoConnectionPool}) and handed to the {@link WrapperController} when the map is chosen.
+ * </p>
+ */
+final class SimulationSession {
+    private final SumoMapConfig mapConfig;
+    private final SumoTraciConnection connection;
+    private final TraciCommandQueue commands;
+    private final VehicleList vl;
+    private final StreetList sl;
+    private final TrafficLightList tl;
+    private final JunctionList jl;
+    private final TypeList typel;
+    private final RouteList rl;
+
+    //Logger
+    private static final Logger logger = java.util.logging.Logger.getLogger(SimulationSession.class.getName());
+
+    private SimulationSession(SumoMapConfig mapConfig, SumoTraciConnection connection, TraciCommandQueue commands,
+                              VehicleList vl, StreetList sl, TrafficLightList tl, JunctionList jl, TypeList typel, RouteList rl) {
+        this.mapConfig = mapConfig;
+        this.connection = connection;
+        this.commands = commands;
+        this.vl = vl;
+        this.sl = sl;
+        this.tl = tl;
+        this.jl = jl;
+        this.typel = typel;
+        this.rl = rl;
+    }
+
+    /**
+     * Starts SUMO with the map and loads all lists, on the calling thread
+     * @param sumoBinary path of the SUMO binary
+     * @param mapConfig map to start
+     * @param port TraCI port, 0 to pick a free one
+     * @param owner controller the {@link RouteList} reports new routes to
+     * @param progress receives the loading progress, may be null
+     * @param cancelled checked between the slow parts, true aborts the loading and closes SUMO again; may be null.
+     *                  SUMO cannot be closed from another thread while it starts, so whoever cancels waits for this.
+     * @return the started session, SUMO is closed again if loading failed
+     * @throws CancellationException if cancelled returned true
+     */
+    static SimulationSession open(String sumoBinary, SumoMapConfig mapConfig, int port, WrapperController owner,
+                                  NetworkModel.Progress progress, BooleanSupplier cancelled) throws Exception {
+        NetworkModel.Progress p = progress != null ? progress : (step, fraction) -> { };
+        BooleanSupplier c = cancelled != null ? cancelled : () -> false;
+        checkCancelled(c, mapConfig); // nothing started yet
+        SumoTraciConnection connection = new SumoTraciConnection(sumoBinary, mapConfig.getConfigPath().toString());
+        connection.addOption("start", "true");
+        try {
+            // the .net.xml is parsed once while SUMO starts up, all lists share the model
+            Path cache = NetworkCache.pathFor(mapConfig.getConfigPath(), mapConfig.getNetPath()); // mapped if up to date
+            CompletableFuture<NetworkModel> model = NetworkModel.loadAsync(mapConfig.getNetPath().toString(), cache, progress);
+            if (port > 0) connection.runServer(port);
+            else connection.runServer(); // free port, so a warm session can run next to the current one
+            System.out.println("Connected to Sumo (" + mapConfig.getName() + ").");
+            checkCancelled(c, mapConfig);
+
+            TraciCommandQueue commands = new TraciCommandQueue(connection); // GUI changes, sent by the stepping thread
+            VehicleList vl = new VehicleList(connection, commands);
+            NetworkModel net = model.join();
+            checkCancelled(c, mapConfig);
+            p.update("Loading streets", 1.0);
+            StreetList sl = new StreetList(connection, net);
+            p.update("Loading traffic lights", 1.0);
+            TrafficLightList tl = new TrafficLightList(connection, commands, sl, net);
+            p.update("Loading junctions", 1.0);
+            JunctionList jl = new JunctionList(connection, sl, net);
+            TypeList typel = new TypeList(connection);
+            RouteList rl = new RouteList(mapConfig.getRouPath().toString(), commands, owner);
+            // shortest paths between streets without asking SUMO, ready a moment after the map (read from disk if unchanged)
+            rl.setRouteIndex(ContractionHierarchy.loadAsync(net,
+                    ContractionHierarchy.pathFor(mapConfig.getConfigPath(), mapConfig.getNetPath()), mapConfig.getNetPath()));
+
+            tl.updateAllCurrentState(); // important for rendering
+            checkCancelled(c, mapConfig); // last chance, afterward the caller owns the session
+            return new SimulationSession(mapConfig, connection, commands, vl, sl, tl, jl, typel, rl);
+        } catch (Exception e) {
+            close(connection);
+            throw e;
+        }
+    }
+
+    private static void checkCancelled(BooleanSupplier cancelled, SumoMapConfig mapConfig) {
+        if (cancelled.getAsBoolean()) throw new CancellationException("Loading " + mapConfig.getName() + " was cancelled");
+    }
+
+    /**
+     * Closes the SUMO process, the lists must not be used afterward. Queued commands fail.
+     */
+    void close() {
+        commands.close();
+        close(connection);
+    }
+
+    private static void close(SumoTraciConnection connection) {
+        if (connection.isClosed()) return;
+        try {
+            connection.close();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to close connection", e);
+        }
+    }
+
+    String getMapName() { return mapConfig.getName(); }
+    SumoMapConfig getMapConfig() { return mapConfig; }
+    SumoTraciConnection getConnection() { return connection; }
+    TraciCommandQueue getCommands() { return commands; }
+    VehicleList getVehicles() { return vl; }
+    StreetList getStreets() { return sl; }
+    TrafficLightList getTrafficLights() { return tl; }
+    JunctionList getJunctions() { return jl; }
+    TypeList getTypes() { return typel; }
+    RouteList getRoutes() { return rl; }
+}
@@ -0,0 +1,207 @@
+package sumo.sim.logic;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the simulation steps on one thread, paced by a {@link Mode}.
+ * <p>
+ *     The next step is due one period after the previous one was due, so the time a step takes is subtracted from the wait
+ *     instead of being added to it. If a step takes longer than the period the schedule is reset instead of running the
+ *     missed steps back to back. Delay, mode and factor are read before every wait, so changes apply to the running
+ *     thread without restarting it.
+ * </p>
+ * <p>
+ *     The step returns false if it did not step (e.g. paused), then the thread idles a moment and the schedule starts over.
+ * </p>
+ * <p>
+ *     A caller that does the steps on its own thread (the headless {@link ScenarioRunner}) does not {@link #start()} the
+ *     scheduler but calls {@link #pace(double)} after every step, which waits the same way.
+ * </p>
+ */
+public class StepScheduler {
+    /**
+     * How the time between two steps is chosen
+     */
+    public enum Mode {
+        /** one step every {@link #setDelay(int) delay} ms */
+        FIXED_RATE,
+        /** next step right after the previous one */
+        AS_FAST_AS_POSSIBLE,
+        /** simulated time runs {@link #setRealTimeFactor(double) factor} times faster than wall time */
+        REAL_TIME_FACTOR
+    }
+
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10); // while paused
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(20); // settings are re-read at least this often
+    private static final double COST_SMOOTHING = 0.1; // weight of the newest step in the mean step cost
+
+    private final BooleanSupplier step;
+    private final DoubleSupplier simClock;
+    private final AtomicInteger delay;
+    private volatile Mode mode = Mode.FIXED_RATE;
+    private volatile double realTimeFactor = 1.0;
+    private volatile double stepCostNanos; // smoothed wall time of one step
+    private volatile boolean behind; // last step took longer than its period
+    private volatile Thread thread; // null while stopped, a replaced thread ends after its current step
+    private long due; // when the last step was due, only used by the stepping thread (or the caller of pace)
+    private boolean paced; // pace() was called before, due is set
+
+    //Logger
+    private static final Logger logger = java.util.logging.Logger.getLogger(StepScheduler.class.getName());
+
+    /**
+     * @param step does one step, returns false if it did not step
+     * @param simClock simulated time in seconds, needed for {@link Mode#REAL_TIME_FACTOR}
+     * @param delay ms between two steps in {@link Mode#FIXED_RATE}
+     */
+    public StepScheduler(BooleanSupplier step, DoubleSupplier simClock, int delay) {
+        this.step = step;
+        this.simClock = simClock;
+        this.delay = new AtomicInteger(Math.max(0, delay));
+    }
+
+    /**
+     * Starts the step thread, does nothing if it is already running
+     */
+    public synchronized void start() {
+        if (thread != null) return;
+        Thread t = new Thread(this::run, "sim-step");
+        t.setDaemon(true);
+        thread = t;
+        t.start();
+    }
+
+    /**
+     * Stops the step thread and waits up to 2 s for the current step to finish
+     */
+    public synchronized void stop() {
+        Thread t = thread;
+        if (t == null) return;
+        thread = null;
+        LockSupport.unpark(t);
+        if (t != Thread.currentThread()) { // a step may stop its own scheduler
+            try {
+                t.join(2000);
+            } catch (InterruptedException e) {
+                logger.log(Level.WARNING, "Interrupted while stopping the step thread", e);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        Thread self = Thread.currentThread();
+        due = System.nanoTime();
+        while (thread == self) {
+            double simBefore = simClock.getAsDouble();
+            long begin = System.nanoTime();
+            boolean stepped;
+            try {
+                stepped = step.getAsBoolean();
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Failed to do a Simulation Step", e);
+                stepped = false;
+            }
+            long end = System.nanoTime();
+            if (!stepped) {
+                LockSupport.parkNanos(IDLE_NANOS);
+                due = System.nanoTime(); // paused time is not caught up
+                continue;
+            }
+            double cost = end - begin;
+            stepCostNanos = stepCostNanos == 0 ? cost : stepCostNanos + COST_SMOOTHING * (cost - stepCostNanos);
+            awaitNextStep(simClock.getAsDouble() - simBefore, () -> thread == self);
+        }
+    }
+
+    /**
+     * Paces steps done by the calling thread, for callers that step without {@link #start()}.
+     * Waits until the next step is due according to the mode, the first call returns at once.
+     * @param simStep simulated seconds of the step just done
+     */
+    public void pace(double simStep) {
+        if (!paced) {
+            paced = true;
+            due = System.nanoTime();
+            return;
+        }
+        awaitNextStep(simStep, () -> true);
+    }
+
+    /**
+     * Waits until the next step is due, the period is recomputed while waiting so a changed setting applies at once
+     * @param simStep simulated seconds of the last step
+     * @param running false ends the wait early
+     */
+    private void awaitNextStep(double simStep, BooleanSupplier running) {
+        while (running.getAsBoolean()) {
+            long period = period(simStep);
+            long next = due + period;
+            long now = System.nanoTime();
+            if (now - next >= 0) {
+                behind = period > 0 && now - next > period;
+                due = behind || period == 0 ? now : next; // more than a whole period late: start over instead of catching up
+                return;
+            }
+            LockSupport.parkNanos(Math.min(next - now, MAX_PARK_NANOS));
+        }
+    }
+
+    /**
+     * @param simStep simulated seconds of the last step
+     * @return wall time between the start of two steps in ns
+     */
+    private long period(double simStep) {
+        return switch (mode) {
+            case FIXED_RATE -> TimeUnit.MILLISECONDS.toNanos(delay.get());
+            case AS_FAST_AS_POSSIBLE -> 0;
+            case REAL_TIME_FACTOR -> simStep > 0 ? (long) (simStep * 1e9 / realTimeFactor) : 0;
+        };
+    }
+
+    /**
+     * @param delay ms between two steps in {@link Mode#FIXED_RATE}, 0 steps as fast as possible
+     */
+    public void setDelay(int delay) {
+        this.delay.set(Math.max(0, delay));
+        LockSupport.unpark(thread);
+    }
+
+    public int getDelay() { return delay.get(); }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+        LockSupport.unpark(thread);
+    }
+
+    public Mode getMode() { return mode; }
+
+    /**
+     * @param factor simulated seconds per wall second in {@link Mode#REAL_TIME_FACTOR}, e.g. 10 for ten times real time
+     */
+    public void setRealTimeFactor(double factor) {
+        if (!(factor > 0)) throw new IllegalArgumentException("Real time factor must be positive: " + factor);
+        this.realTimeFactor = factor;
+        LockSupport.unpark(thread);
+    }
+
+    public double getRealTimeFactor() { return realTimeFactor; }
+
+    /**
+     * @return smoothed wall time of one step in ms, the fastest possible period
+     */
+    public double getStepCostMillis() { return stepCostNanos / 1e6; }
+
+    /**
+     * @return true if the last step took longer than the mode allows, the pace is not met
+     */
+    public boolean isBehind() { return behind; }
+
+    public boolean isRunning() { return thread != null; }
+}
@@ -0,0 +1,195 @@
+package sumo.sim.logic;
+
+import sumo.sim.data.NetworkModel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps SUMO started for the maps the user will most likely switch to next, so a map switch only swaps connections.
+ * <p>
+ *     Every session runs its own SUMO on a free port, so warm sessions never collide with the current one and
+ *     nothing has to wait for an old port to be released. Sessions are opened one after the other on a low priority
+ *     background thread. The maps used most recently come first (switching back is the common case in a demo),
+ *     then the other maps of the {@link SumoMapManager}. At most {@code capacity} sessions are kept warm,
+ *     each one is a running SUMO process with its network loaded.
+ * </p>
+ * <p>
+ *     A map without a warm session is started on the calling thread, like before.
+ *     If its warm session is still loading, {@link #take} waits for it instead of starting a second SUMO.
+ * </p>
+ * <p>
+ *     SUMO cannot be stopped from another thread while it starts up, so {@link #close()} cancels every session that is
+ *     still being opened (it closes its SUMO at the next check) and waits up to {@link #CLOSE_WAIT_MILLIS} for them.
+ *     Callers exit the JVM right after, a session still starting then would leave its SUMO process running.
+ * </p>
+ */
+final class SumoConnectionPool {
+    private static final long CLOSE_WAIT_MILLIS = 10_000; // a map loads in a few seconds
+
+    private final String sumoBinary;
+    private final SumoMapManager mapManager;
+    private final WrapperController owner;
+    private final int capacity;
+    private final Map<String, CompletableFuture<SimulationSession>> warm = new LinkedHashMap<>(); // guarded by this
+    private final Set<CompletableFuture<SimulationSession>> cancelled = ConcurrentHashMap.newKeySet(); // no longer wanted
+    private final Set<CompletableFuture<?>> opening = ConcurrentHashMap.newKeySet(); // sessions being opened right now
+    private final Deque<String> recent = new ArrayDeque<>(); // most recently used map first, guarded by this
+    private final ExecutorService prewarmer;
+    private volatile boolean closed;
+
+    //Logger
+    private static final Logger logger = java.util.logging.Logger.getLogger(SumoConnectionPool.class.getName());
+
+    /**
+     * @param sumoBinary path of the SUMO binary
+     * @param mapManager knows the maps that can be pre-started
+     * @param owner controller the sessions are opened for
+     * @param capacity number of maps kept warm besides the current one, 0 to never pre-start
+     */
+    SumoConnectionPool(String sumoBinary, SumoMapManager mapManager, WrapperController owner, int capacity) {
+        this.sumoBinary = sumoBinary;
+        this.mapManager = mapManager;
+        this.owner = owner;
+        this.capacity = capacity;
+        this.prewarmer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "sumo-prewarm");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY); // must not slow down the running simulation
+            return t;
+        });
+    }
+
+    /**
+     * Returns a started session of the map, the warm one if there is one, else SUMO is started now
+     * @param mapName name of the map in the {@link SumoMapManager}
+     * @param port TraCI port for a new SUMO, 0 for a free one
+     * @param progress receives the loading progress if SUMO has to be started, may be null
+     * @param cancelled true aborts starting SUMO, see {@link SimulationSession#open}; may be null
+     * @return the session, owned by the caller from now on
+     * @throws CancellationException if cancelled or the pool was closed meanwhile
+     */
+    SimulationSession take(String mapName, int port, NetworkModel.Progress progress, BooleanSupplier cancelled) throws Exception {
+        SumoMapConfig config = mapManager.getConfig(mapName);
+        if (config == null) throw new IllegalArgumentException("Unknown map: " + mapName);
+        CompletableFuture<SimulationSession> pending;
+        synchronized (this) {
+            pending = warm.remove(mapName);
+        }
+        if (pending != null) {
+            try {
+                SimulationSession session = pending.join();
+                logger.log(Level.INFO, "Using pre-started Sumo for " + mapName);
+                return session;
+            } catch (CompletionException e) {
+                logger.log(Level.WARNING, "Pre-started Sumo for " + mapName + " failed, starting it again", e.getCause());
+            }
+        }
+        CompletableFuture<Void> marker = new CompletableFuture<>(); // lets close() wait for this thread
+        opening.add(marker);
+        try {
+            return SimulationSession.open(sumoBinary, config, port, owner, progress,
+                    () -> closed || (cancelled != null && cancelled.getAsBoolean()));
+        } finally {
+            opening.remove(marker);
+            marker.complete(null);
+        }
+    }
+
+    /**
+     * Remembers the map as the current one and starts SUMO in the background for the likely next maps.
+     * Warm sessions of maps that are no longer likely are closed.
+     * @param current map that is running now
+     */
+    synchronized void prewarmAround(String current) {
+        recent.remove(current);
+        recent.addFirst(current);
+        if (closed || capacity <= 0) return;
+
+        List<String> likely = new ArrayList<>();
+        List<String> candidates = new ArrayList<>(recent);
+        candidates.addAll(mapManager.getNames());
+        for (String name : candidates) {
+            if (likely.size() == capacity) break;
+            if (!name.equals(current) && !likely.contains(name) && mapManager.getConfig(name) != null) likely.add(name);
+        }
+
+        for (Iterator<Map.Entry<String, CompletableFuture<SimulationSession>>> it = warm.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, CompletableFuture<SimulationSession>> e = it.next();
+            if (!likely.contains(e.getKey())) {
+                it.remove();
+                cancelled.add(e.getValue()); // a session still loading closes its SUMO itself
+                e.getValue().thenAccept(SimulationSession::close); // one that was already loaded
+            }
+        }
+        for (String name : likely) {
+            if (warm.containsKey(name)) continue;
+            SumoMapConfig config = mapManager.getConfig(name);
+            CompletableFuture<SimulationSession> future = new CompletableFuture<>();
+            opening.add(future);
+            prewarmer.execute(() -> {
+                try {
+                    future.complete(SimulationSession.open(sumoBinary, config, 0, owner, null,
+                            () -> closed || cancelled.contains(future)));
+                } catch (CancellationException e) {
+                    future.completeExceptionally(e);
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "Failed to pre-start Sumo for " + name, e);
+                    future.completeExceptionally(e);
+                } finally {
+                    opening.remove(future);
+                    cancelled.remove(future);
+                }
+            });
+            warm.put(name, future);
+        }
+    }
+
+    /**
+     * Closes every warm session and waits up to {@link #CLOSE_WAIT_MILLIS} for sessions that are still being opened,
+     * they close their SUMO at their next check. Later calls of {@link #prewarmAround} do nothing.
+     */
+    void close() {
+        List<CompletableFuture<SimulationSession>> sessions;
+        synchronized (this) {
+            closed = true; // queued and loading sessions are cancelled
+            sessions = new ArrayList<>(warm.values());
+            warm.clear();
+        }
+        prewarmer.shutdown(); // no interrupt: an interrupted start could leave SUMO running without a connection
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_WAIT_MILLIS);
+        for (CompletableFuture<?> f : new ArrayList<>(opening)) {
+            try {
+                f.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                logger.log(Level.WARNING, "Sumo is still starting, it may keep running after exit");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception ignored) { // cancelled or failed, closed by the opener
+            }
+        }
+        for (CompletableFuture<SimulationSession> f : sessions) {
+            SimulationSession s = f.isDone() && !f.isCompletedExceptionally() ? f.join() : null;
+            if (s != null) s.close(); // loaded before it noticed the cancel
+            else f.thenAccept(SimulationSession::close); // still loading after the wait
+        }
+    }
+}
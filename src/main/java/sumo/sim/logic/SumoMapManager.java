@@ -60,10 +60,19 @@ public class SumoMapManager {
         checkFile(file);
     }
 
-    private void checkFile(File file) {
+    /**
+     * Imports a map from its .sumocfg without a file dialog, e.g. for {@link sumo.sim.HeadlessMain}
+     * @param file the .sumocfg
+     * @return name of the imported map, null if the config or its .net/.rou files do not exist
+     */
+    public String importMap(File file) {
+        return checkFile(file);
+    }
+
+    private String checkFile(File file) {
         if (file==null || !file.exists()) {
             // file does not exist
-            return;
+            return null;
         }
 
         // Scanning for .rou / .net in Config
@@ -94,10 +103,12 @@ public class SumoMapManager {
                 maps.put(mapName, newConfig); // put in list
                 System.out.println(maps.get(mapName));
                 System.out.println(netFile);
+                return mapName;
             }
         }
 
         // should have output error messages
+        return null;
     }
 
     public List<String> getNames() {
@@ -6,16 +6,19 @@ import javafx.application.Platform;
 import javafx.scene.paint.Color;
 import sumo.sim.*;
 import sumo.sim.objects.*;
+import sumo.sim.util.TripleBuffer;
 import sumo.sim.util.Util;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 
 
 /**
@@ -25,6 +28,9 @@ import java.util.concurrent.TimeUnit;
 public class WrapperController {
     // connections
     private SumoTraciConnection connection;
+    private TraciCommandQueue commands; // TraCI changes from any thread, sent by the stepping thread
+    private SimulationSession session; // owns the connection and the lists below
+    private final SumoConnectionPool pool; // SUMO started ahead of time for the next maps
     private final GuiController guiController;
     private final SumoMapManager mapManager;
     // lists
@@ -36,17 +42,22 @@ public class WrapperController {
     private RouteList rl;
 
     // simulation
-    private boolean terminated;
-    private ScheduledExecutorService executor;
-    private int delay = 50;
-    private boolean paused;
+    private volatile boolean terminated; // read by the step thread
+    private final StepScheduler scheduler = new StepScheduler(this::scheduledStep, this::getTime, 50);
+    private volatile boolean paused;
     private double simTime;
+    private final TripleBuffer<SimulationFrame> frames = new TripleBuffer<>(SimulationFrame::new); // step -> renderer
+    private final AtomicBoolean guiUpdatePending = new AtomicBoolean(); // coalesces doSimStep calls on the FX thread
+    private volatile boolean densityEnabled; // kept across map switches
+    private final AtomicBoolean progressPending = new AtomicBoolean(); // coalesces loading progress on the FX thread
+    private final AtomicReference<Object[]> pendingProgress = new AtomicReference<>(); // latest {step, fraction}
     //private XML netXml;
 
     // config
     private SumoMapConfig mapConfig;
-    public static String currentNet = null;
-    public static String currentRou = null;
+    private String currentNet;
+    private String currentRou;
+    private final int port; // TraCI port of the first map, 0 for a free one
     public String sumoBinary;
 
     //Logger
@@ -58,46 +69,73 @@ public class WrapperController {
      * @param guiController
      */
     public WrapperController(GuiController guiController,  SumoMapManager mapManager) {
+        this(guiController, mapManager, "Frankfurt", 0, null); // Frankfurt, TestMap
+    }
+
+    /**
+     * The constructor of the Wrapper controller, loading can be aborted.
+     * <p>
+     *     Once {@code cancelled} returns true, SUMO is closed at the next loading step and the constructor throws.
+     *     Used by the GUI, which loads the map in the background and may be closed meanwhile.
+     * </p>
+     *
+     * @param guiController
+     * @param mapManager
+     * @param cancelled checked while loading, null if loading is never aborted
+     */
+    public WrapperController(GuiController guiController, SumoMapManager mapManager, BooleanSupplier cancelled) {
+        this(guiController, mapManager, "Frankfurt", 0, cancelled);
+    }
+
+    /**
+     * The constructor of the Wrapper controller for a specific map.
+     * <p>
+     *     Without a {@link GuiController} (headless, see {@link HeadlessMain}) nothing is posted to the FX thread,
+     *     no frames are published and the {@link StepScheduler} is not started: the caller steps via {@link #doStepUpdate()}.
+     *     With a GUI the next likely map is started in the background, so {@link #mapSwitch(String)} only swaps connections
+     *     (see {@link SumoConnectionPool}).
+     * </p>
+     *
+     * @param guiController the GUI, null to run headless
+     * @param mapManager
+     * @param mapName name of the map in mapManager
+     * @param port TraCI port of the first SUMO process, 0 to pick a free port (needed to run several simulations at once).
+     *             SUMO of later maps always gets a free port.
+     */
+    public WrapperController(GuiController guiController, SumoMapManager mapManager, String mapName, int port) {
+        this(guiController, mapManager, mapName, port, null);
+    }
+
+    private WrapperController(GuiController guiController, SumoMapManager mapManager, String mapName, int port,
+                              BooleanSupplier cancelled) {
         // Select Windows (.exe) or UNIX binary based on static function Util.getOSType()
         sumoBinary = Util.getOSType().equals("Windows")
                 // using sumo-gui for visualisation now, will later be replaced by our own rendered map
                 ? "src/main/resources/Binaries/sumo.exe"
                 : "src/main/resources/Binaries/sumo";
 
-        // config knows both .rou and .net XMLs
-        mapConfig = mapManager.getConfig("Frankfurt"); // Frankfurt, TestMap
-        String configFile = mapConfig.getConfigPath().toString();
-        currentNet = mapConfig.getNetPath().toString();
-        currentRou = mapConfig.getRouPath().toString();
-
-        // create new connection with the binary and map config file
-        this.connection = new SumoTraciConnection(sumoBinary,configFile);
+        if (mapManager.getConfig(mapName) == null) throw new IllegalArgumentException("Unknown map: " + mapName);
         this.guiController = guiController;
         this.mapManager = mapManager;
+        this.port = port;
+        // one warm map for the GUI, each is a whole SUMO process; headless runs never switch
+        this.pool = new SumoConnectionPool(sumoBinary, mapManager, this, guiController != null ? 1 : 0);
         this.terminated = false;
         this.paused = true;
         this.simTime = 0;
 
         // initial setup to initiate server connection and start sim
-        initializeSimulationStart();
+        initializeSimulationStart(mapName, cancelled);
     }
 
-    private void initializeSimulationStart() {
-        connection.addOption("start", "true");
-
+    private void initializeSimulationStart(String mapName, BooleanSupplier cancelled) {
         try {
-            connection.runServer(8813); // preventing random port
-            System.out.println("Connected to Sumo.");
-
-            vl = new VehicleList(connection);
-            sl = new StreetList(this.connection);
-            tl = new TrafficLightList(connection, sl);
-            jl = new JunctionList(connection, sl);
-            typel = new TypeList(connection);
-            rl = new RouteList(currentRou, connection, this);
-
-            tl.updateAllCurrentState(); // important for rendering
-            start();
+            adopt(pool.take(mapName, port, this::reportProgress, cancelled));
+            if (guiController != null) { // headless callers drive the steps themselves
+                publishFrame();
+                start();
+            }
+            pool.prewarmAround(mapName);
 
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Failed to start Sumo Simulation", e);
@@ -106,54 +144,87 @@ public class WrapperController {
         }
     }
 
+    /**
+     * Makes the session the current simulation, synchronized so no step runs on half swapped lists
+     * @param next started session of the new map
+     */
+    private synchronized void adopt(SimulationSession next) {
+        session = next;
+        mapConfig = next.getMapConfig();
+        currentNet = mapConfig.getNetPath().toString();
+        currentRou = mapConfig.getRouPath().toString();
+        connection = next.getConnection();
+        commands = next.getCommands();
+        vl = next.getVehicles();
+        sl = next.getStreets();
+        sl.getDensityEngine().setEnabled(densityEnabled);
+        tl = next.getTrafficLights();
+        jl = next.getJunctions();
+        typel = next.getTypes();
+        rl = next.getRoutes();
+        simTime = 0;
+    }
+
+    /**
+     * Shows the loading progress in the GUI, coalesced so a fast loader does not flood the FX queue
+     * @param step what is currently loaded
+     * @param fraction 0 to 1
+     */
+    private void reportProgress(String step, double fraction) {
+        if (guiController == null) return;
+        pendingProgress.set(new Object[]{step, fraction});
+        if (progressPending.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                progressPending.set(false);
+                Object[] p = pendingProgress.get();
+                guiController.showLoadingProgress((String) p[0], (double) p[1]);
+            });
+        }
+    }
+
     /**
      * Starts/Continues the simulation.
      * If the connection is closed it will terminate immediate.
      */
-    public void start() { // maybe with connection as argument? closing connection opened prior
-        if (executor != null && !executor.isShutdown()) {
-            return;
-        }
-        executor = Executors.newSingleThreadScheduledExecutor(); // creates scheduler thread, runs repeatedly
-        executor.scheduleAtFixedRate(() -> {
-            if (paused || terminated) return;
+    public void start() {
+        scheduler.start(); // step thread, paced by the mode of the scheduler
+    }
 
-            if (connection.isClosed()) {
-                terminate(); // if connection is closed terminate instantly
-                return;
-            }
-            try {
-                doStepUpdate(); // sim step
-            } catch (IllegalStateException e) {
-                logger.log(Level.WARNING, "Failed to do a Simulation Step", e);
-                terminate();
-            }
+    /**
+     * One step of the {@link StepScheduler}
+     * @return false if nothing was stepped (paused, terminated), the scheduler then idles
+     */
+    private boolean scheduledStep() {
+        if (terminated) return false;
+        if (paused) {
+            flushCommands(); // GUI changes while paused are not held back until the next step
+            return false;
+        }
 
-            }, 0, delay, TimeUnit.MILLISECONDS); // initial delay, delay, unit
+        if (connection.isClosed()) {
+            terminate(); // if connection is closed terminate instantly
+            return false;
+        }
+        try {
+            doStepUpdate(); // sim step
+        } catch (IllegalStateException e) {
+            logger.log(Level.WARNING, "Failed to do a Simulation Step", e);
+            terminate();
+            return false;
+        }
+        return true;
     }
 
     /**
      * Terminates the simulation.
      */
     public void terminate() {
-        paused = false; // else executor would not terminate
+        paused = false; // else the step thread would not terminate
         terminated = true; // Flag to stop new logic
 
-        if (executor != null) {
-            // no longer allow new tasks to be scheduled
-            executor.shutdown();
-            try {
-                // awaitTermination returns TRUE if termination occurs within delay ms, giving the simulation time to finalize current step
-                // otherwise it returns FALSE, in which case we immediately run shutdownNow(), risking errors
-                if (!executor.awaitTermination(2, TimeUnit.SECONDS)) { // waits 2 sec
-                    // force kill if it's stuck
-                    executor.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                logger.log(Level.WARNING, "Failed to shutdown executor", e);
-                executor.shutdownNow();
-            }
-        }
+        scheduler.stop();
+        pool.close(); // warm SUMO processes of other maps
+        if (commands != null) commands.close(); // nobody sends them anymore
         // Close Sumo connection
         if (connection != null && !connection.isClosed()) {
             try {
@@ -169,24 +240,26 @@ public class WrapperController {
     // methods controlling the simulation / also connected with the guiController
 
     /**
-     * Changes delay based on "delay" argument and reruns executor thread with new delay.
-     * @param delay
+     * Changes the delay between two steps in {@link StepScheduler.Mode#FIXED_RATE}, applied to the running step thread.
+     * @param delay ms, 0 steps as fast as SUMO answers
      */
     public void changeDelay(int delay) {
-        this.delay = delay;
-        if (!executor.isShutdown() && executor!= null) {
-            try {
-                executor.shutdown();
-                if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
-                    executor.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-        }
-        terminated = false;
-        paused = false;
-        start();
+        scheduler.setDelay(delay);
+    }
+
+    /**
+     * Chooses how the steps are paced, e.g. {@link StepScheduler.Mode#REAL_TIME_FACTOR} for an exact pace in presentations
+     * @param mode see {@link StepScheduler.Mode}
+     */
+    public void setStepMode(StepScheduler.Mode mode) {
+        scheduler.setMode(mode);
+    }
+
+    /**
+     * @param factor simulated seconds per wall second in {@link StepScheduler.Mode#REAL_TIME_FACTOR}
+     */
+    public void setRealTimeFactor(double factor) {
+        scheduler.setRealTimeFactor(factor);
     }
 
     /**
@@ -206,18 +279,31 @@ public class WrapperController {
     /**
      * Performs one simulation step and gui simulation step.
      * All important updates are done here -> e.g. vl.updateAllVehicles()
+     * <p>
+     *     First the commands queued in the {@link TraciCommandQueue} (vehicles, routes, traffic light changes) are sent.
+     * </p>
+     * <p>
+     *     Afterward a {@link SimulationFrame} of this step is published for the renderer.
+     *     The gui step is only scheduled if the previous one already ran, so fast simulation steps do not flood the FX queue.
+     * </p>
      */
-    public void doStepUpdate() {
+    public synchronized void doStepUpdate() { // synchronized: step thread and step button must not step at the same time
         // updating gui and simulation
         try {
+            commands.flush(); // queued changes apply to this step
             connection.do_timestep();
             vl.updateAllVehicles();
             tl.updateAllCurrentState();
-            sl.updateStreets();
+            sl.updateDensity(vl.getVehicles(), vl.getExternalRoadIDs()); // O(vehicles), skipped while the heatmap is hidden
             //vl.printVehicles();
             simTime = (double) connection.do_job_get(Simulation.getTime()); // exception thrown here needs fix
-            if (!terminated) {
-                Platform.runLater(guiController::doSimStep); // gui sim step (connected with wrapperCon)
+            if (guiController == null) return; // headless, nobody renders
+            publishFrame();
+            if (!terminated && guiUpdatePending.compareAndSet(false, true)) {
+                Platform.runLater(() -> {
+                    guiUpdatePending.set(false); // reset first, a step finishing meanwhile schedules the next update
+                    guiController.doSimStep(); // gui sim step (connected with wrapperCon)
+                });
             }
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Failed to update Sim Step", e);
@@ -227,46 +313,65 @@ public class WrapperController {
 
     }
 
+    /**
+     * Sends the queued TraCI commands without stepping, synchronized like {@link #doStepUpdate()} so they never overlap a step
+     */
+    private synchronized void flushCommands() {
+        if (commands == null || connection.isClosed()) return;
+        commands.flush();
+    }
+
+    /**
+     * Captures the current state of the lists into the back {@link SimulationFrame} and hands it to the renderer.
+     */
+    private synchronized void publishFrame() {
+        frames.back().capture(simTime, vl, tl);
+        frames.publish();
+    }
+
+    /**
+     * Switches to another map on a new thread.
+     * <p>
+     *     Usually SUMO of the new map is already running (see {@link SumoConnectionPool}), so only the connection and
+     *     the lists are swapped. The old SUMO runs on its own port and is closed after the swap, nothing waits for it.
+     *     If the new map cannot be started the old one keeps running.
+     * </p>
+     * @param mapName name of the map in the {@link SumoMapManager}
+     */
     public void mapSwitch(String mapName) {
         System.out.println("Map Switch to: " + mapName);
         paused = true;
-        terminated = true; // stops executor
+        terminated = true; // stops stepping
 
         // New thread for loading to prevent freezing
         new Thread(() -> {
-            terminate(); // instantly forces termination of current thread
+            scheduler.stop(); // the old connection stays open until the new one is there
+            SimulationSession old = session;
 
-            // time to close and open old port
-            try { Thread.sleep(500); } catch (InterruptedException e) {
-                // should have something here
-            }
-
-            // load new config
             try {
-                mapConfig= mapManager.getConfig(mapName);
-                currentNet = mapConfig.getNetPath().toString();
-                currentRou = mapConfig.getRouPath().toString();
-
-                this.connection = new SumoTraciConnection(sumoBinary, mapConfig.getConfigPath().toString()); // new connection
-                simTime = 0;
+                SimulationSession next = pool.take(mapName, 0, this::reportProgress, null); // warm if pre-started
+                adopt(next);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Failed to switch maps", e);
+                System.err.println("Error switching maps: " + e.getMessage());
+            }
 
-                // prevents new sim from starting instantly
-                paused = true;
+            // prevents new sim from starting instantly
+            paused = true;
+            terminated = false;
+            if (guiController != null) {
+                publishFrame();
+                start();
                 Platform.runLater(guiController::doSimStep);
-
-                terminated = false;
-
-                // start again
-                initializeSimulationStart();
-
-                // initializes new map
+                // initializes new map (or the old one again, which enables the map buttons)
                 Platform.runLater(() -> guiController.initializeCon(this));
+            }
 
-            } catch (Exception e) {
-                logger.log(Level.FINE, "Failed to switch maps", e);
-                System.err.println("Error switching maps: " + e.getMessage());
+            if (session != old) {
+                if (old != null) old.close();
+                pool.prewarmAround(mapName); // the old map is the most likely next one
             }
-        }).start();
+        }, "map-switch").start();
     }
 
     // Main Button features
@@ -277,32 +382,43 @@ public class WrapperController {
      * @param type Sets type based on existing types in .rou XML
      * @param route Sets route
      * @param color Color based on Hex code
+     * @return completed once the vehicles were added before a step
      */
-    public void addVehicle(int amount, String type, String route, Color color) {
+    public CompletableFuture<Void> addVehicle(int amount, String type, String route, Color color) {
         // used by guiController, executes addVehicle from WrapperVehicle
-        vl.addVehicle(amount, type, route, color);
+        return vl.addVehicle(amount, type, route, color);
     }
 
-    public void addRoute(String start, String end, String id) {
-        rl.addRoute(start,end,id);
+    public CompletableFuture<String> addRoute(String start, String end, String id) {
+        return rl.addRoute(start,end,id);
     }
 
     public void updateRoutes() {
+        if (guiController == null) return;
         Platform.runLater(guiController::initializeDropDowns);
     }
     /**
      * Spread the amount of vehicles determined by the stress test setting evenly across all existing routes
+     * <p>
+     *     Exactly {@code amount} vehicles are added: if it does not divide by the number of routes,
+     *     the first routes get one vehicle more.
+     * </p>
      * @param amount number of cars (set in Stress Test Menu)
      * @param color {@link Color}
      * @param type Type ID (defaults to "DEFAULT_VEHTYPE" if null)
+     * @return completed once every vehicle was added in SUMO, exceptionally if adding any of them failed
      */
-    public void StressTest(int amount, Color color, String type) {
+    public CompletableFuture<Void> StressTest(int amount, Color color, String type) {
         Map<String, List<String>> Routes = rl.getAllRoutes();
         int amount_per = amount/Routes.size();
+        int remainder = amount % Routes.size(); // spread over the first routes, integer division alone loses them
         type = (type == null) ? "DEFAULT_VEHTYPE" : type;
+        List<CompletableFuture<Void>> added = new ArrayList<>();
         for(String key : Routes.keySet()) {
-            addVehicle(amount_per, "DEFAULT_VEHTYPE", key, color);
+            int n = amount_per + (remainder-- > 0 ? 1 : 0);
+            if (n > 0) added.add(addVehicle(n, type, key, color));
         }
+        return CompletableFuture.allOf(added.toArray(new CompletableFuture[0]));
     }
 
 
@@ -311,17 +427,17 @@ public class WrapperController {
      * @param tlid
      * @param duration
      */
-    public void setTlSettings(String tlid, int duration) {
-        tl.getTL(tlid).setPhaseDuration(duration);
+    public CompletableFuture<Void> setTlSettings(String tlid, int duration) {
         //double check = tl.getTL(tlid).getDuration();
+        return tl.getTL(tlid).setPhaseDuration(duration);
     }
 
-    public void setTrafficLightDurationPermanently(String id, int phaseIndex,  double newDuration ) {
-        tl.getTL(id).setPhaseDurationPermanently(phaseIndex, newDuration);
+    public CompletableFuture<Void> setTrafficLightDurationPermanently(String id, int phaseIndex,  double newDuration ) {
+        return tl.getTL(id).setPhaseDurationPermanently(phaseIndex, newDuration);
     }
 
-    public void setTrafficLightPhase(String id, int phaseIndex) {
-        tl.getTL(id).setPhaseNumber(phaseIndex);
+    public CompletableFuture<Void> setTrafficLightPhase(String id, int phaseIndex) {
+        return tl.getTL(id).setPhaseNumber(phaseIndex);
     }
 
     // getter
@@ -333,14 +449,15 @@ public class WrapperController {
      * @return e.g.: [g,r,y,80] -> state , last element is duration
      */
     public String[] getTlStateDuration(String tlID) {
-        String [] ret = new String[tl.getTL(tlID).getCurrentState().length/2 + 2]; // 2 extra values: dur, remain
-        int j = 0;
-        for (int i=0; i<ret.length-2; i++) {
-            ret[i] = tl.getTL(tlID).getCurrentState()[j];
-            j += 2; // 0,2,4,8
+        TrafficLightWrap light = tl.getTL(tlID);
+        String state = light.getSignalState();
+        if (state == null) state = "";
+        String [] ret = new String[state.length() + 2]; // 2 extra values: dur, remain
+        for (int i=0; i<state.length(); i++) {
+            ret[i] = String.valueOf(state.charAt(i));
         }
-        ret[ret.length-2] = ""+(tl.getTL(tlID).getDuration());
-        ret[ret.length-1] = ""+(tl.getTL(tlID).getNextSwitch());
+        ret[ret.length-2] = ""+(light.getDuration());
+        ret[ret.length-1] = ""+(light.getNextSwitch());
 
         return ret; // [g,r,y,80] -> state , last element is duration
     }
@@ -365,14 +482,20 @@ public class WrapperController {
     }
 
     public String[] getTLCurrentState(String id) {return tl.getTL(id).getCurrentState();}
-    public static String getCurrentNet(){ return currentNet; }
+    public String getCurrentNet(){ return currentNet; }
     public double getTime() { return simTime; }
-    public int getDelay() { return delay; }
+    public int getDelay() { return scheduler.getDelay(); }
+    public StepScheduler getScheduler() { return scheduler; }
     public JunctionList getJunctions() { return jl; }
     public StreetList getStreets() { return sl; }
+    public void setDensityEnabled(boolean enabled) {
+        this.densityEnabled = enabled;
+        if (sl != null) sl.getDensityEngine().setEnabled(enabled);
+    }
     public VehicleList getVehicles() { return vl; }
     public TrafficLightList getTrafficLights() { return tl; }
     public RouteList getRoutes()  { return rl; }
+    public TripleBuffer<SimulationFrame> getFrames() { return frames; }
     public String getPhaseAtIndex(String id, int index) {return tl.getTL(id).getPhaseAtIndex(index);}
     public int getCurrentTLPhaseIndex(String id) {return tl.getTL(id).getPhaseNumber();}
     public List<TrafficLightPhase> getTrafficLightPhases(String id){ return tl.getTL(id).getTrafficLightPhases();}
@@ -0,0 +1,550 @@
+package sumo.sim.objects;
+
+import sumo.sim.data.NetworkModel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Contraction hierarchy for shortest path queries between streets, answered without asking SUMO.
+ *
+ * <p>
+ *     The graph is the line graph of the network: every street is a node, every connection of the {@code .net.xml}
+ *     is an arc to the street it leads to, weighted with the length of that street. Routes found this way only use
+ *     turns SUMO allows.
+ * </p>
+ * <p>
+ *     Preprocessing contracts the nodes one by one (ordered by edge difference) and adds a shortcut wherever a
+ *     removed node was on the only shortest path between two of its neighbours. A query is a bidirectional Dijkstra
+ *     that only goes upwards in the node order, it settles a few hundred nodes even on large maps.
+ *     Shortcuts remember the two arcs they replace and are unpacked into streets afterwards.
+ * </p>
+ * <p>
+ *     Built in the background after the map was loaded and stored beside the {@code .sumocfg} as
+ *     {@code <net file>.starch}, keyed by size and modification time of the net file like the {@link sumo.sim.data.NetworkCache}.
+ *     The index is immutable, queries are thread-safe.
+ * </p>
+ */
+public final class ContractionHierarchy {
+    private static final int MAGIC = 0x53544348; // "STCH"
+    private static final int VERSION = 1;
+    private static final int WITNESS_SETTLE_LIMIT = 500; // bounded witness search, a missed witness only adds a shortcut
+
+    //Logger
+    private static final Logger logger = java.util.logging.Logger.getLogger(ContractionHierarchy.class.getName());
+
+    private final String[] streetIDs; // node -> street ID
+    private final Map<String, Integer> nodes = new HashMap<>();
+    private final int[] rank; // node -> contraction order
+
+    // arcs, original arcs first, then shortcuts
+    private final int[] arcFrom;
+    private final int[] arcTo;
+    private final double[] arcWeight;
+    private final int[] arcFirst; // shortcut -> first replaced arc, -1 for original arcs
+    private final int[] arcSecond;
+
+    // search graphs: arcs leaving a node upwards, arcs entering a node from above (searched backwards)
+    private final int[] upOffsets;
+    private final int[] upArcs;
+    private final int[] downOffsets;
+    private final int[] downArcs;
+
+    private final ThreadLocal<Query> queries;
+
+    private ContractionHierarchy(String[] streetIDs, int[] rank, int[] arcFrom, int[] arcTo, double[] arcWeight,
+                                 int[] arcFirst, int[] arcSecond) {
+        this.streetIDs = streetIDs;
+        this.rank = rank;
+        this.arcFrom = arcFrom;
+        this.arcTo = arcTo;
+        this.arcWeight = arcWeight;
+        this.arcFirst = arcFirst;
+        this.arcSecond = arcSecond;
+        for (int n = 0; n < streetIDs.length; n++) nodes.put(streetIDs[n], n);
+
+        int n = streetIDs.length;
+        upOffsets = new int[n + 1];
+        downOffsets = new int[n + 1];
+        for (int a = 0; a < arcFrom.length; a++) {
+            if (rank[arcFrom[a]] < rank[arcTo[a]]) upOffsets[arcFrom[a] + 1]++;
+            else downOffsets[arcTo[a] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            upOffsets[i + 1] += upOffsets[i];
+            downOffsets[i + 1] += downOffsets[i];
+        }
+        upArcs = new int[upOffsets[n]];
+        downArcs = new int[downOffsets[n]];
+        int[] upFill = Arrays.copyOf(upOffsets, n);
+        int[] downFill = Arrays.copyOf(downOffsets, n);
+        for (int a = 0; a < arcFrom.length; a++) {
+            if (rank[arcFrom[a]] < rank[arcTo[a]]) upArcs[upFill[arcFrom[a]]++] = a;
+            else downArcs[downFill[arcTo[a]]++] = a;
+        }
+        queries = ThreadLocal.withInitial(() -> new Query(n));
+    }
+
+    /**
+     * @param configPath the {@code .sumocfg} of the map
+     * @param netPath the {@code .net.xml} of the map
+     * @return path of the index file beside the config
+     */
+    public static Path pathFor(File configPath, File netPath) {
+        File dir = configPath.getAbsoluteFile().getParentFile();
+        return new File(dir, netPath.getName() + ".starch").toPath();
+    }
+
+    /**
+     * Reads the index from disk if it is up to date, otherwise builds it from the model and stores it. Runs on a background thread.
+     * @param model network model of the map
+     * @param indexPath index file, null to never read or write it
+     * @param netFile the {@code .net.xml} of the model
+     * @return future completed with the index
+     */
+    public static CompletableFuture<ContractionHierarchy> loadAsync(NetworkModel model, Path indexPath, File netFile) {
+        CompletableFuture<ContractionHierarchy> future = new CompletableFuture<>();
+        Thread builder = new Thread(() -> {
+            try {
+                ContractionHierarchy ch = indexPath != null ? read(indexPath, netFile) : null;
+                if (ch == null) {
+                    long start = System.nanoTime();
+                    ch = build(model);
+                    logger.log(Level.INFO, "Built route index with " + ch.streetIDs.length + " streets and "
+                            + ch.arcFrom.length + " arcs in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+                    if (indexPath != null) ch.write(indexPath, netFile);
+                }
+                future.complete(ch);
+            } catch (Throwable t) {
+                logger.log(Level.WARNING, "Failed to build route index", t);
+                future.completeExceptionally(t);
+            }
+        }, "route-index");
+        builder.setDaemon(true);
+        builder.setPriority(Thread.MIN_PRIORITY); // must not slow down the simulation
+        builder.start();
+        return future;
+    }
+
+    /**
+     * Shortest route between two streets
+     * @param fromStreet ID of the first street
+     * @param toStreet ID of the last street
+     * @return street IDs including both ends, null if a street is unknown or toStreet is not reachable
+     */
+    public List<String> route(String fromStreet, String toStreet) {
+        Integer s = nodes.get(fromStreet);
+        Integer t = nodes.get(toStreet);
+        if (s == null || t == null) return null;
+        int[] arcs = queries.get().search(s, t);
+        if (arcs == null) return null;
+
+        List<String> route = new ArrayList<>();
+        route.add(streetIDs[s]);
+        int[] stack = new int[16];
+        for (int a : arcs) {
+            int size = 0;
+            stack[size++] = a;
+            while (size > 0) { // unpack shortcuts depth first, second arc is pushed first
+                int arc = stack[--size];
+                if (arcFirst[arc] < 0) {
+                    route.add(streetIDs[arcTo[arc]]);
+                    continue;
+                }
+                if (size + 2 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                stack[size++] = arcSecond[arc];
+                stack[size++] = arcFirst[arc];
+            }
+        }
+        return route;
+    }
+
+    /**
+     * @return length in m of the shortest route, without the first street, infinity if not reachable
+     */
+    public double distance(String fromStreet, String toStreet) {
+        Integer s = nodes.get(fromStreet);
+        Integer t = nodes.get(toStreet);
+        if (s == null || t == null) return Double.POSITIVE_INFINITY;
+        return queries.get().search(s, t) == null ? Double.POSITIVE_INFINITY : queries.get().best;
+    }
+
+    public int getStreetCount() { return streetIDs.length; }
+
+    /**
+     * Per thread scratch of the bidirectional search
+     */
+    private final class Query {
+        final double[] dist = new double[2 * streetIDs.length]; // forward distances, then backward distances
+        final int[] prev; // arc the best path arrives by
+        final int[] seen;
+        final NodeHeap forward;
+        final NodeHeap backward;
+        int query;
+        double best;
+
+        Query(int n) {
+            prev = new int[2 * n];
+            seen = new int[2 * n];
+            forward = new NodeHeap(n);
+            backward = new NodeHeap(n);
+        }
+
+        /**
+         * @return arcs of the shortest path from s to t (may be shortcuts), null if not reachable
+         */
+        int[] search(int s, int t) {
+            if (s == t) {
+                best = 0;
+                return new int[0];
+            }
+            int n = streetIDs.length;
+            if (++query == 0) {
+                Arrays.fill(seen, 0);
+                query = 1;
+            }
+            visit(s, 0, -1);
+            visit(n + t, 0, -1);
+            forward.offer(s, 0);
+            backward.offer(t, 0);
+            best = Double.POSITIVE_INFINITY;
+            int meet = -1;
+
+            // a side stops once its smallest key cannot improve the best path
+            while (true) {
+                double fMin = forward.minPriority();
+                double bMin = backward.minPriority();
+                if (Math.min(fMin, bMin) >= best) break;
+                boolean fwd = fMin <= bMin;
+                NodeHeap heap = fwd ? forward : backward;
+                int u = heap.pop();
+                int self = fwd ? u : n + u;
+                int other = fwd ? n + u : u;
+                if (seen[other] == query && dist[self] + dist[other] < best) {
+                    best = dist[self] + dist[other];
+                    meet = u;
+                }
+                int[] offsets = fwd ? upOffsets : downOffsets;
+                int[] arcs = fwd ? upArcs : downArcs;
+                for (int i = offsets[u]; i < offsets[u + 1]; i++) {
+                    int a = arcs[i];
+                    int v = fwd ? arcTo[a] : arcFrom[a];
+                    int key = fwd ? v : n + v;
+                    double alt = dist[self] + arcWeight[a];
+                    if (seen[key] != query || alt < dist[key]) {
+                        visit(key, alt, a);
+                        heap.offer(v, alt);
+                    }
+                }
+            }
+            forward.clear();
+            backward.clear();
+            if (meet < 0) return null;
+
+            // s -> meet along the forward predecessors (reversed), then meet -> t along the backward ones
+            int up = 0, down = 0;
+            for (int v = meet; prev[v] >= 0; v = arcFrom[prev[v]]) up++;
+            for (int v = meet; prev[n + v] >= 0; v = arcTo[prev[n + v]]) down++;
+            int[] path = new int[up + down];
+            int i = up;
+            for (int v = meet; prev[v] >= 0; v = arcFrom[prev[v]]) path[--i] = prev[v];
+            i = up;
+            for (int v = meet; prev[n + v] >= 0; v = arcTo[prev[n + v]]) path[i++] = prev[n + v];
+            return path;
+        }
+
+        private void visit(int key, double d, int arc) {
+            seen[key] = query;
+            dist[key] = d;
+            prev[key] = arc;
+        }
+    }
+
+    // preprocessing
+
+    /**
+     * Builds the index on the calling thread
+     * @param model network model of the map
+     * @return the index
+     */
+    public static ContractionHierarchy build(NetworkModel model) {
+        List<String> ids = new ArrayList<>();
+        Map<String, Integer> index = new HashMap<>();
+        List<Double> lengths = new ArrayList<>();
+        for (NetworkModel.Edge e : model.getEdges()) {
+            index.put(e.getId(), ids.size());
+            ids.add(e.getId());
+            lengths.add(e.getLanes().isEmpty() ? 0.0 : e.getLanes().getFirst().getLength());
+        }
+        Arcs arcs = new Arcs();
+        Set<Long> known = new HashSet<>(); // one arc per street pair, connections exist per lane
+        for (NetworkModel.Connection c : model.getConnections()) {
+            Integer from = index.get(c.getFrom());
+            Integer to = index.get(c.getTo());
+            if (from == null || to == null || from.equals(to)) continue;
+            if (known.add(((long) from << 32) | to)) arcs.add(from, to, lengths.get(to), -1, -1);
+        }
+        return new Contractor(ids.size(), arcs).run(ids.toArray(new String[0]));
+    }
+
+    /**
+     * Growable arc arrays
+     */
+    private static final class Arcs {
+        int[] from = new int[64], to = new int[64], first = new int[64], second = new int[64];
+        double[] weight = new double[64];
+        int size;
+
+        int add(int f, int t, double w, int a, int b) {
+            if (size == from.length) {
+                int cap = size * 2;
+                from = Arrays.copyOf(from, cap); to = Arrays.copyOf(to, cap);
+                first = Arrays.copyOf(first, cap); second = Arrays.copyOf(second, cap);
+                weight = Arrays.copyOf(weight, cap);
+            }
+            from[size] = f; to[size] = t; weight[size] = w; first[size] = a; second[size] = b;
+            return size++;
+        }
+    }
+
+    /**
+     * Node contraction with lazy priority updates
+     */
+    private static final class Contractor {
+        final int n;
+        final Arcs arcs;
+        final int[][] out, in; // node -> arc ids
+        final int[] outSize, inSize;
+        final boolean[] contracted;
+        final int[] contractedNeighbours;
+        // witness search scratch
+        final double[] dist;
+        final int[] seen;
+        final NodeHeap heap;
+        int search;
+        // shortcuts found by the last shortcuts() call
+        int[] scFrom = new int[16], scTo = new int[16], scFirst = new int[16], scSecond = new int[16];
+        double[] scWeight = new double[16];
+        int scSize;
+
+        Contractor(int n, Arcs arcs) {
+            this.n = n;
+            this.arcs = arcs;
+            out = new int[n][];
+            in = new int[n][];
+            outSize = new int[n];
+            inSize = new int[n];
+            contracted = new boolean[n];
+            contractedNeighbours = new int[n];
+            dist = new double[n];
+            seen = new int[n];
+            heap = new NodeHeap(n);
+            for (int i = 0; i < n; i++) {
+                out[i] = new int[4];
+                in[i] = new int[4];
+            }
+            for (int a = 0; a < arcs.size; a++) link(a);
+        }
+
+        void link(int a) {
+            int f = arcs.from[a], t = arcs.to[a];
+            if (outSize[f] == out[f].length) out[f] = Arrays.copyOf(out[f], outSize[f] * 2);
+            out[f][outSize[f]++] = a;
+            if (inSize[t] == in[t].length) in[t] = Arrays.copyOf(in[t], inSize[t] * 2);
+            in[t][inSize[t]++] = a;
+        }
+
+        ContractionHierarchy run(String[] ids) {
+            NodeHeap order = new NodeHeap(n);
+            for (int v = 0; v < n; v++) order.offer(v, priority(v));
+            int[] rank = new int[n];
+            int next = 0;
+            while (!order.isEmpty()) {
+                int v = order.pop();
+                double p = priority(v); // lazy update, neighbours changed since v was queued
+                if (p > order.minPriority()) {
+                    order.offer(v, p);
+                    continue;
+                }
+                shortcuts(v);
+                for (int i = 0; i < scSize; i++) link(arcs.add(scFrom[i], scTo[i], scWeight[i], scFirst[i], scSecond[i]));
+                contracted[v] = true;
+                rank[v] = next++;
+                for (int i = 0; i < outSize[v]; i++) contractedNeighbours[arcs.to[out[v][i]]]++;
+                for (int i = 0; i < inSize[v]; i++) contractedNeighbours[arcs.from[in[v][i]]]++;
+            }
+            return new ContractionHierarchy(ids, rank,
+                    Arrays.copyOf(arcs.from, arcs.size), Arrays.copyOf(arcs.to, arcs.size),
+                    Arrays.copyOf(arcs.weight, arcs.size), Arrays.copyOf(arcs.first, arcs.size),
+                    Arrays.copyOf(arcs.second, arcs.size));
+        }
+
+        /**
+         * Edge difference: shortcuts added minus arcs removed, plus already contracted neighbours for an even spread
+         */
+        double priority(int v) {
+            shortcuts(v);
+            int removed = 0;
+            for (int i = 0; i < outSize[v]; i++) if (!contracted[arcs.to[out[v][i]]]) removed++;
+            for (int i = 0; i < inSize[v]; i++) if (!contracted[arcs.from[in[v][i]]]) removed++;
+            return scSize - removed + contractedNeighbours[v];
+        }
+
+        /**
+         * Collects the shortcuts needed to contract v
+         */
+        void shortcuts(int v) {
+            scSize = 0;
+            double maxOut = 0;
+            for (int j = 0; j < outSize[v]; j++) {
+                int o = out[v][j];
+                if (!contracted[arcs.to[o]]) maxOut = Math.max(maxOut, arcs.weight[o]);
+            }
+            for (int i = 0; i < inSize[v]; i++) {
+                int a = in[v][i];
+                int u = arcs.from[a];
+                if (contracted[u]) continue;
+                witness(u, v, arcs.weight[a] + maxOut);
+                for (int j = 0; j < outSize[v]; j++) {
+                    int o = out[v][j];
+                    int x = arcs.to[o];
+                    if (contracted[x] || x == u) continue;
+                    double via = arcs.weight[a] + arcs.weight[o];
+                    if (seen[x] == search && dist[x] <= via) continue; // witness path without v
+                    addShortcut(u, x, via, a, o);
+                }
+            }
+        }
+
+        void addShortcut(int u, int x, double w, int a, int o) {
+            for (int k = 0; k < scSize; k++) { // parallel arcs into v or out of v, keep the shortest
+                if (scFrom[k] == u && scTo[k] == x) {
+                    if (w < scWeight[k]) { scWeight[k] = w; scFirst[k] = a; scSecond[k] = o; }
+                    return;
+                }
+            }
+            if (scSize == scFrom.length) {
+                int cap = scSize * 2;
+                scFrom = Arrays.copyOf(scFrom, cap); scTo = Arrays.copyOf(scTo, cap);
+                scFirst = Arrays.copyOf(scFirst, cap); scSecond = Arrays.copyOf(scSecond, cap);
+                scWeight = Arrays.copyOf(scWeight, cap);
+            }
+            scFrom[scSize] = u; scTo[scSize] = x; scWeight[scSize] = w; scFirst[scSize] = a; scSecond[scSize] = o;
+            scSize++;
+        }
+
+        /**
+         * Dijkstra from u over the remaining graph without v, up to limit
+         */
+        void witness(int u, int v, double limit) {
+            if (++search == 0) {
+                Arrays.fill(seen, 0);
+                search = 1;
+            }
+            seen[u] = search;
+            dist[u] = 0;
+            heap.offer(u, 0);
+            int settled = 0;
+            while (!heap.isEmpty() && heap.minPriority() <= limit && settled++ < WITNESS_SETTLE_LIMIT) {
+                int w = heap.pop();
+                for (int i = 0; i < outSize[w]; i++) {
+                    int a = out[w][i];
+                    int x = arcs.to[a];
+                    if (x == v || contracted[x]) continue;
+                    double alt = dist[w] + arcs.weight[a];
+                    if (seen[x] != search || alt < dist[x]) {
+                        seen[x] = search;
+                        dist[x] = alt;
+                        heap.offer(x, alt);
+                    }
+                }
+            }
+            heap.clear();
+        }
+    }
+
+    // persistence
+
+    /**
+     * Reads the index if it was written for the current version of the net file
+     * @return the index, null if there is no up-to-date index
+     */
+    static ContractionHierarchy read(Path indexPath, File netFile) {
+        if (!Files.isRegularFile(indexPath)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            if (in.readLong() != netFile.length() || in.readLong() != netFile.lastModified()) return null; // outdated
+            String[] ids = new String[in.readInt()];
+            int[] rank = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = in.readUTF();
+                rank[i] = in.readInt();
+            }
+            int m = in.readInt();
+            int[] from = new int[m], to = new int[m], first = new int[m], second = new int[m];
+            double[] weight = new double[m];
+            for (int a = 0; a < m; a++) {
+                from[a] = in.readInt();
+                to[a] = in.readInt();
+                weight[a] = in.readDouble();
+                first[a] = in.readInt();
+                second[a] = in.readInt();
+            }
+            return new ContractionHierarchy(ids, rank, from, to, weight, first, second);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to read route index, building it again", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the index to a temporary file and moves it over the index file
+     */
+    void write(Path indexPath, File netFile) {
+        Path tmp = null;
+        try {
+            // unique name, parallel simulations of one map may write the index at the same time
+            tmp = Files.createTempFile(indexPath.toAbsolutePath().getParent(), indexPath.getFileName() + ".", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(netFile.length());
+                out.writeLong(netFile.lastModified());
+                out.writeInt(streetIDs.length);
+                for (int i = 0; i < streetIDs.length; i++) {
+                    out.writeUTF(streetIDs[i]);
+                    out.writeInt(rank[i]);
+                }
+                out.writeInt(arcFrom.length);
+                for (int a = 0; a < arcFrom.length; a++) {
+                    out.writeInt(arcFrom[a]);
+                    out.writeInt(arcTo[a]);
+                    out.writeDouble(arcWeight[a]);
+                    out.writeInt(arcFirst[a]);
+                    out.writeInt(arcSecond[a]);
+                }
+            }
+            Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to write route index", e);
+            try { if (tmp != null) Files.deleteIfExists(tmp); } catch (IOException ignored) { }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package sumo.sim.objects;
+
+import java.util.Arrays;
+
+/**
+ * Calculates the density of every {@link Street} from the road IDs of the vehicles, created by {@link StreetList}.
+ * <p>
+ *     Polling {@link de.tudresden.sumo.cmd.Edge#getLastStepVehicleNumber(String)} costs one round trip per street and step.
+ *     Instead the vehicles are counted per street handle from {@link VehicleWrap#getRoadID()}, which is already delivered
+ *     with the step response, so an update costs O(vehicles). Vehicles SUMO departs on its own (from the {@code .rou.xml})
+ *     are counted from their subscribed road IDs, see {@link VehicleList#getExternalRoadIDs()}.
+ *     Only streets whose count changed since the last update get a new density.
+ * </p>
+ * <p>
+ *     While disabled (heatmap not visible) nothing is counted, the next update after enabling brings all streets up to date.
+ *     Only called by the simulation thread.
+ * </p>
+ * <p>
+ *     The heatmap only shows in which {@link #bucket(double) bucket} a density lies. {@link #getBucketVersion()} changes
+ *     only when a street moves to another bucket, so the renderer redraws the cached streets then and not every step.
+ * </p>
+ */
+public class DensityEngine {
+    private final StreetList streets;
+    private final double[] lengthKm; // length of the first lane per handle, cached at load time
+    private int[] count; // vehicles per handle of the current update
+    private int[] lastCount; // vehicles per handle of the previous update
+    private int[] touched = new int[64]; // handles with count > 0 in the current update
+    private int touchedSize;
+    private int[] lastTouched = new int[64]; // handles with lastCount > 0
+    private int lastTouchedSize;
+    private volatile boolean enabled;
+    private volatile int bucketVersion; // incremented when a street changed its bucket
+    private boolean bucketChanged; // during an update
+
+    /**
+     * @param streets streets with their final handles
+     */
+    DensityEngine(StreetList streets) {
+        this.streets = streets;
+        int n = streets.getStreets().size();
+        this.lengthKm = new double[n];
+        this.count = new int[n];
+        this.lastCount = new int[n];
+        for (int h = 0; h < n; h++) {
+            Street s = streets.getStreet(h);
+            lengthKm[h] = (s == null || s.getLanes().isEmpty()) ? 0 : s.getLanes().getFirst().getLength() / 1000.0;
+        }
+    }
+
+    /**
+     * Counts the vehicles per street and updates the density of every street whose count changed.
+     * @param vehicles queued and active vehicles, vehicles without road ID are skipped
+     * @param externalRoadIDs road IDs of the vehicles not added by us, null entries are skipped
+     */
+    void update(Iterable<VehicleWrap> vehicles, Iterable<String> externalRoadIDs) {
+        if (!enabled) return;
+        touchedSize = 0;
+        bucketChanged = false;
+        for (VehicleWrap v : vehicles) count(v.getRoadID());
+        for (String roadID : externalRoadIDs) count(roadID);
+        // streets that are occupied now, changed count or newly occupied
+        for (int i = 0; i < touchedSize; i++) {
+            int h = touched[i];
+            if (count[h] != lastCount[h]) apply(h, count[h]);
+        }
+        // streets that were occupied before and are empty now
+        for (int i = 0; i < lastTouchedSize; i++) {
+            int h = lastTouched[i];
+            if (count[h] == 0) apply(h, 0);
+            lastCount[h] = 0;
+        }
+        // current -> last, swapping keeps both arrays allocated
+        int[] tmp = lastCount; lastCount = count; count = tmp;
+        tmp = lastTouched; lastTouched = touched; touched = tmp;
+        lastTouchedSize = touchedSize;
+        if (bucketChanged) bucketVersion++; // once per update, after all streets were set
+    }
+
+    private void count(String roadID) {
+        int h = streets.getStreetHandle(roadID); // internal edges (":J0_0") are not streets -> -1
+        if (h < 0 || h >= count.length) return;
+        if (count[h]++ == 0) {
+            if (touchedSize == touched.length) touched = Arrays.copyOf(touched, touchedSize * 2);
+            touched[touchedSize++] = h;
+        }
+    }
+
+    private void apply(int h, int vehicles) {
+        Street s = streets.getStreet(h);
+        if (s == null) return;
+        double density = lengthKm[h] > 0 ? vehicles / lengthKm[h] : 0;
+        if (bucket(density) != bucket(s.getDensity())) bucketChanged = true;
+        s.setDensity(density);
+    }
+
+    /**
+     * Color class of a density in the heatmap
+     * @param density vehicles per km
+     * @return 0 below 20, 1 below 50, 2 below 100, else 3
+     */
+    public static int bucket(double density) {
+        if (density >= 100.0) return 3;
+        if (density >= 50.0) return 2;
+        if (density >= 20.0) return 1;
+        return 0;
+    }
+
+    /**
+     * @return changes whenever a street moved to another {@link #bucket(double) bucket}
+     */
+    public int getBucketVersion() { return bucketVersion; }
+
+    /**
+     * @param enabled false to skip counting, e.g. while the density heatmap is hidden
+     */
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public boolean isEnabled() { return enabled; }
+}
@@ -0,0 +1,112 @@
+package sumo.sim.objects;
+
+/**
+ * Immutable snapshot of the fleet-wide vehicle statistics of one simulation step.
+ * <p>
+ *     Computed once per step by {@link VehicleList#updateAllVehicles()} in a single pass over the {@link VehicleStateBuffer}
+ *     (mean and variance of the speed using Welford's algorithm) and published as a whole,
+ *     so the GUI reads consistent values in O(1) instead of rescanning all vehicles per value.
+ * </p>
+ */
+public final class FleetStatistics {
+    /**
+     * Statistics before the first step
+     */
+    public static final FleetStatistics EMPTY = new FleetStatistics(0, 0, 0, 0, 0, 0, Double.NaN, Double.NaN);
+
+    private final int activeCount;
+    private final int queuedCount;
+    private final int stoppedCount;
+    private final int stoppedTime;
+    private final double meanSpeed;
+    private final double speedStdDev;
+    private final double meanX;
+    private final double meanY;
+
+    FleetStatistics(int activeCount, int queuedCount, int stoppedCount, int stoppedTime,
+                    double meanSpeed, double speedStdDev, double meanX, double meanY) {
+        this.activeCount = activeCount;
+        this.queuedCount = queuedCount;
+        this.stoppedCount = stoppedCount;
+        this.stoppedTime = stoppedTime;
+        this.meanSpeed = meanSpeed;
+        this.speedStdDev = speedStdDev;
+        this.meanX = meanX;
+        this.meanY = meanY;
+    }
+
+    /**
+     * Collects the values of the active vehicles one by one, reused every step.
+     */
+    static final class Accumulator {
+        private int count;
+        private int stoppedCount;
+        private int stoppedTime;
+        private double mean; // running mean of the speed
+        private double m2; // sum of squared differences from the running mean
+        private double sumX;
+        private double sumY;
+
+        void reset() {
+            count = 0;
+            stoppedCount = 0;
+            stoppedTime = 0;
+            mean = 0;
+            m2 = 0;
+            sumX = 0;
+            sumY = 0;
+        }
+
+        void add(double speed, double x, double y, boolean stopped, int waitingTime) {
+            count++;
+            double delta = speed - mean;
+            mean += delta / count;
+            m2 += delta * (speed - mean);
+            sumX += x;
+            sumY += y;
+            if (stopped) stoppedCount++;
+            stoppedTime += waitingTime;
+        }
+
+        FleetStatistics snapshot(int queuedCount) {
+            if (count == 0) {
+                return new FleetStatistics(0, queuedCount, 0, 0, 0, 0, Double.NaN, Double.NaN);
+            }
+            return new FleetStatistics(count, queuedCount, stoppedCount, stoppedTime,
+                    mean, Math.sqrt(m2 / count), sumX / count, sumY / count);
+        }
+    }
+
+    /**
+     * @return vehicles on the road network
+     */
+    public int getActiveCount() { return activeCount; }
+    /**
+     * @return vehicles added but not yet departed
+     */
+    public int getQueuedCount() { return queuedCount; }
+    /**
+     * @return active vehicles with a speed of 0
+     */
+    public int getStoppedCount() { return stoppedCount; }
+    /**
+     * @return summed waiting time of all active vehicles in s
+     */
+    public int getStoppedTime() { return stoppedTime; }
+    /**
+     * @return mean speed of the active vehicles in m/s, 0 without active vehicles
+     */
+    public double getMeanSpeed() { return meanSpeed; }
+    /**
+     * @return population standard deviation of the speed in m/s, 0 without active vehicles
+     */
+    public double getSpeedStdDev() { return speedStdDev; }
+    /**
+     * @return mean x coordinate of the active vehicles, NaN without active vehicles
+     */
+    public double getMeanX() { return meanX; }
+    /**
+     * @return mean y coordinate of the active vehicles, NaN without active vehicles
+     */
+    public double getMeanY() { return meanY; }
+}
@@ -3,6 +3,8 @@ package sumo.sim.objects;
 import de.tudresden.sumo.cmd.Junction;
 import de.tudresden.sumo.objects.SumoStringList;
 import it.polito.appeal.traci.SumoTraciConnection;
+import sumo.sim.data.NetworkModel;
+import sumo.sim.util.IdIndex;
 
 import java.util.ArrayList;
 import java.util.*;
@@ -16,8 +18,9 @@ import java.util.logging.Logger;
 public class JunctionList {
     //private final Set<JunctionWrap> junctions = new HashSet<>();
     private final ArrayList<JunctionWrap> junctions = new ArrayList<>(); // List of TrafficLights
+    private final IdIndex<JunctionWrap> junctionIDs = new IdIndex<>(); // ID -> Junction and dense handle
     private int count;
-    private Map<String, Set<String>> adjacency = new HashMap<>();
+    private volatile RoadGraph graph; // rebuilt by updateAdjacency
     private final StreetList streets;
 
     //Logger
@@ -27,13 +30,18 @@ public class JunctionList {
      *
      * @param con
      * @param streets
+     * @param model network model of the current {@code .net.xml}, junctions missing in it are loaded via TraCI
      */
-    public JunctionList(SumoTraciConnection con, StreetList streets) {
+    public JunctionList(SumoTraciConnection con, StreetList streets, NetworkModel model) {
         this.streets = streets;
         try {
             SumoStringList list = (SumoStringList) con.do_job_get(Junction.getIDList()); // returns string array
             for (String id : list) {
-                junctions.add(new JunctionWrap(id, con)); // every existing id in .rou is created as TrafficWrap + added in List
+                NetworkModel.Junction known = model.getJunction(id);
+                // every existing id in .rou is created as JunctionWrap + added in List
+                JunctionWrap jw = known != null ? new JunctionWrap(known, con) : new JunctionWrap(id, con);
+                junctions.add(jw);
+                junctionIDs.add(id, jw);
                 count++;
             }
             updateAdjacency();
@@ -45,35 +53,25 @@ public class JunctionList {
     }
 
     /**
-     * Updates the Adjacence Matrix used for Route Generation
+     * Rebuilds the {@link RoadGraph} used for Route Generation
      */
     public void updateAdjacency(){
+        graph = new RoadGraph(this, streets);
+    }
 
-        adjacency.clear();
-
-        for(JunctionWrap jw : junctions){
-            adjacency.put(jw.getID(), new HashSet<>());
-        }
-
-        for (Street s : streets.getStreets()){
-            String from = s.getFromJunction();
-            String to = s.getToJunction();
-
-            if (from == null || to == null) continue;
-            if (!adjacency.containsKey(from)) continue;
-            if (!adjacency.containsKey(to)) continue;
-
-            adjacency.get(from).add(to);
-            adjacency.get(to).add(from);
-        }
+    /**
+     * @return directed graph of all junctions and streets, see {@link RoadRouter}
+     */
+    public RoadGraph getRoadGraph() {
+        return graph;
     }
 
     /**
-     * Prints the Adjacency Matrix
+     * Prints the Adjacency of every Junction
      */
     public void printAdjacency() {
-        for (String j : adjacency.keySet()) {
-            System.out.println(j + " → " + adjacency.get(j));
+        for (JunctionWrap jw : junctions) {
+            System.out.println(jw.getID() + " → " + getAdjacentVertexes(jw.getID()));
         }
     }
 
@@ -83,21 +81,40 @@ public class JunctionList {
      * @return Junction
      */
     public JunctionWrap getJunction(String id) {
-        for (JunctionWrap jw : junctions) {
-            if (jw.getID().equals(id)) {
-                return jw;
-            }
-        }
-        return null;
+        return junctionIDs.get(id);
+    }
+
+    /**
+     * Returns the dense handle assigned to a Junction at load time
+     * @param id Junction ID
+     * @return handle (0 to number of junctions - 1), -1 if unknown
+     */
+    public int getJunctionHandle(String id) {
+        return junctionIDs.getHandle(id);
     }
 
     /**
-     * Get the corresponding adjacent junctions of one junction
+     * @param handle handle returned by {@link JunctionList#getJunctionHandle(String)}
+     * @return Junction with this handle
+     */
+    public JunctionWrap getJunction(int handle) {
+        return junctionIDs.get(handle);
+    }
+
+    /**
+     * Get the junctions reachable by one street from a junction
      * @param junctionID
      * @return Set<String> Vertexes adjacent to one junction
      */
     public Set<String> getAdjacentVertexes(String junctionID) {
-        return adjacency.getOrDefault(junctionID, Collections.emptySet()) ;
+        int node = junctionIDs.getHandle(junctionID);
+        if (node < 0) return Collections.emptySet();
+        RoadGraph g = graph;
+        Set<String> adjacent = new LinkedHashSet<>();
+        for (int e = g.firstEdge(node); e < g.endEdge(node); e++) {
+            adjacent.add(junctionIDs.get(g.getTarget(e)).getID());
+        }
+        return adjacent;
     }
 
     /**
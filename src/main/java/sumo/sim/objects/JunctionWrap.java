@@ -6,14 +6,13 @@ import de.tudresden.sumo.objects.SumoPosition2D;
 import it.polito.appeal.traci.SumoTraciConnection;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
+import sumo.sim.data.NetworkModel;
 
 import java.awt.geom.Point2D;
 import java.util.LinkedList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import static java.lang.Math.abs;
-
 /**
  * Class for the Junctions
  *
@@ -31,9 +30,6 @@ public class JunctionWrap extends SimulationObject {
     private double[] shapeY;
     private double minX, maxX, minY, maxY;
 
-    private double distance = Integer.MAX_VALUE; //Used for Dijkstra Initialization
-    private String predecessor = null; //Used for Dijkstra
-
     //Logger
     private static final Logger logger = java.util.logging.Logger.getLogger(JunctionWrap.class.getName());
 
@@ -70,6 +66,22 @@ public class JunctionWrap extends SimulationObject {
         calculateBounds(shapeX, shapeY);
     }
 
+    /**
+     * Constructor for JunctionWrap from the geometry read from the {@code .net.xml}, without any TraCI call
+     *
+     * @param junction position and shape of the junction, see {@link NetworkModel}
+     * @param con
+     */
+    public JunctionWrap(NetworkModel.Junction junction, SumoTraciConnection con) {
+        super(junction.getId());
+        this.con = con;
+        this.spawnable = false;
+        this.position = new Point2D.Double(junction.getX(), junction.getY());
+        this.shapeX = junction.getShapeX();
+        this.shapeY = junction.getShapeY();
+        calculateBounds(shapeX, shapeY);
+    }
+
     // rendering
 
     @Override
@@ -86,34 +98,6 @@ public class JunctionWrap extends SimulationObject {
         }
     }
 
-    /**
-     * Set the Distance of one Junction.
-     * Only used for Route generation
-     * @param distance
-     */
-    public void setDistance(double distance) {
-        this.distance = distance;
-    }
-
-    /**
-     * Set the Predecessor of one Junction
-     * Only used for Route generation
-     * @param predecessor
-     */
-    public void setPredecessor(String predecessor) {
-        this.predecessor = predecessor;
-    }
-
-    /**
-     * Calculate and returns the distance of this junction to Junction u
-     * @param u
-     * @return distance to Junction u
-     */
-    public double distanceTo(JunctionWrap u) {
-        return abs((this.position.x + this.position.y) - (u.position.x + u.position.y));
-    }
-
-
     public void calculateBounds() {
         minX = Double.MAX_VALUE;
         maxX = -Double.MAX_VALUE;
@@ -145,12 +129,6 @@ public class JunctionWrap extends SimulationObject {
     public String getID() {
         return id;
     }
-    public double getDistance() {
-        return distance;
-    }
-    public String getPredecessor() {
-        return predecessor;
-    }
     public double[] getShapeX() {
         return shapeX;
     }
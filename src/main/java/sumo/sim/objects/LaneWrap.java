@@ -5,6 +5,8 @@ import de.tudresden.sumo.objects.SumoGeometry;
 import de.tudresden.sumo.objects.SumoPosition2D;
 import de.tudresden.sumo.util.SumoCommand;
 import it.polito.appeal.traci.SumoTraciConnection;
+import sumo.sim.data.NetworkModel;
+
 import java.util.LinkedList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -60,6 +62,23 @@ public class LaneWrap {
         }
     }
 
+    /**
+     * Initializes this lane from the geometry read from the {@code .net.xml}, without any TraCI call
+     * @param lane geometry of the lane, see {@link NetworkModel}
+     * @param connection an instance of {@link SumoTraciConnection}
+     * @param edgeID Edge in which the Lane lies
+     */
+    public LaneWrap(NetworkModel.Lane lane, SumoTraciConnection connection, String edgeID) {
+        this.laneID = lane.getId();
+        this.connection = connection;
+        this.edgeID = edgeID;
+        this.index = -1; // if no change -> no index for tl
+        this.shapeX = lane.getShapeX();
+        this.shapeY = lane.getShapeY();
+        this.length = lane.getLength();
+        this.width = lane.getWidth();
+    }
+
     /**
      * @return this Lane's ID.
      */
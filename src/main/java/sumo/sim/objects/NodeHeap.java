@@ -0,0 +1,94 @@
+package sumo.sim.objects;
+
+import java.util.Arrays;
+
+/**
+ * Indexed binary min heap of node indices, used by {@link RoadRouter} and {@link ContractionHierarchy}.
+ * <p>
+ *     Every node is queued at most once, a lower priority for a queued node moves it up in place (decrease-key).
+ * </p>
+ */
+final class NodeHeap {
+    private final int[] heap;
+    private final int[] pos; // node -> position in heap, -1 if not queued
+    private final double[] priority;
+    private int size;
+
+    NodeHeap(int nodeCount) {
+        heap = new int[nodeCount];
+        pos = new int[nodeCount];
+        priority = new double[nodeCount];
+        Arrays.fill(pos, -1);
+    }
+
+    boolean isEmpty() { return size == 0; }
+    boolean contains(int node) { return pos[node] >= 0; }
+
+    /**
+     * @return priority of the top node, infinity if empty
+     */
+    double minPriority() { return size == 0 ? Double.POSITIVE_INFINITY : priority[heap[0]]; }
+
+    /**
+     * Queues the node, or lowers its priority if it is queued with a higher one
+     */
+    void offer(int node, double p) {
+        if (pos[node] < 0) {
+            priority[node] = p;
+            heap[size] = node;
+            pos[node] = size;
+            up(size++);
+        } else if (p < priority[node]) {
+            priority[node] = p;
+            up(pos[node]);
+        }
+    }
+
+    int pop() {
+        int top = heap[0];
+        pos[top] = -1;
+        if (--size > 0) {
+            heap[0] = heap[size];
+            pos[heap[0]] = 0;
+            down(0);
+        }
+        return top;
+    }
+
+    /**
+     * Removes every node, O(size)
+     */
+    void clear() {
+        while (size > 0) pos[heap[--size]] = -1;
+    }
+
+    private void up(int i) {
+        int node = heap[i];
+        double p = priority[node];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (priority[heap[parent]] <= p) break;
+            heap[i] = heap[parent];
+            pos[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = node;
+        pos[node] = i;
+    }
+
+    private void down(int i) {
+        int node = heap[i];
+        double p = priority[node];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && priority[heap[child + 1]] < priority[heap[child]]) child++;
+            if (priority[heap[child]] >= p) break;
+            heap[i] = heap[child];
+            pos[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = node;
+        pos[node] = i;
+    }
+}
@@ -0,0 +1,142 @@
+package sumo.sim.objects;
+
+import java.util.Arrays;
+
+/**
+ * Directed road network in compressed sparse row (CSR) form, built from the {@link StreetList} by {@link JunctionList}.
+ * <p>
+ *     Nodes are the junction handles of {@link JunctionList}, every street is one edge from its from- to its to-junction.
+ *     The outgoing edges of node n are the indices {@code offsets[n]} to {@code offsets[n + 1] - 1} of the edge arrays,
+ *     so a search touches a few flat arrays instead of maps and sets of IDs.
+ *     The weight of an edge is the length of its first lane.
+ * </p>
+ * <p>
+ *     The graph is immutable and can be shared between threads, searches are done by {@link RoadRouter}.
+ * </p>
+ */
+public final class RoadGraph {
+    private final int nodeCount;
+    private final int[] offsets; // node -> first outgoing edge, offsets[nodeCount] = edge count
+    private final int[] sources; // edge -> from node
+    private final int[] targets; // edge -> to node
+    private final double[] weights; // edge -> length in m
+    private final int[] streets; // edge -> street handle
+    private final String[] edgeIDs; // edge -> street ID
+    private final double[] x; // node -> position
+    private final double[] y;
+    private final double heuristicScale; // <= 1, keeps the straight line distance a lower bound of every path
+
+    /**
+     * @param junctions junctions with their final handles
+     * @param streetList streets with their final handles, streets with unknown junctions are skipped
+     */
+    RoadGraph(JunctionList junctions, StreetList streetList) {
+        this(positions(junctions, true), positions(junctions, false), streetArrays(junctions, streetList));
+    }
+
+    private static double[] positions(JunctionList junctions, boolean x) {
+        double[] pos = new double[junctions.getJunctions().size()];
+        for (int n = 0; n < pos.length; n++) {
+            JunctionWrap jw = junctions.getJunction(n);
+            pos[n] = x ? jw.getPosition().x : jw.getPosition().y;
+        }
+        return pos;
+    }
+
+    private static Object[] streetArrays(JunctionList junctions, StreetList streetList) {
+        int n = streetList.getStreets().size();
+        int[] from = new int[n];
+        int[] to = new int[n];
+        double[] length = new double[n];
+        String[] ids = new String[n];
+        for (int h = 0; h < n; h++) {
+            Street s = streetList.getStreet(h);
+            from[h] = s == null || s.getFromJunction() == null ? -1 : junctions.getJunctionHandle(s.getFromJunction());
+            to[h] = s == null || s.getToJunction() == null ? -1 : junctions.getJunctionHandle(s.getToJunction());
+            length[h] = s == null || s.getLanes().isEmpty() ? -1 : s.getLanes().getFirst().getLength();
+            ids[h] = s == null ? null : s.getId();
+        }
+        return new Object[]{from, to, length, ids};
+    }
+
+    private RoadGraph(double[] x, double[] y, Object[] streets) {
+        this(x, y, (int[]) streets[0], (int[]) streets[1], (double[]) streets[2], (String[]) streets[3]);
+    }
+
+    /**
+     * @param x node positions
+     * @param y node positions
+     * @param from per street handle: from node, -1 to skip the street
+     * @param to per street handle: to node, -1 to skip the street
+     * @param length per street handle: length in m, negative for the straight line distance
+     * @param ids per street handle: street ID
+     */
+    RoadGraph(double[] x, double[] y, int[] from, int[] to, double[] length, String[] ids) {
+        this.nodeCount = x.length;
+        this.x = x;
+        this.y = y;
+
+        // first pass: out degree per node, second pass: fill the rows
+        int streetCount = from.length;
+        offsets = new int[nodeCount + 1];
+        int edgeCount = 0;
+        for (int h = 0; h < streetCount; h++) {
+            if (skip(from[h], to[h])) continue;
+            offsets[from[h] + 1]++;
+            edgeCount++;
+        }
+        for (int n = 0; n < nodeCount; n++) offsets[n + 1] += offsets[n];
+
+        sources = new int[edgeCount];
+        targets = new int[edgeCount];
+        weights = new double[edgeCount];
+        streets = new int[edgeCount];
+        edgeIDs = new String[edgeCount];
+        int[] fill = Arrays.copyOf(offsets, nodeCount);
+        double scale = 1.0;
+        for (int h = 0; h < streetCount; h++) {
+            if (skip(from[h], to[h])) continue;
+            int e = fill[from[h]]++;
+            double straight = Math.hypot(x[to[h]] - x[from[h]], y[to[h]] - y[from[h]]);
+            double w = length[h] < 0 ? straight : length[h];
+            sources[e] = from[h];
+            targets[e] = to[h];
+            weights[e] = w;
+            streets[e] = h;
+            edgeIDs[e] = ids[h];
+            // lanes end at the junction border, so a lane can be shorter than the distance of the junction centers
+            if (straight > 0 && w / straight < scale) scale = w / straight;
+        }
+        heuristicScale = scale;
+    }
+
+    private static boolean skip(int from, int to) {
+        return from < 0 || to < 0 || from == to;
+    }
+
+    public int getNodeCount() { return nodeCount; }
+    public int getEdgeCount() { return targets.length; }
+
+    /**
+     * @return index of the first outgoing edge of the node
+     */
+    public int firstEdge(int node) { return offsets[node]; }
+
+    /**
+     * @return index after the last outgoing edge of the node
+     */
+    public int endEdge(int node) { return offsets[node + 1]; }
+
+    public int getSource(int edge) { return sources[edge]; }
+    public int getTarget(int edge) { return targets[edge]; }
+    public double getWeight(int edge) { return weights[edge]; }
+    public int getStreetHandle(int edge) { return streets[edge]; }
+    public String getEdgeID(int edge) { return edgeIDs[edge]; }
+
+    /**
+     * Lower bound of the path length between two nodes (scaled straight line distance)
+     */
+    public double estimate(int from, int to) {
+        return heuristicScale * Math.hypot(x[to] - x[from], y[to] - y[from]);
+    }
+}
@@ -0,0 +1,106 @@
+package sumo.sim.objects;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A* search over a {@link RoadGraph}, with the scaled straight line distance as heuristic.
+ * <p>
+ *     The open set is an indexed binary heap, so a shorter path to a queued node moves it up in place (decrease-key)
+ *     instead of adding a second entry. Distances and predecessors live in arrays owned by the router and are
+ *     invalidated per query with a generation stamp, so a query allocates nothing but its result.
+ * </p>
+ * <p>
+ *     A router is not thread-safe, use one router per thread. The graph can be shared.
+ * </p>
+ */
+public final class RoadRouter {
+    private final RoadGraph graph;
+    private final double[] dist; // node -> best known distance from start
+    private final int[] prevEdge; // node -> edge the best path arrives by, -1 for the start
+    private final int[] seen; // node -> query that wrote dist/prevEdge
+    private final int[] closed; // node -> query that settled the node
+    private int query;
+
+    private final NodeHeap open; // ordered by dist + estimate
+
+    public RoadRouter(RoadGraph graph) {
+        this.graph = graph;
+        int n = graph.getNodeCount();
+        dist = new double[n];
+        prevEdge = new int[n];
+        seen = new int[n];
+        closed = new int[n];
+        open = new NodeHeap(n);
+    }
+
+    /**
+     * Shortest path between two junctions
+     * @param start junction handle
+     * @param end junction handle
+     * @return edge indices of the {@link RoadGraph} in driving order, empty if start == end, null if end is not reachable
+     */
+    public int[] route(int start, int end) {
+        if (++query == 0) { // wrapped around, old stamps could collide
+            Arrays.fill(seen, 0);
+            Arrays.fill(closed, 0);
+            query = 1;
+        }
+        dist[start] = 0;
+        prevEdge[start] = -1;
+        seen[start] = query;
+        open.offer(start, graph.estimate(start, end));
+
+        boolean found = false;
+        while (!open.isEmpty()) {
+            int u = open.pop();
+            if (u == end) {
+                found = true;
+                break;
+            }
+            closed[u] = query; // heuristic is consistent, a settled node is never improved
+            double du = dist[u];
+            for (int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++) {
+                int v = graph.getTarget(e);
+                if (closed[v] == query) continue;
+                double alt = du + graph.getWeight(e);
+                if (seen[v] != query || alt < dist[v]) {
+                    seen[v] = query;
+                    dist[v] = alt;
+                    prevEdge[v] = e;
+                    open.offer(v, alt + graph.estimate(v, end));
+                }
+            }
+        }
+        open.clear(); // leave the heap clean for the next query
+        if (!found) return null;
+
+        int hops = 0;
+        for (int n = end; prevEdge[n] >= 0; n = graph.getSource(prevEdge[n])) hops++;
+        int[] path = new int[hops];
+        for (int n = end; prevEdge[n] >= 0; n = graph.getSource(prevEdge[n])) path[--hops] = prevEdge[n];
+        return path;
+    }
+
+    /**
+     * @return length in m of the last found path to the node, only valid directly after {@link #route(int, int)}
+     */
+    public double getDistance(int node) {
+        return seen[node] == query ? dist[node] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Shortest path between two junctions as street IDs
+     * @param start junction handle, see {@link JunctionList#getJunctionHandle(String)}
+     * @param end junction handle
+     * @return street IDs, null if end is not reachable
+     */
+    public List<String> routeIDs(int start, int end) {
+        int[] path = route(start, end);
+        if (path == null) return null;
+        List<String> ids = new ArrayList<>(path.length);
+        for (int e : path) ids.add(graph.getEdgeID(e));
+        return ids;
+    }
+}
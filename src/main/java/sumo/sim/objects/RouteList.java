@@ -4,12 +4,13 @@ import de.tudresden.sumo.cmd.Route;
 import de.tudresden.sumo.cmd.Simulation;
 import de.tudresden.sumo.objects.SumoStage;
 import de.tudresden.sumo.objects.SumoStringList;
-import it.polito.appeal.traci.SumoTraciConnection;
 import sumo.sim.data.XML;
 import sumo.sim.logic.WrapperController;
 import sumo.sim.util.Util;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -22,8 +23,11 @@ public class RouteList {
 
     private final Map<String, List<String>> allRoutes;
     private XML xmlReader;
-    private final SumoTraciConnection con;
+    private final TraciCommandQueue commands; // routes are added in SUMO before the next step
     private final WrapperController controller;
+    private RoadRouter router; // reused by generateRoute, guarded by this
+    private RoadGraph routerGraph;
+    private volatile CompletableFuture<ContractionHierarchy> routeIndex; // built in the background, may not be done yet
 
     //Logger
     private static final Logger logger = java.util.logging.Logger.getLogger(RouteList.class.getName());
@@ -32,16 +36,18 @@ public class RouteList {
      * Constructor for RouteList
      * uses the rou.xml to read all Routes
      * @param rouXmlFilePath
+     * @param commands queue of the connection
      * @throws Exception
      */
-    public RouteList(String rouXmlFilePath, SumoTraciConnection con, WrapperController controller) throws Exception {
+    public RouteList(String rouXmlFilePath, TraciCommandQueue commands, WrapperController controller) throws Exception {
 
         this.controller = controller;
-        this.con = con;
+        this.commands = commands;
         // parssing the xml file
         xmlReader = new XML(rouXmlFilePath);
         // map of routes(using getRoutes from XML class)
-        allRoutes = xmlReader.getRoutes();
+        // concurrent: addRoute puts from the stepping thread while the GUI reads the ids
+        allRoutes = new ConcurrentHashMap<>(xmlReader.getRoutes());
 
     }
 
@@ -82,120 +88,91 @@ public class RouteList {
 
     /**
      * Generates a new Route based on a Start and End Junction
-     * New Route has optimal path of Start to End
+     * New Route has optimal path of Start to End, searched with {@link RoadRouter} on the graph of the JunctionList
      * adds new Route to RouteList and to rou.xml
      * @param start ID of startJunction
      * @param end ID of endJunction
      * @param routeID ID of new Route
      * @param jl the JunctionList
      */
-    public void generateRoute(String start, String end, String routeID, JunctionList jl) {
+    public synchronized void generateRoute(String start, String end, String routeID, JunctionList jl) {
+        int startNode = jl.getJunctionHandle(start);
+        int endNode = jl.getJunctionHandle(end);
 
-        // needs check if route id already exists
-        for (JunctionWrap jw : jl.getJunctions()) {
-            jw.setDistance(Double.MAX_VALUE);
-            jw.setPredecessor(null);
-            //System.out.println(jw.getID());
-        }
-
-        JunctionWrap startNode = jl.getJunction(start);
-        JunctionWrap endNode = jl.getJunction(end);
-
-        if (startNode == null || endNode == null) {
+        if (startNode < 0 || endNode < 0) {
             throw new RuntimeException("Start or End Junction does not exist!");
         }
 
-        startNode.setDistance(0.0);
-
-        PriorityQueue<JunctionWrap> queue = new PriorityQueue<>(Comparator.comparingDouble(JunctionWrap::getDistance));
-
-        queue.add(startNode);
-
-        while (!queue.isEmpty()) {
-            JunctionWrap u = queue.poll();
-            if (u.getDistance() > jl.getJunction(u.getID()).getDistance())
-                continue;
-            if (u == endNode)
-                break;
-            for (String neighborID : jl.getAdjacentVertexes(u.getID())) {
-                JunctionWrap v = jl.getJunction(neighborID);
-                if (v == null) continue;
-                double alt = u.getDistance() + u.distanceTo(v);
-                if (alt < v.getDistance()) {
-                    v.setDistance(alt);
-                    v.setPredecessor(u.getID());
-                    queue.add(v);
-                }
-            }
-        }
-
-        System.out.println("Dijkstra finished. End node: " + endNode.getID());
-        System.out.println("Distance to end: " + endNode.getDistance());
-        System.out.println("Predecessor of end: " + endNode.getPredecessor());
-
-        LinkedList<String> junctionPath = new LinkedList<>();
-
-        for (JunctionWrap step = endNode; step != null; step = jl.getJunction(step.getPredecessor())) {
-            junctionPath.addFirst(step.getID());
+        RoadGraph graph = jl.getRoadGraph();
+        if (router == null || routerGraph != graph) { // scratch arrays are sized for one graph
+            router = new RoadRouter(graph);
+            routerGraph = graph;
         }
+        List<String> edgeList = router.routeIDs(startNode, endNode);
 
-        List<String> edgeList = new ArrayList<>(junctionPath.size() - 1);
-
-        for (int i = 0; i < junctionPath.size() - 1; i++) {
-
-            String from = junctionPath.get(i);
-            String to   = junctionPath.get(i + 1);
-
-            String edgeID = jl.findEdgeID(from, to);
-
-            if (edgeID == null) {
-                throw new RuntimeException("Edge not found between: " + from + " → " + to);
-            }
-
-            edgeList.add(edgeID);
+        if (edgeList == null) {
+            throw new RuntimeException("No path from " + start + " to " + end);
         }
-
         if (edgeList.isEmpty()) {
             throw new RuntimeException("Route " + routeID + " is empty – cannot write to SUMO!");
         }
-
-        System.out.println("Junction Path: " + junctionPath); // empty list?
-        System.out.println("Junction Path Size: " + junctionPath.size());
-
+        logger.log(Level.FINE, "Generated route " + routeID + " over " + edgeList.size() + " streets, "
+                + router.getDistance(endNode) + " m");
 
         allRoutes.put(routeID, edgeList);
         xmlReader.newRoute(routeID, edgeList);
     }
 
-    public void addRoute(String start, String end, String routeID) {
-        SumoStringList route = new SumoStringList();
-        //route.addAll(edgeList);
-        SumoStage routeResult;
-        try {
-            routeResult = (SumoStage) con.do_job_get(Simulation.findRoute(start,end,"", 0 , 0));
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-        route.addAll(routeResult.edges);
-        for (String s : route) {
-            System.out.println(s);
-        }
+    /**
+     * Sets the index used to find routes between streets locally, see {@link #addRoute(String, String, String)}
+     * @param routeIndex future of the index, null to always ask SUMO
+     */
+    public void setRouteIndex(CompletableFuture<ContractionHierarchy> routeIndex) {
+        this.routeIndex = routeIndex;
+    }
 
-        // adding in Sumo
-        // check if routeID duplicate
-        routeID = Util.checkRouteDuplicate(allRoutes, routeID);
-
-        try {
-            System.out.println(con.do_job_get(Route.getIDCount()));
-            con.do_job_set(Route.add(routeID, route));
-            System.out.println(con.do_job_get(Route.getIDCount()));
-        } catch (Exception e) {
-            logger.log(Level.FINE, "Failed to add route", e);
-            throw new RuntimeException(e);
-        }
+    /**
+     * @return the route index of the map, null while it is built or if it failed
+     */
+    public ContractionHierarchy getRouteIndex() {
+        CompletableFuture<ContractionHierarchy> f = routeIndex;
+        return f == null || f.isCompletedExceptionally() ? null : f.getNow(null);
+    }
+
+    /**
+     * Adds a route from street start to street end in SUMO.
+     * The shortest route is taken from the {@link ContractionHierarchy} once it is built, until then (or if it finds none)
+     * SUMO is asked via {@link Simulation#findRoute}.
+     * <p>
+     *     Sent with the {@link TraciCommandQueue}, the route exists in SUMO and in this list once the future completed.
+     * </p>
+     * @param start ID of the first street
+     * @param end ID of the last street
+     * @param routeID ID of the new Route
+     * @return completed with the ID the route got (made unique), exceptionally if SUMO rejected it
+     */
+    public CompletableFuture<String> addRoute(String start, String end, String routeID) {
+        ContractionHierarchy index = getRouteIndex();
+        List<String> local = index != null ? index.route(start, end) : null; // computed on the calling thread
+        return commands.submit(c -> {
+            SumoStringList route = new SumoStringList();
+            if (local != null) {
+                route.addAll(local);
+            } else {
+                SumoStage routeResult = (SumoStage) c.do_job_get(Simulation.findRoute(start,end,"", 0 , 0));
+                route.addAll(routeResult.edges);
+            }
+
+            // adding in Sumo
+            // check if routeID duplicate
+            String id = Util.checkRouteDuplicate(allRoutes, routeID);
+
+            c.do_job_set(Route.add(id, route));
 
-        allRoutes.put(routeID, route);
-        controller.updateRoutes();
+            allRoutes.put(id, route);
+            controller.updateRoutes();
+            return id;
+        });
     }
 
     /**
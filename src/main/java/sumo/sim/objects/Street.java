@@ -3,10 +3,12 @@ package sumo.sim.objects;
 import de.tudresden.sumo.cmd.Edge;
 import de.tudresden.sumo.util.SumoCommand;
 import it.polito.appeal.traci.SumoTraciConnection;
+import sumo.sim.data.NetworkModel;
 import sumo.sim.data.XML;
 
 import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -44,6 +46,26 @@ public class Street {
         initializeStreet();
     }
 
+    /**
+     * Creates the street and its lanes from the {@link NetworkModel}, lanes missing in the file are loaded via TraCI
+     * @param edge edge of the network model
+     * @param con an instance of {@link SumoTraciConnection}
+     */
+    public Street(NetworkModel.Edge edge, SumoTraciConnection con) {
+        this.id = edge.getId();
+        this.con = con;
+        this.fromJunction = edge.getFrom();
+        this.toJunction = edge.getTo();
+        List<NetworkModel.Lane> known = edge.getLanes();
+        if (known.isEmpty()) {
+            initializeStreet(); // gap in the file -> TraCI
+        } else {
+            for (NetworkModel.Lane lane : known) {
+                lanes.add(new LaneWrap(lane, con, id));
+            }
+        }
+    }
+
     /**
      * Gets the number of lanes within the Edge and fills the {@link ArrayList} of {@link LaneWrap} with new objects
      */
@@ -53,7 +75,7 @@ public class Street {
             for (int i = 0; i < laneCount; i++) {
                 lanes.add(new LaneWrap(this.id + "_" + i, this.con, this.id));
             }
-            updateStreet();
+            // density starts at 0 and is maintained by the DensityEngine of the StreetList
         } catch (Exception e) {
             logger.log(Level.FINE, "Failed to initialize street Data", e);
             throw new RuntimeException("Failed to initialize Street " + id, e);
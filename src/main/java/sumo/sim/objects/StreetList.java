@@ -1,12 +1,11 @@
 package sumo.sim.objects;
 
 import it.polito.appeal.traci.SumoTraciConnection;
-import sumo.sim.data.XML;
-import sumo.sim.logic.WrapperController;
+import sumo.sim.data.NetworkModel;
+import sumo.sim.util.IdIndex;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,30 +16,30 @@ import java.util.logging.Logger;
 public class StreetList {
     // List of streets (like TL_List)
     private final ArrayList<Street> streets = new ArrayList<>();
+    private final IdIndex<Street> streetIDs; // ID -> Street and dense handle
     private int count;
     private final SumoTraciConnection connection;
+    private final DensityEngine density; // street density from vehicle road IDs
 
     //Logger
     private static final Logger logger = java.util.logging.Logger.getLogger(StreetList.class.getName());
 
     /**
-     * Initializes the {@link Street} objects inside the List via {@link XML#readAllEdges()}
+     * Initializes the {@link Street} objects inside the List from the edges of the {@link NetworkModel}
      * @param con an instance of {@link SumoTraciConnection}
+     * @param model network model of the current {@code .net.xml}
      */
-    public StreetList(SumoTraciConnection con) {
+    public StreetList(SumoTraciConnection con, NetworkModel model) {
         try {
-            XML xml = new XML(WrapperController.getCurrentNet());
-            Map<String, String[]> data = xml.readAllEdges();
+            this.streetIDs = new IdIndex<>(model.getEdgeCount());
 
             this.connection = con;
-            for (Map.Entry<String, String[]> entry : data.entrySet()) {
-                String id = entry.getKey();
-                String from = entry.getValue()[0];
-                String to = entry.getValue()[1];
+            for (NetworkModel.Edge edge : model.getEdges()) {
+                String id = edge.getId();
                 try {
-                    // if id is not known -> error , needs to be checked in other lists too
-                    Street s = new Street(id, from, to, con);
+                    Street s = new Street(edge, con);
                     streets.add(s);
+                    streetIDs.add(id, s);
                     count++;
                 } catch (RuntimeException e) {
                     logger.log(Level.WARNING, "Failed to initialize Streets", e);
@@ -51,6 +50,7 @@ public class StreetList {
             logger.log(Level.SEVERE, "Failed to initialize Streets and Data", e);
             throw new RuntimeException(e);
         }
+        this.density = new DensityEngine(this);
     }
 
     /**
@@ -58,12 +58,24 @@ public class StreetList {
      * @param id Street ID
      */
     public Street getStreet(String id) {
-        for (Street s : streets) {
-            if (s.getId().equals(id)) {
-                return s;
-            }
-        }
-        return null;
+        return streetIDs.get(id);
+    }
+
+    /**
+     * Returns the dense handle assigned to a {@link Street} at load time
+     * @param id Street ID
+     * @return handle (0 to number of streets - 1), -1 if unknown
+     */
+    public int getStreetHandle(String id) {
+        return streetIDs.getHandle(id);
+    }
+
+    /**
+     * @param handle handle returned by {@link StreetList#getStreetHandle(String)}
+     * @return the {@link Street} with this handle
+     */
+    public Street getStreet(int handle) {
+        return streetIDs.get(handle);
     }
 
     /**
@@ -108,7 +120,23 @@ public class StreetList {
     }
 
     /**
-     * Allows for batch updating of Streets
+     * Updates the density of all streets from the road IDs of the vehicles, see {@link DensityEngine}.
+     * Does nothing while the density is disabled.
+     * @param vehicles vehicles of the {@link VehicleList}
+     * @param externalRoadIDs road IDs of the vehicles SUMO departed on its own, see {@link VehicleList#getExternalRoadIDs()}
+     */
+    public void updateDensity(Iterable<VehicleWrap> vehicles, Iterable<String> externalRoadIDs) {
+        density.update(vehicles, externalRoadIDs);
+    }
+
+    /**
+     * @return the engine calculating the street densities, e.g. to enable it while the heatmap is visible
+     */
+    public DensityEngine getDensityEngine() { return density; }
+
+    /**
+     * Allows for batch updating of Streets, polls every street via {@link Street#updateStreet()}.
+     * Costs one round trip per street, {@link StreetList#updateDensity(Iterable, Iterable)} is used each step instead.
      */
     public void updateStreets(){
         for (Street s : streets) {
@@ -0,0 +1,165 @@
+package sumo.sim.objects;
+
+import de.tudresden.sumo.util.SumoCommand;
+import it.polito.appeal.traci.SumoTraciConnection;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects TraCI commands from any thread and runs them on the thread that steps the simulation.
+ * <p>
+ *     GUI actions (set a speed, switch a phase, add vehicles...) only put their command into the queue and return a
+ *     {@link CompletableFuture}. Before every step the stepping thread calls {@link #flush()}, which sends all pending
+ *     commands in the order they were submitted and completes their futures. So the FX thread never waits for a round trip,
+ *     and commands that belong together (read, change, write) never interleave with a step or with each other.
+ * </p>
+ * <p>
+ *     A command submitted with a key replaces a pending command with the same key, e.g. only the last of many speed
+ *     changes of one vehicle is sent. It keeps the place of the command it replaced, so it still runs before everything
+ *     submitted after that one. The futures of both complete when it was sent.
+ * </p>
+ * <p>
+ *     TraaS sends every command as its own message and reads its answer before the next one, so the commands of one
+ *     flush are still one round trip each, but back to back on one thread and without another thread waiting.
+ * </p>
+ */
+public final class TraciCommandQueue {
+
+    /**
+     * Work done with the connection on the stepping thread
+     * @param <T> result type
+     */
+    public interface Call<T> {
+        T run(SumoTraciConnection con) throws Exception;
+    }
+
+    private static final class Task<T> {
+        private Call<T> call;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Task(Call<T> call) { this.call = call; }
+
+        private void run(SumoTraciConnection con) {
+            try {
+                future.complete(call.run(con));
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Failed to run queued TraCI command", e);
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private final SumoTraciConnection con;
+    private LinkedHashMap<Object, Task<?>> pending = new LinkedHashMap<>(); // guarded by this, in submission order
+    private boolean closed;
+
+    //Logger
+    private static final Logger logger = java.util.logging.Logger.getLogger(TraciCommandQueue.class.getName());
+
+    /**
+     * @param con connection the commands are sent over
+     */
+    public TraciCommandQueue(SumoTraciConnection con) {
+        this.con = con;
+    }
+
+    /**
+     * Queues work with the connection
+     * @param call runs on the stepping thread during {@link #flush()}
+     * @return completed with the result of call
+     */
+    public <T> CompletableFuture<T> submit(Call<T> call) {
+        return submit(new Object(), call); // a key nobody else has
+    }
+
+    /**
+     * Queues work with the connection, replacing pending work with the same key
+     * @param key e.g. "speed:v12", equal keys coalesce
+     * @param call runs on the stepping thread during {@link #flush()}
+     * @return completed with the result of call
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> CompletableFuture<T> submit(Object key, Call<T> call) {
+        if (closed) return CompletableFuture.failedFuture(new IllegalStateException("connection is closed"));
+        Task<T> task = (Task<T>) pending.get(key);
+        if (task != null) {
+            task.call = call; // replaced in place, keeps its position; the earlier caller gets the result of the newer command
+        } else {
+            task = new Task<>(call);
+            pending.put(key, task);
+        }
+        return task.future;
+    }
+
+    /**
+     * Queues a set command
+     * @param command e.g. {@code Vehicle.setSpeed(id, speed)}
+     * @return completed once SUMO accepted the command
+     */
+    public CompletableFuture<Void> set(SumoCommand command) {
+        return submit(c -> { c.do_job_set(command); return null; });
+    }
+
+    /**
+     * Queues a set command, replacing a pending one with the same key
+     * @param key e.g. "speed:v12"
+     * @param command e.g. {@code Vehicle.setSpeed(id, speed)}
+     * @return completed once SUMO accepted the command
+     */
+    public CompletableFuture<Void> set(Object key, SumoCommand command) {
+        return submit(key, c -> { c.do_job_set(command); return null; });
+    }
+
+    /**
+     * Queues a get command
+     * @param command e.g. {@code Trafficlight.getPhase(id)}
+     * @return completed with the value SUMO returned
+     */
+    public CompletableFuture<Object> get(SumoCommand command) {
+        return submit(c -> c.do_job_get(command));
+    }
+
+    /**
+     * Runs all pending commands on the calling thread, must only be called by the thread that steps the simulation
+     * @return number of commands run
+     */
+    public int flush() {
+        LinkedHashMap<Object, Task<?>> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) return 0;
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+        for (Task<?> task : batch.values()) {
+            if (con.isClosed()) {
+                task.future.completeExceptionally(new IllegalStateException("connection is closed"));
+            } else {
+                task.run(con);
+            }
+        }
+        return batch.size();
+    }
+
+    /**
+     * Fails all pending commands, later ones fail at once
+     */
+    public void close() {
+        List<Task<?>> dropped;
+        synchronized (this) {
+            closed = true;
+            dropped = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        for (Task<?> task : dropped) task.future.completeExceptionally(new IllegalStateException("connection is closed"));
+    }
+
+    /**
+     * @return number of commands waiting for the next {@link #flush()}
+     */
+    public synchronized int size() { return pending.size(); }
+}
@@ -1,26 +1,40 @@
 package sumo.sim.objects;
 
+import de.tudresden.sumo.config.Constants;
+import de.tudresden.sumo.objects.SumoLink;
 import de.tudresden.sumo.objects.SumoStringList;
+import de.tudresden.sumo.subscription.ResponseType;
+import de.tudresden.sumo.subscription.SubscriptionObject;
+import de.tudresden.sumo.util.Observable;
+import de.tudresden.sumo.util.Observer;
 import it.polito.appeal.traci.SumoTraciConnection;
 import de.tudresden.sumo.cmd.Trafficlight;
-import sumo.sim.data.XML;
-import sumo.sim.logic.WrapperController;
+import sumo.sim.data.NetworkModel;
+import sumo.sim.util.IdIndex;
 
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.Locale;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Class for managing all TrafficLights
+ * <p>
+ * Registered as {@link Observer} of the connection: state, phase, phase duration and next switch of every light
+ * are subscribed once and decoded into a {@link TrafficLightStateBuffer} during {@link SumoTraciConnection#do_timestep()},
+ * so {@link TrafficLightList#updateAllCurrentState()} does not need a round trip per light.
+ * </p>
  * @author simonr
  */
-public class TrafficLightList {
+public class TrafficLightList implements Observer {
     private final ArrayList<TrafficLightWrap> trafficlights = new ArrayList<>(); // List of TrafficLights
+    private final IdIndex<TrafficLightWrap> trafficLightIDs = new IdIndex<>(); // ID -> TrafficLight
     private final SumoTraciConnection con; // main connection created in main wrapper
     private final StreetList streetList;
+    private TrafficLightStateBuffer buffer; // subscribed values, indexed by handle
     private int count;
 
     //Logger
@@ -31,21 +45,27 @@ public class TrafficLightList {
      * creates all TrafficLights as Objects in an ArrayList
      *
      * @param con SumoTraciConnection
+     * @param commands queue of the connection, for changes from the GUI
      * @param s1 StreetList
+     * @param model network model of the current {@code .net.xml}
      */
-    public TrafficLightList(SumoTraciConnection con, StreetList s1) {
+    public TrafficLightList(SumoTraciConnection con, TraciCommandQueue commands, StreetList s1, NetworkModel model) {
         this.con = con;
         this.streetList = s1;
         try {
-            XML xml = new XML(WrapperController.getCurrentNet());
-            Map<String, Map<String,String>> TLData = xml.getTrafficLightsData();
-
-            for (var entry : TLData.entrySet()) {
-                String id = entry.getKey();
-                Map<String, String> attributes = entry.getValue();
+            Set<String> known = new HashSet<>((SumoStringList) con.do_job_get(Trafficlight.getIDList())); // one call instead of one per light
+
+            for (NetworkModel.Junction junction : model.getJunctions()) {
+                if (!"traffic_light".equals(junction.getType())) continue;
+                String id = junction.getId();
+                if (!known.contains(id)) { // not known in Sumo -> skips tl
+                    logger.log(Level.FINE, "Skipping Traffic Light " + id + ", not known to SUMO");
+                    continue;
+                }
                 try {
-                    TrafficLightWrap tl = new TrafficLightWrap(id, attributes, con);
+                    TrafficLightWrap tl = new TrafficLightWrap(junction, model, con, commands);
                     trafficlights.add(tl);
+                    trafficLightIDs.add(id, tl);
 
                 } catch (Exception e) {
                     logger.log(Level.FINE, "Failed to initialize Traffic Light List", e);
@@ -58,6 +78,33 @@ public class TrafficLightList {
             throw new RuntimeException(e);
         }
         setAllControlledStreets();
+        subscribeAll();
+    }
+
+    /**
+     * Subscribes every traffic light, lights rejected by SUMO keep polling their state.
+     */
+    private void subscribeAll() {
+        buffer = new TrafficLightStateBuffer(trafficlights.size());
+        int failed = 0;
+        for (TrafficLightWrap tl : trafficlights) {
+            if (!tl.subscribe(buffer, trafficLightIDs.getHandle(tl.getId()))) failed++;
+        }
+        if (failed > 0) {
+            logger.log(Level.WARNING, failed + " Traffic Lights could not be subscribed, polling them instead");
+        }
+        con.addObserver(this);
+    }
+
+    /**
+     * Receives subscription results during {@link SumoTraciConnection#do_timestep()} and stores them in the buffer.
+     * @param observable the notifying connection
+     * @param so one subscribed variable of one traffic light
+     */
+    @Override
+    public void update(Observable observable, SubscriptionObject so) {
+        if (so.status != Constants.RTYPE_OK || so.response != ResponseType.TL_VARIABLE) return;
+        buffer.set(trafficLightIDs.getHandle(so.id), so.variable, so.object);
     }
 
     /**
@@ -66,12 +113,7 @@ public class TrafficLightList {
      * @return TrafficLightWrap
      */
     public TrafficLightWrap getTL(String id) {
-        for (TrafficLightWrap tl : trafficlights) {
-            if (tl.getId().equals(id)) { // searching for TrafficLight object
-                return tl;
-            }
-        }
-        return null; // if not existent
+        return trafficLightIDs.get(id); // null if not existent
     }
 
     /**
@@ -123,7 +165,7 @@ public class TrafficLightList {
     }
 
     /**
-     * Updates the State for all TrafficLights
+     * Updates the State for all TrafficLights, subscribed lights take it from the last step response
      */
     public void updateAllCurrentState() {
         for (TrafficLightWrap tl : trafficlights) {
@@ -153,16 +195,18 @@ public class TrafficLightList {
     }
 
     /**
-     * Set the Controlled Street for every TrafficLight
+     * Set the Controlled Street for every TrafficLight, derived from the lanes of its controlled links
      */
     public void setAllControlledStreets() {
         try {
             for (TrafficLightWrap tl : trafficlights) {
-                SumoStringList string = (SumoStringList) con.do_job_get(Trafficlight.getControlledLanes(tl.getId()));
-                for (String s : string) {
-                    String[] parts = s.split("_");
-                    tl.setControlledStreets(streetList.getStreet(parts[0]));
+                for (SumoLink link : tl.getControlledLinks()) {
+                    if (link.from == null) continue; // unused signal index
+                    int cut = link.from.lastIndexOf('_'); // lane "edge_index" -> edge
+                    Street street = streetList.getStreet(cut > 0 ? link.from.substring(0, cut) : link.from);
+                    if (street != null) tl.setControlledStreets(street);
                 }
+                tl.buildSignalGeometry(); // lane -> signal index and stop bars, computed once
             }
         } catch (Exception e) {
             logger.log(Level.FINE, "Failed to set all Controlled Streets", e);
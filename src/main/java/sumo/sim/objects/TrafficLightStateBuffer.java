@@ -0,0 +1,64 @@
+package sumo.sim.objects;
+
+import de.tudresden.sumo.config.Constants;
+import de.tudresden.sumo.objects.SumoObject;
+import de.tudresden.sumo.objects.SumoPrimitive;
+
+/**
+ * Subscribed state of all traffic lights, indexed by the handle of the light in {@link TrafficLightList}.
+ * <p>
+ *     {@link TrafficLightList} subscribes state, phase, phase duration and next switch of every light once,
+ *     afterwards SUMO delivers them with the response of {@link it.polito.appeal.traci.SumoTraciConnection#do_timestep()}
+ *     and they are decoded into these arrays. Reading them costs no round trip.
+ * </p>
+ * <p>
+ *     The set of traffic lights never changes during a simulation, so the arrays are allocated once.
+ *     Written by the simulation thread only, read by the GUI.
+ * </p>
+ */
+public class TrafficLightStateBuffer {
+    private final String[] state; // e.g. "GrGr", one char per signal index
+    private final int[] phase;
+    private final double[] phaseDuration;
+    private final double[] nextSwitch; // absolute simulation time
+    private final boolean[] received; // true once a state was delivered
+
+    /**
+     * @param size number of traffic lights
+     */
+    TrafficLightStateBuffer(int size) {
+        state = new String[size];
+        phase = new int[size];
+        phaseDuration = new double[size];
+        nextSwitch = new double[size];
+        received = new boolean[size];
+    }
+
+    /**
+     * Stores one subscribed value delivered with the last simulation step.
+     * @param index handle of the traffic light
+     * @param variable TraCI variable id, e.g. {@link Constants#TL_RED_YELLOW_GREEN_STATE}
+     * @param value the decoded value
+     */
+    void set(int index, int variable, SumoObject value) {
+        if (index < 0 || index >= state.length) return;
+        Object val = ((SumoPrimitive) value).val;
+        switch (variable) {
+            case Constants.TL_RED_YELLOW_GREEN_STATE -> {
+                state[index] = (String) val;
+                received[index] = true;
+            }
+            case Constants.TL_CURRENT_PHASE -> phase[index] = (int) val;
+            case Constants.TL_PHASE_DURATION -> phaseDuration[index] = (double) val;
+            case Constants.TL_NEXT_SWITCH -> nextSwitch[index] = (double) val;
+            default -> { }
+        }
+    }
+
+    public boolean hasState(int index) { return received[index]; }
+    public String getState(int index) { return state[index]; }
+    public int getPhase(int index) { return phase[index]; }
+    public double getPhaseDuration(int index) { return phaseDuration[index]; }
+    public double getNextSwitch(int index) { return nextSwitch[index]; }
+    public int size() { return state.length; }
+}
@@ -1,13 +1,16 @@
 package sumo.sim.objects;
 
 import de.tudresden.sumo.cmd.Trafficlight;
+import de.tudresden.sumo.config.Constants;
 import de.tudresden.sumo.objects.SumoLink;
 import de.tudresden.sumo.objects.SumoTLSController;
 import de.tudresden.sumo.objects.SumoTLSPhase;
 import de.tudresden.sumo.objects.SumoTLSProgram;
+import de.tudresden.sumo.subscription.SubscribtionVariable;
+import de.tudresden.sumo.subscription.VariableSubscription;
 import it.polito.appeal.traci.SumoTraciConnection;
 import sumo.sim.SimulationRenderer;
-import sumo.sim.data.XML;
+import sumo.sim.data.NetworkModel;
 import sumo.sim.logic.WrapperController;
 
 import java.awt.geom.Point2D;
@@ -15,6 +18,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,6 +34,7 @@ import java.util.logging.Logger;
 public class TrafficLightWrap extends SelectableObject {
 
     private final SumoTraciConnection con;
+    private final TraciCommandQueue commands; // changes are sent before the next step
     private final String id;
     private final Set<Street> controlledStreets;
 
@@ -49,43 +54,80 @@ public class TrafficLightWrap extends SelectableObject {
     //String[] phaseNames = {"NS_Green", "EW_Green", "All_Red"}; <- North x south, east x west
     private int duration; // time
     private final Point2D.Double position; // position as a junction
-    String [] stateArray;
+    private String signalState; // one char per signal index, e.g. "GrGr", replaced as a whole every step
+    private String [] stateArray; // GUI format, built lazily from signalState
+    private String stateArraySource; // signalState the stateArray was built from
+    private TrafficLightStateBuffer buffer; // subscribed values, null -> polled
+    private int index; // handle in TrafficLightList and index in buffer
+
+    // precomputed by buildSignalGeometry() once the controlled streets are known
+    private LaneWrap[] signalLanes = new LaneWrap[0]; // every lane of the controlled streets
+    private int[] laneSignal = new int[0]; // signal index controlling signalLanes[k], -1 if none
+    private double[] stopBars = new double[0]; // x1, y1, x2, y2 per lane
     private final List<SumoLink> controlledLinks;
     private final List<String> incomingLanes;
-    private XML xml;
+
+    // read by the GUI, refreshed on the stepping thread by refreshProgramInfo() so the FX thread never waits for SUMO
+    private volatile String programId;
+    private volatile int programCount;
+    private volatile String phaseName;
+    private volatile int phaseNameOf = -1; // phase the phaseName belongs to, -1 -> not loaded
+    private volatile boolean programChanged = true; // programId and programCount need a refresh
+    // last polled phase values, used while no subscribed value arrived (before the first step, or subscription rejected)
+    private volatile int polledPhase = -1; // -1 -> never polled
+    private volatile double polledDuration;
+    private volatile double polledNextSwitch;
 
     /**
-     * Constructor is called by {@link TrafficLightList#TrafficLightList(SumoTraciConnection, StreetList)} constructor
+     * Constructor is called by {@link TrafficLightList#TrafficLightList(SumoTraciConnection, TraciCommandQueue, StreetList, NetworkModel)} constructor
      * <p>
-     * Instantiates all attributes based on the data provided from the parsed {@code .net.xml} file
+     * Instantiates all attributes based on the data provided from the parsed {@code .net.xml} file.
+     * Controlled links and phases are taken from the {@link NetworkModel}, only if the file has none they are requested via TraCI.
      * </p>
      *
-     * @param id   The unique ID of the traffic light, used to call do_job methods.
-     * @param Data A map containing attributes parsed from the network XML (e.g., x, y, incLanes).
+     * @param junction The junction of the traffic light, its ID is used to call do_job methods.
+     * @param model The network model of the current {@code .net.xml}.
      * @param con  The active SumoTraciConnection object created in {@link WrapperController}.
+     * @param commands The queue of the connection, used by the setters.
      * @throws RuntimeException if there is an error parsing data or communicating with TraCI.
      */
-    public TrafficLightWrap(String id, Map<String,String> Data, SumoTraciConnection con) {
+    public TrafficLightWrap(NetworkModel.Junction junction, NetworkModel model, SumoTraciConnection con, TraciCommandQueue commands) {
         super();
-        this.id = id;
+        this.id = junction.getId();
         this.con = con;
+        this.commands = commands;
         this.controlledStreets = new HashSet<>();
         this.phases = new ArrayList<>();
         try {
-            xml = new XML(WrapperController.getCurrentNet());
-            this.position = new Point2D.Double();
-            this.position.x = Double.parseDouble(Data.get("x"));
-            this.position.y = Double.parseDouble(Data.get("y"));
-            String incLanesString = Data.get("incLanes");
-            this.incomingLanes = Arrays.asList(incLanesString.split("\\s+"));
-
-            this.controlledLinks = (List<SumoLink>) con.do_job_get(Trafficlight.getControlledLinks(id));
-            //updateTL();
-            //getCurrentState();
-            loadPhases();
+            this.position = new Point2D.Double(junction.getX(), junction.getY());
+            this.incomingLanes = Arrays.asList(junction.getIncLanes());
+
+            NetworkModel.Connection[] links = model.getControlledLinks(id);
+            if (links != null) {
+                this.controlledLinks = new ArrayList<>(links.length);
+                for (NetworkModel.Connection c : links) { // index = signal index
+                    this.controlledLinks.add(c == null
+                            ? new SumoLink(null, null, null)
+                            : new SumoLink(c.getFromLaneID(), c.getToLaneID(), c.getVia()));
+                }
+            } else {
+                this.controlledLinks = (List<SumoLink>) con.do_job_get(Trafficlight.getControlledLinks(id));
+            }
+
+            NetworkModel.TlLogic logic = model.getTlLogic(id);
+            if (logic != null) {
+                int index = 0;
+                for (NetworkModel.Phase p : logic.getPhases()) {
+                    this.phases.add(new TrafficLightPhase(index++, p.getState(), p.getDuration()));
+                }
+                this.type = logic.getType();
+                this.programId = logic.getProgramID();
+            } else {
+                loadPhases();
+            }
 
         } catch (Exception e) {
-            logger.log(Level.WARNING, "Failed to parse XML", e);
+            logger.log(Level.WARNING, "Failed to initialize Traffic Light " + junction.getId(), e);
             throw new RuntimeException(e);
         }
     }
@@ -138,35 +180,102 @@ public class TrafficLightWrap extends SelectableObject {
     // setter
 
     /**
-     * Constructs an array in this format:
+     * Retrieves the current red-yellow-green state, one char per signal index (e.g. "GrGr").
      *
      * <p>
-     *     Array: [index0, lane controlled by index0...]
-     *     State e.g. of "Grr" state index 0 is "G" and its controlled lane {@link LaneWrap} is stored after wards by its id.
+     *     Only the String received from SUMO is stored. {@link SimulationRenderer} reads the chars directly via the
+     *     precomputed lane-to-signal index ({@link TrafficLightWrap#getLaneSignals()}), the {@link TrafficLightWrap#getCurrentState()}
+     *     array for the GUI is only built when requested.
      * </p>
-     *
-     *<p>
-     *     This is to ensure {@link SimulationRenderer} renders Traffic lights correctly.
-     *</p>
      */
     public void setCurrentState() {
-        int currentPhaseIndex = getPhaseNumber(); // which state the tl is in -> applies to all controlled tl
-        // -> state differs from index to index (index is controlled lanes that have tl)
-        String currentState;
-        // links.get(0).from
+        TrafficLightStateBuffer b = this.buffer;
+        if (b != null && b.hasState(index)) {
+            this.signalState = b.getState(index); // delivered with the step response
+            return;
+        }
         try {
-            currentState = (String) con.do_job_get(Trafficlight.getRedYellowGreenState(this.id));
+            this.signalState = (String) con.do_job_get(Trafficlight.getRedYellowGreenState(this.id));
+            if (polledPhase < 0) pollValues(con); // seeds the getters once, later refreshes are queued by them
         } catch (Exception e) {
             logger.log(Level.FINE, "Failed to set Current State of Traffic Light", e);
             throw new RuntimeException(e);
         }
-        stateArray = new String[currentState.length()*2]; // saves state in arr -> to get indices
-        for (int i = 0; i < stateArray.length; i+=2 ) {
-            int sumoIndex = i/2; // to not skip values
-            stateArray[i] = currentState.charAt(sumoIndex) + ""; // every current state e.g = Grrryy (length definded)
-            stateArray[i+1] = controlledLinks.get(sumoIndex).from; // index i -> i+1 = lane
-            //System.out.println("Index " + (i) + stateArray[i] + " controls"  + stateArray[i+1]); // -> phase duration defined
-            // [G, lane_G ,y , lane_y , r, lane_r ] format
+    }
+
+    /**
+     * Subscribes state, phase, phase duration and next switch of this traffic light via
+     * {@link SumoTraciConnection#do_subscription(de.tudresden.sumo.subscription.Subscription)}.
+     * <p>
+     *     From the next step on SUMO sends these values with the response of {@link SumoTraciConnection#do_timestep()},
+     *     they are decoded by {@link TrafficLightList} into the {@link TrafficLightStateBuffer}.
+     * </p>
+     * @param buffer shared buffer of all traffic lights
+     * @param index handle of this traffic light
+     * @return true if the subscription was accepted, false if the values have to be polled instead
+     */
+    boolean subscribe(TrafficLightStateBuffer buffer, int index) {
+        try {
+            VariableSubscription vs = new VariableSubscription(SubscribtionVariable.trafficlight, 0, 100000 * 60, id);
+            vs.addCommand(Constants.TL_RED_YELLOW_GREEN_STATE);
+            vs.addCommand(Constants.TL_CURRENT_PHASE);
+            vs.addCommand(Constants.TL_PHASE_DURATION);
+            vs.addCommand(Constants.TL_NEXT_SWITCH);
+            con.do_subscription(vs);
+            this.index = index;
+            this.buffer = buffer;
+        } catch (Exception e) {
+            logger.log(Level.FINE, "Failed to subscribe Traffic Light, using polling instead", e);
+            this.buffer = null;
+        }
+        return this.buffer != null;
+    }
+
+    /**
+     * Precomputes the rendering data of this traffic light, called once after all controlled streets were added.
+     * <ul>
+     *     <li>every lane of the controlled streets and the first signal index whose controlled link starts on it</li>
+     *     <li>the stop bar at the end of every lane: a line of width 2 perpendicular to the last lane segment</li>
+     * </ul>
+     */
+    public void buildSignalGeometry() {
+        Map<String, Integer> signalOfLane = new HashMap<>();
+        for (int i = controlledLinks.size() - 1; i >= 0; i--) { // backwards -> the first index wins
+            String from = controlledLinks.get(i).from;
+            if (from != null) signalOfLane.put(from, i); // null -> unused signal index
+        }
+        List<LaneWrap> lanes = new ArrayList<>();
+        for (Street s : controlledStreets) {
+            for (LaneWrap l : s.getLanes()) {
+                if (l.getShapeX() != null && l.getShapeX().length >= 2) lanes.add(l);
+            }
+        }
+        signalLanes = lanes.toArray(new LaneWrap[0]);
+        laneSignal = new int[signalLanes.length];
+        stopBars = new double[signalLanes.length * 4];
+        for (int k = 0; k < signalLanes.length; k++) {
+            LaneWrap l = signalLanes[k];
+            laneSignal[k] = signalOfLane.getOrDefault(l.getLaneID(), -1);
+
+            double[] rawX = l.getShapeX();
+            double[] rawY = l.getShapeY();
+            double endX = rawX[rawX.length - 1];
+            double endY = rawY[rawX.length - 1];
+            //(P_prev -> P_end) direction vector (target-start)
+            double dx = endX - rawX[rawX.length - 2];
+            double dy = endY - rawY[rawX.length - 2];
+            // normalize length to 1
+            double length = Math.sqrt(dx * dx + dy * dy);
+            if (length == 0) length = 1;
+            // rotates 90 degree to the left when negating x and switching x and y
+            double perpX = -dy / length;
+            double perpY = dx / length;
+            double halfWidth = 2.0 / 2.0; // pre-determined -> should adjust with lane width
+            // line X2/Y2 <---"-"-*-"+"---> lineX1/Y1 , (* = endpoint)
+            stopBars[k * 4] = endX + perpX * halfWidth;
+            stopBars[k * 4 + 1] = endY + perpY * halfWidth;
+            stopBars[k * 4 + 2] = endX - perpX * halfWidth;
+            stopBars[k * 4 + 3] = endY - perpY * halfWidth;
         }
     }
 
@@ -175,46 +284,32 @@ public class TrafficLightWrap extends SelectableObject {
      * Sets the active phase of the traffic light to the specified index.
      *
      * @param index The index of the phase to switch to.
-     * @throws RuntimeException if the TraCI command fails.
+     * @return completed once SUMO switched, exceptionally if the TraCI command fails.
      */
-    public void setPhaseNumber(int index) {
-        try {
-            con.do_job_set(Trafficlight.setPhase(id,index));
-        } catch (Exception e) {
-            logger.log(Level.FINE, "Failed to set phase number of Traffic Light", e);
-            throw new RuntimeException(e);
-        }
+    public CompletableFuture<Void> setPhaseNumber(int index) {
+        return commands.set(Trafficlight.setPhase(id,index));
     }
 
     /**
      * Assigns a custom name to the current phase of the traffic light (not used)
      *
      * @param tlPhaseName name given
-     * @throws RuntimeException if the TraCI command fails.
+     * @return completed once SUMO accepted the name, exceptionally if the TraCI command fails.
      */
-    public void setPhaseName(String tlPhaseName) {
-        try {
-            con.do_job_set(Trafficlight.setPhaseName(id, tlPhaseName));
-        } catch (Exception e) {
-            logger.log(Level.FINE, "Failed to set phase name of Traffic Light", e);
-            throw new RuntimeException(e);
-        }
+    public CompletableFuture<Void> setPhaseName(String tlPhaseName) {
+        return commands.set(Trafficlight.setPhaseName(id, tlPhaseName));
     }
 
     /**
-     * Sets the remaining duration for the current phase (overwrites current remaining duration)
+     * Sets the remaining duration for the current phase (overwrites current remaining duration).
+     * Only the last of several changes before the next step is sent.
      *
      * @param phaseDuration The duration in seconds.
-     * @throws RuntimeException if the TraCI command fails.
+     * @return completed once SUMO accepted the duration, exceptionally if the TraCI command fails.
      */
-    public void setPhaseDuration(double phaseDuration) {
+    public CompletableFuture<Void> setPhaseDuration(double phaseDuration) {
         //getPhaseNumber(); // -> only applies to phase currently active -> should display phase in gui for reference?
-        try {
-            con.do_job_set(Trafficlight.setPhaseDuration(id, phaseDuration));
-        } catch (Exception e) {
-            logger.log(Level.FINE, "Failed to set phase duration of Traffic Light", e);
-            throw new RuntimeException(e);
-        }
+        return commands.set("phaseDuration:" + id, Trafficlight.setPhaseDuration(id, phaseDuration));
     }
 
     /**
@@ -226,13 +321,18 @@ public class TrafficLightWrap extends SelectableObject {
      *     to a new value, until the program is terminated.
      * </p>
      *
+     * <p>
+     *     Reading, changing and writing the program is queued as one command, so no step runs in between.
+     * </p>
+     *
      * @param phaseIndex to select the Phase index of the current Traffic Light
      * @param newDuration value to change the duration with.
+     * @return completed once the program was written, exceptionally if a TraCI command fails.
      */
-    public void setPhaseDurationPermanently(int phaseIndex, double newDuration) {
+    public CompletableFuture<Void> setPhaseDurationPermanently(int phaseIndex, double newDuration) {
         // program id check how many T-logic -> else always 0 // force logic 0 else need ProgramID
-        try {
-            SumoTLSController controller = (SumoTLSController) con.do_job_get(Trafficlight.getCompleteRedYellowGreenDefinition(id));
+        return commands.submit(c -> {
+            SumoTLSController controller = (SumoTLSController) c.do_job_get(Trafficlight.getCompleteRedYellowGreenDefinition(id));
             SumoTLSProgram program = controller.programs.get("0"); // specific hashmap index (state)
             if (program == null && !controller.programs.isEmpty()) {
                 program = controller.programs.values().iterator().next(); // take the next if null
@@ -240,32 +340,24 @@ public class TrafficLightWrap extends SelectableObject {
             if (program != null) {
                 SumoTLSPhase phase = program.phases.get(phaseIndex); // gets specified phase
                 phase.duration = newDuration; // overwrites new phase
-                con.do_job_set(Trafficlight.setCompleteRedYellowGreenDefinition(id, program));
+                c.do_job_set(Trafficlight.setCompleteRedYellowGreenDefinition(id, program));
                 phases.get(phaseIndex).setDuration(newDuration);
             }
-        } catch (Exception e) {
-            logger.log(Level.FINE, "Failed to set phase duration of Traffic Light", e);
-            return;
-        }
+            return null;
+        });
     }
 
 
-    public void setProgram(String programID) {
-        try {
-            con.do_job_set(Trafficlight.setProgram(id, programID));
-        } catch (Exception e) {
-            logger.log(Level.FINE, "Failed to set program of Traffic Light", e);
-            throw new RuntimeException(e);
-        }
+    public CompletableFuture<Void> setProgram(String programID) {
+        return commands.submit(c -> {
+            c.do_job_set(Trafficlight.setProgram(id, programID));
+            programChanged = true;
+            return null;
+        });
     }
 
-    public void setRedYellowGreenState(String state) {
-        try {
-            con.do_job_set(Trafficlight.setRedYellowGreenState(id, state));
-        } catch (Exception e) {
-            logger.log(Level.FINE, "Failed to set red yellow green state of Traffic Light", e);
-            throw new RuntimeException(e);
-        }
+    public CompletableFuture<Void> setRedYellowGreenState(String state) {
+        return commands.set(Trafficlight.setRedYellowGreenState(id, state));
     }
 
     /**
@@ -280,74 +372,108 @@ public class TrafficLightWrap extends SelectableObject {
 
     // getter
 
+    /**
+     * Current phase index, from the step response if subscribed. Otherwise the last polled value is returned
+     * and a refresh is queued, so the caller (e.g. the FX thread) never talks to SUMO itself.
+     * @return phase index, 0 until known
+     */
     public int getPhaseNumber() {
-        int ret = 0;
-        try {
-            ret = (int) con.do_job_get(Trafficlight.getPhase(id)); // gets phase of tl = 1, 2, 3
-        } catch (Exception e) {
-            logger.log(Level.FINE, "Failed to get phase number of Traffic Light", e);
-            throw new RuntimeException(e);
-        }
-        return ret;
+        TrafficLightStateBuffer b = this.buffer;
+        if (b != null && b.hasState(index)) return b.getPhase(index);
+        requestValues();
+        return Math.max(0, polledPhase);
     }
 
+    /**
+     * Number of programs of this traffic light, cached.
+     * A stale value is refreshed before the next step, see {@link TrafficLightWrap#refreshProgramInfo(SumoTraciConnection)}.
+     * @return number of programs, 0 until loaded
+     */
     public int getProgramNumber() {
-        try {
-            SumoTLSController controller = (SumoTLSController) con.do_job_get(Trafficlight.getCompleteRedYellowGreenDefinition(id));
-            return controller.programs.size();
-        } catch (Exception e) {
-            return 0;
-        }
+        requestProgramInfo();
+        return programCount;
     }
 
+    /**
+     * Name of the current phase, cached like {@link TrafficLightWrap#getProgramNumber()}
+     * @return phase name, null until loaded
+     */
     public String getPhaseName() {
-        try {
-            return (String) con.do_job_get(Trafficlight.getPhaseName(id));
-        } catch (Exception e) {
-            logger.log(Level.FINE, "Failed to get phase name of Traffic Light", e);
-            throw new RuntimeException(e);
-        }
+        requestProgramInfo();
+        return phaseName;
     }
 
+    /**
+     * State of a phase, taken from the phases loaded with the traffic light (no TraCI call)
+     * @param index phase index
+     * @return e.g. "Grrr", empty if there is no such phase
+     */
     public String getPhaseAtIndex(int index) {
-        SumoTLSController controller = null;
-        try {
-            controller = (SumoTLSController) con.do_job_get(Trafficlight.getCompleteRedYellowGreenDefinition(id));
-            SumoTLSProgram program = controller.programs.get("0"); // specific hashmap index (state)
-            if (program == null && !controller.programs.isEmpty()) {
-                program = controller.programs.values().iterator().next(); // take the next if null
-            }
-            if (program != null) {
-                return program.phases.get(index).phasedef; // gets specified phase "Grrr"
-            }
-            return "";
-        } catch (Exception e) {
-            return "";
+        List<TrafficLightPhase> p = phases;
+        return index >= 0 && index < p.size() ? p.get(index).getState() : "";
+    }
+
+    /**
+     * Queues a refresh of the cached program values if they are stale, equal requests before the next step coalesce
+     */
+    private void requestProgramInfo() {
+        TrafficLightStateBuffer b = this.buffer;
+        int phase = b != null && b.hasState(index) ? b.getPhase(index) : -1; // -1 -> not subscribed, always refresh
+        if (!programChanged && phase >= 0 && phase == phaseNameOf) return;
+        commands.submit("programInfo:" + id, c -> { refreshProgramInfo(c); return null; });
+    }
+
+    /**
+     * Reads phase name and, after a program change, program id and number of programs. Runs on the stepping thread.
+     * @param c the connection
+     */
+    private void refreshProgramInfo(SumoTraciConnection c) throws Exception {
+        if (programChanged) {
+            programChanged = false; // first, so a program set meanwhile triggers the next refresh
+            programId = (String) c.do_job_get(Trafficlight.getProgram(id));
+            SumoTLSController controller = (SumoTLSController) c.do_job_get(Trafficlight.getCompleteRedYellowGreenDefinition(id));
+            programCount = controller.programs.size();
         }
+        int phase = (int) c.do_job_get(Trafficlight.getPhase(id));
+        phaseName = (String) c.do_job_get(Trafficlight.getPhaseName(id));
+        phaseNameOf = phase;
     }
 
 
+    /**
+     * Duration of the current phase, cached like {@link TrafficLightWrap#getPhaseNumber()}
+     * @return duration in s, 0 until known
+     */
     public double getDuration() {
-        double duration = 0;
-        try {
-            duration =  (double) con.do_job_get(Trafficlight.getPhaseDuration(id)); // gets phase of tl = 1, 2, 3
-        } catch (Exception e) {
-            logger.log(Level.FINE, "Failed to get phase duration of Traffic Light", e);
-            throw new RuntimeException(e);
-        }
-        return duration;
+        TrafficLightStateBuffer b = this.buffer;
+        if (b != null && b.hasState(index)) return b.getPhaseDuration(index);
+        requestValues();
+        return polledDuration;
     }
 
-    // returns time remaining until tl switches states
+    // returns time remaining until tl switches states, cached like getPhaseNumber()
     public double getNextSwitch() {
-        double duration = 0;
-        try {
-            duration =  (double) con.do_job_get(Trafficlight.getNextSwitch(id)); // gets phase of tl = 1, 2, 3
-        } catch (Exception e) {
-            logger.log(Level.FINE, "Failed to get next switch of Traffic Light", e);
-            throw new RuntimeException(e);
-        }
-        return duration;
+        TrafficLightStateBuffer b = this.buffer;
+        if (b != null && b.hasState(index)) return b.getNextSwitch(index);
+        requestValues();
+        return polledNextSwitch;
+    }
+
+    /**
+     * Queues a poll of phase, duration and next switch, equal requests before the next step coalesce
+     */
+    private void requestValues() {
+        commands.submit("values:" + id, c -> { pollValues(c); return null; });
+    }
+
+    /**
+     * Polls the values used while nothing is subscribed, on the thread that owns the connection
+     * @param c the connection
+     */
+    private void pollValues(SumoTraciConnection c) throws Exception {
+        polledDuration = (double) c.do_job_get(Trafficlight.getPhaseDuration(id));
+        polledNextSwitch = (double) c.do_job_get(Trafficlight.getNextSwitch(id));
+        polledPhase = (int) c.do_job_get(Trafficlight.getPhase(id)); // last, marks the values as polled
     }
 
     public List<TrafficLightPhase> getTrafficLightPhases(){
@@ -358,13 +484,13 @@ public class TrafficLightWrap extends SelectableObject {
         // con.do_job_get(Trafficlight.getControlledLanes(id));
     }
 
+    /**
+     * ID of the active program, cached like {@link TrafficLightWrap#getProgramNumber()}
+     * @return program id, from the {@code .net.xml} until loaded from SUMO
+     */
     public String getProgram() {
-        try {
-            return (String) con.do_job_get(Trafficlight.getProgram(id));
-        } catch (Exception e) {
-            logger.log(Level.FINE, "Failed to get program of Traffic Light", e);
-            throw new RuntimeException(e);
-        }
+        requestProgramInfo();
+        return programId;
     }
 
     public String getId() {
@@ -378,10 +504,49 @@ public class TrafficLightWrap extends SelectableObject {
         return controlledStreets;
     }
 
+    /**
+     * Array in this format: [state0, lane controlled by index0, state1, ...]
+     * e.g. of "Grr" state index 0 is "G" and its controlled lane {@link LaneWrap} is stored after wards by its id.
+     * <p>Built on request from {@link TrafficLightWrap#getSignalState()}, rendering does not use it.</p>
+     * @return state array, null before the first update
+     */
     public String[] getCurrentState() {
+        String state = signalState;
+        if (state == null) return null;
+        if (state != stateArraySource) { // same String object -> same state
+            String[] array = new String[state.length() * 2];
+            for (int i = 0; i < state.length(); i++) {
+                array[i * 2] = String.valueOf(state.charAt(i)); // every current state e.g = Grrryy
+                array[i * 2 + 1] = i < controlledLinks.size() ? controlledLinks.get(i).from : null; // index i -> i+1 = lane
+            }
+            stateArray = array;
+            stateArraySource = state;
+        }
         return stateArray;
     }
 
+    /**
+     * @return the link controlled by every signal index, {@code from} is the incoming lane (null for unused indices)
+     */
+    public List<SumoLink> getControlledLinks() { return controlledLinks; }
+
+    /**
+     * @return current state, one char per signal index (e.g. "GrGr"), null before the first update
+     */
+    public String getSignalState() { return signalState; }
+    /**
+     * @return lanes with a stop bar, see {@link TrafficLightWrap#buildSignalGeometry()}
+     */
+    public LaneWrap[] getSignalLanes() { return signalLanes; }
+    /**
+     * @return signal index of every lane of {@link TrafficLightWrap#getSignalLanes()}, -1 if not controlled
+     */
+    public int[] getLaneSignals() { return laneSignal; }
+    /**
+     * @return stop bar of every lane of {@link TrafficLightWrap#getSignalLanes()} as x1, y1, x2, y2
+     */
+    public double[] getStopBars() { return stopBars; }
+
 
     // other
 
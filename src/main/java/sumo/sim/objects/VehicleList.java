@@ -1,32 +1,73 @@
 package sumo.sim.objects;
 
 import de.tudresden.sumo.cmd.Vehicle;
+import de.tudresden.sumo.config.Constants;
+import de.tudresden.sumo.objects.SumoPrimitive;
 import de.tudresden.sumo.objects.SumoStringList;
+import de.tudresden.sumo.subscription.ResponseType;
+import de.tudresden.sumo.subscription.SubscribtionVariable;
+import de.tudresden.sumo.subscription.SubscriptionObject;
+import de.tudresden.sumo.subscription.VariableSubscription;
+import de.tudresden.sumo.util.Observable;
+import de.tudresden.sumo.util.Observer;
 import it.polito.appeal.traci.SumoTraciConnection;
 import javafx.scene.paint.Color;
 import sumo.sim.data.CSV;
+import sumo.sim.util.IdIndex;
 
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Manages a {@link CopyOnWriteArrayList} of {@link VehicleWrap} objects.
+ * Manages the {@link VehicleWrap} objects of the simulation in a {@link VehicleStore}.
  * <p>
- * This makes the class thread-safe (immune to race conditions), allowing the simulation
- * to iterate over vehicles while another thread tries to add or remove vehicles.
+ * The store is thread-safe without copying on every change, allowing the simulation and the renderer
+ * to iterate over vehicles while another thread adds or removes vehicles.
+ * </p>
+ * <p>
+ * Registered as {@link Observer} of the connection: vehicles are subscribed once they enter the road network,
+ * their speed, position, angle and road ID then arrive with the {@link SumoTraciConnection#do_timestep()} response.
+ * </p>
+ * <p>
+ * The lifecycle is tracked incrementally: the simulation's departed and arrived IDs are subscribed as well,
+ * so each step only the vehicles that changed state are touched. Arrived vehicles are moved out of
+ * {@link VehicleList#vehicles} into {@link VehicleList#archive}, keeping the list iterated by the simulation and the renderer small.
+ * </p>
+ * <p>
+ * While on the road network the dynamic values of a vehicle are kept in a {@link VehicleStateBuffer},
+ * the {@link FleetStatistics} are collected from its arrays once per step and published as an immutable snapshot.
+ * </p>
+ * <p>
+ * Vehicles SUMO departs on its own (defined in the {@code .rou.xml}) get no {@link VehicleWrap}, only their road ID is
+ * subscribed and kept, so the street density counts every vehicle on the network ({@link VehicleList#getExternalRoadIDs()}).
  * </p>
  */
-public class VehicleList {
-    private final CopyOnWriteArrayList<VehicleWrap> vehicles = new CopyOnWriteArrayList<>(); // List of Vehicles
+public class VehicleList implements Observer {
+    private final VehicleStore vehicles = new VehicleStore(); // queued and active vehicles
+    private final VehicleStateBuffer state = new VehicleStateBuffer(); // dynamic values of active vehicles, indexed by slot
+    private final ArrayList<VehicleWrap> archive = new ArrayList<>(); // arrived vehicles, never iterated per step
+    private final IdIndex<VehicleWrap> vehicleIDs = new IdIndex<>(); // every vehicle ever added by ID
+    private final Set<VehicleWrap> activeVehicles = new LinkedHashSet<>(); // on the road network, simulation thread only
+    private final List<String> departedIDs = new ArrayList<>(); // filled by subscription during do_timestep()
+    private final List<String> arrivedIDs = new ArrayList<>();
+    private final HashMap<String, String> externalRoads = new HashMap<>(); // not added by us -> road ID (null until known), simulation thread only
     private final SumoTraciConnection con;// main connection created in main wrapper
+    private final TraciCommandQueue commands; // changes from other threads, sent before the next step
     private int count; // vehicles in list, latest car number: "v"+ count
-    private int activeCount; // vehicles currently on the road network
+    private final FleetStatistics.Accumulator accumulator = new FleetStatistics.Accumulator(); // simulation thread only
+    private volatile FleetStatistics statistics = FleetStatistics.EMPTY; // published once per step
+    private boolean useSubscriptions; // false -> every vehicle is polled each step
+    private boolean lifecycleSubscribed; // false -> departed / arrived are derived from the ID list
     // needs possible routes maybe? for car creation
 
     //Logger
@@ -35,10 +76,66 @@ public class VehicleList {
     /**
      * Initializes our VehicleList with a count of 0 vehicles
      * @param con an instance of {@link SumoTraciConnection}
+     * @param commands queue of the connection, for vehicles added from the GUI
      */
-    public VehicleList(SumoTraciConnection con) {
+    public VehicleList(SumoTraciConnection con, TraciCommandQueue commands) {
         this.count = 0;
         this.con = con;
+        this.commands = commands;
+        this.useSubscriptions = true;
+        con.addObserver(this);
+        subscribeLifecycle();
+    }
+
+    /**
+     * Subscribes the simulation's departed and arrived vehicle IDs, which are then delivered with every step.
+     * If SUMO rejects the subscription {@link VehicleList#updateAllVehicles()} falls back to diffing {@link Vehicle#getIDList()}.
+     */
+    private void subscribeLifecycle() {
+        try {
+            VariableSubscription vs = new VariableSubscription(SubscribtionVariable.simulation, 0, 100000 * 60, "");
+            vs.addCommand(Constants.VAR_DEPARTED_VEHICLES_IDS);
+            vs.addCommand(Constants.VAR_ARRIVED_VEHICLES_IDS);
+            con.do_subscription(vs);
+            lifecycleSubscribed = true;
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to subscribe departed/arrived vehicles, using ID list instead", e);
+            lifecycleSubscribed = false;
+        }
+    }
+
+    /**
+     * Receives subscription results during {@link SumoTraciConnection#do_timestep()} and hands them to the subscribed vehicle.
+     * @param observable the notifying connection
+     * @param so one subscribed variable of one object
+     */
+    @Override
+    public void update(Observable observable, SubscriptionObject so) {
+        if (so.status != Constants.RTYPE_OK) return;
+        if (so.response == ResponseType.VEHICLE_VARIABLE) {
+            VehicleWrap v = vehicleIDs.get(so.id);
+            if (v != null && v.isSubscribed()) {
+                v.setSubscribedValue(so.variable, so.object);
+            } else if (v == null && so.variable == Constants.VAR_ROAD_ID && externalRoads.containsKey(so.id)) {
+                externalRoads.put(so.id, (String) ((SumoPrimitive) so.object).val);
+            }
+        } else if (so.response == ResponseType.SIM_VARIABLE) {
+            // VAR_ARRIVED_VEHICLES_IDS shares its value with VAR_WAITING_TIME, so the response type is checked first
+            if (so.variable == Constants.VAR_DEPARTED_VEHICLES_IDS) {
+                departedIDs.addAll((SumoStringList) so.object);
+            } else if (so.variable == Constants.VAR_ARRIVED_VEHICLES_IDS) {
+                arrivedIDs.addAll((SumoStringList) so.object);
+            }
+        }
+    }
+
+    /**
+     * Enables or disables subscriptions for vehicles entering the road network.
+     * Vehicles that are already subscribed stay subscribed.
+     * @param useSubscriptions false to poll every vehicle each step
+     */
+    public void setUseSubscriptions(boolean useSubscriptions) {
+        this.useSubscriptions = useSubscriptions;
     }
 
     public void setSpeedForAll(double speed) {
@@ -47,81 +144,160 @@ public class VehicleList {
 
     /**
      * Adds n vehicles to the SUMO simulation {@link SumoTraciConnection} via the native {@link Vehicle#addFull(String, String, String, String, String, String, String, String, String, String, String, String, String, int, int)}
+     * <p>
+     *     Queued in the {@link TraciCommandQueue}, the vehicles are added on the simulation thread right before the next step,
+     *     so the lists are never changed while a step iterates them.
+     * </p>
      * @param n number of desired vehicles
      * @param type vehicle type (e.g. STANDARD_VEH)
      * @param route desired route
+     * @return completed once all vehicles were added, exceptionally if SUMO rejected one
      */
-    public void addVehicle(int n, String type, String route, Color color) { // more arguments later? maybe overloaded methods with different args.
-        ArrayList<VehicleWrap> newVehicles = new ArrayList<>(n);
-        try {
+    public CompletableFuture<Void> addVehicle(int n, String type, String route, Color color) { // more arguments later? maybe overloaded methods with different args.
+        return commands.submit(c -> {
             for (int i=0; i<n; i++) {
-                con.do_job_set(Vehicle.addFull("v" + count, route, type, // ids -> latest car id
+                c.do_job_set(Vehicle.addFull("v" + count, route, type, // ids -> latest car id
                         "now", "0", "0", "0",
                         "current", "max", "current", "",
                         "", "", 0, 0)
                 );
                 //vehicles.add(new VehicleWrap("v" + count, con, type, route, color)); // adds new vehicle
-                newVehicles.add(new VehicleWrap("v"+count, con, type, route, color));
+                VehicleWrap v = new VehicleWrap("v"+count, c, commands, type, route, color);
+                vehicles.add(v); // no copy of the stored vehicles, visible to the renderer right away
+                vehicleIDs.add(v.getID(), v);
                 count++; // increment to prevent identical car ids
             }
-        } catch (Exception e) {
-            logger.log(Level.FINE, "Failed to add vehicle", e);
-            throw new RuntimeException(e);
-        }
-        vehicles.addAll(newVehicles); // thread save list is really slow
+            return null;
+        });
     }
 
     /**
-     * Returns a single {@link VehicleWrap} based on ID
+     * Returns a single {@link VehicleWrap} based on ID, including arrived vehicles
      * @param id Vehicle ID
      */
     public VehicleWrap getVehicle(String id) {
-        for (VehicleWrap v : vehicles) {
-            if (v.getID().equals(id)) { // searching through VehicleWrap objects
-                return v;
-            }
-        }
-        return null; // if not found
+        return vehicleIDs.get(id); // null if not found
     }
 
     /**
-     * <p></p>Calls {@link VehicleWrap#setExists(boolean)} for each vehicle based on whether they are on the road network or not</p>
-     * <p>Calls {@link VehicleWrap#updateVehicle()} for every vehicle currently on the road network</p>
+     * <p>Applies the departed and arrived vehicles of the last step, only these vehicles change their state:</p>
+     * <ul>
+     *     <li>departed: {@link VehicleWrap#setExists(boolean)}, no longer queued, attached to the {@link VehicleStateBuffer} and subscribed (if enabled)</li>
+     *     <li>arrived: no longer existing, moved from {@link VehicleList#vehicles} into {@link VehicleList#archive}</li>
+     * </ul>
+     * <p>Calls {@link VehicleWrap#updateVehicle()} for every vehicle currently on the road network
+     * and publishes the new {@link FleetStatistics}</p>
      */
     public void updateAllVehicles() {
         try {
-            SumoStringList list = (SumoStringList) con.do_job_get(Vehicle.getIDList());
-            HashSet<String> activeIDs = new HashSet<>(list); // much faster
-            this.activeCount = activeIDs.size();
-            for (VehicleWrap v : vehicles) {
-                if (activeIDs.contains(v.getID())) {
-                    try {
-                        v.updateVehicle();
-                        v.setExists(true);
-                        // if vehicle is present in activeIDs it is no longer queued, and assuredly is on the road network
-                        v.setQueued(false);
-                    } catch (Exception e) {
-                        logger.log(Level.FINE, "Failed to update all vehicles", e);
-                        v.setExists(false); // if vehicle despawns
+            vehicles.advanceEpoch(); // slots of arrived vehicles no iterator can still be on are reused
+            if (!lifecycleSubscribed) {
+                collectLifecycleFromIDList();
+            }
+
+            for (String id : departedIDs) {
+                VehicleWrap v = vehicleIDs.get(id);
+                if (v == null) { // not added by us (e.g. defined in .rou), only its street is tracked
+                    trackExternal(id);
+                    continue;
+                }
+                v.setExists(true);
+                // a departed vehicle is no longer queued, and assuredly is on the road network
+                v.setQueued(false);
+                v.attach(state);
+                activeVehicles.add(v);
+            }
+            departedIDs.clear();
+
+            for (String id : arrivedIDs) {
+                VehicleWrap v = vehicleIDs.get(id);
+                if (v == null) {
+                    externalRoads.remove(id);
+                    continue;
+                }
+                if (!activeVehicles.remove(v)) continue;
+                v.setExists(false); // SUMO ends its subscription on arrival
+                v.detach(); // keeps its values, the slot is reused later
+                vehicles.remove(v);
+                archive.add(v);
+            }
+            arrivedIDs.clear();
+
+            for (VehicleWrap v : activeVehicles) {
+                try {
+                    v.updateVehicle();
+                    // first step on the network was polled, from now on the values come with the step response
+                    if (useSubscriptions && !v.isSubscribed()) {
+                        v.subscribe();
                     }
-                } else {
-                    v.setExists(false);
+                } catch (Exception e) {
+                    logger.log(Level.FINE, "Failed to update all vehicles", e);
+                    v.setExists(false); // if vehicle despawns
                 }
             }
+
+            accumulator.reset();
+            state.collect(accumulator);
+            // the store holds queued and active vehicles
+            statistics = accumulator.snapshot(Math.max(0, vehicles.size() - activeVehicles.size()));
         } catch (Exception e) {
             logger.log(Level.FINE, "Failed to update all vehicles", e);
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Fallback if the lifecycle subscription is not available.
+     * Derives departed and arrived vehicles by comparing {@link Vehicle#getIDList()} with the currently active vehicles.
+     */
+    private void collectLifecycleFromIDList() throws Exception {
+        SumoStringList list = (SumoStringList) con.do_job_get(Vehicle.getIDList());
+        HashSet<String> activeIDs = new HashSet<>(list); // much faster
+        for (String id : activeIDs) {
+            VehicleWrap v = vehicleIDs.get(id);
+            if (v != null ? !v.exists() : !externalRoads.containsKey(id)) departedIDs.add(id);
+        }
+        for (VehicleWrap v : activeVehicles) {
+            if (!activeIDs.contains(v.getID())) arrivedIDs.add(v.getID());
+        }
+        for (String id : externalRoads.keySet()) {
+            if (!activeIDs.contains(id)) arrivedIDs.add(id);
+        }
+    }
+
+    /**
+     * Subscribes the road ID of a vehicle SUMO departed on its own, it then arrives with every step response.
+     * If the subscription fails the vehicle is still known, but not counted.
+     * @param id vehicle ID
+     */
+    private void trackExternal(String id) {
+        externalRoads.put(id, null);
+        try {
+            VariableSubscription vs = new VariableSubscription(SubscribtionVariable.vehicle, 0, 100000 * 60, id);
+            vs.addCommand(Constants.VAR_ROAD_ID);
+            con.do_subscription(vs);
+        } catch (Exception e) {
+            logger.log(Level.FINE, "Failed to subscribe road of vehicle " + id, e);
+        }
+    }
+
+    /**
+     * Road IDs of the vehicles on the network that were not added by us (e.g. defined in the {@code .rou.xml}).
+     * Only valid on the simulation thread, between two steps.
+     * @return road ID per vehicle, null if not known yet
+     */
+    public Collection<String> getExternalRoadIDs() {
+        return externalRoads.values();
+    }
+
     /**
      * @return {@link ArrayList} of {@link Point2D.Double} of all vehicles positions
      */
     public ArrayList<Point2D.Double> getAllPositions() {
         ArrayList<Point2D.Double> positions = new ArrayList<>();
         for (VehicleWrap v : vehicles) {
-            if (v.exists() && v.getPosition() != null) {
-                positions.add(v.getPosition());
+            if (v.exists()) {
+                positions.add(new Point2D.Double(v.getX(), v.getY()));
             }
         }
         return positions;
@@ -149,17 +325,22 @@ public class VehicleList {
     }
 
     public Point2D.Double getMeanPosition() {
-        double meanX = 0;
-        double meanY = 0;
-        for (VehicleWrap v : this.vehicles) {
-            if(v.exists()) {
-                meanX += v.getPosition().x;
-                meanY += v.getPosition().y;
-            }
-        }
-        meanX /= this.activeCount;
-        meanY /= this.activeCount;
-        return new Point2D.Double(meanX, meanY);
+        FleetStatistics stats = statistics;
+        return new Point2D.Double(stats.getMeanX(), stats.getMeanY());
+    }
+
+    /**
+     * @return statistics of the last step, read all values of one update from the same snapshot
+     */
+    public FleetStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return columnar state of the vehicles on the road network, indexed by {@link VehicleWrap#getSlot()}
+     */
+    public VehicleStateBuffer getState() {
+        return state;
     }
 
     /**
@@ -170,12 +351,19 @@ public class VehicleList {
     }
 
     /**
-     * @return {@link VehicleWrap}'s internal {@link CopyOnWriteArrayList}
+     * @return queued and active vehicles, iterating never blocks and never throws {@link java.util.ConcurrentModificationException}
      */
-    public CopyOnWriteArrayList<VehicleWrap> getVehicles() {
+    public VehicleStore getVehicles() {
         return vehicles;
     }
 
+    /**
+     * @return vehicles that already arrived at the end of their route (only changed by the simulation thread)
+     */
+    public List<VehicleWrap> getArchivedVehicles() {
+        return archive;
+    }
+
     public VehicleWrap getSelectedVehicle() {
         for(VehicleWrap v : vehicles) {
             if(v.isSelected()) return v;
@@ -183,57 +371,18 @@ public class VehicleList {
         return null;
     }
 
-    public int getActiveCount() { return activeCount; }
+    public int getActiveCount() { return statistics.getActiveCount(); }
 
-    public int getQueuedCount() {
-        int count = 0;
-        for(VehicleWrap v : vehicles) {
-            if(v.isQueued()) count++;
-        }
-        return count;
-    }
+    public int getQueuedCount() { return statistics.getQueuedCount(); }
 
-    public int getStoppedCount() {
-        int count = 0;
-        for(VehicleWrap v : vehicles) {
-            if(v.exists() && v.isCurrentlyStopped()) count++;
-        }
-        return count;
-    }
+    public int getStoppedCount() { return statistics.getStoppedCount(); }
 
-    public int getStoppedTime() {
-        int seconds = 0;
-        for(VehicleWrap v : vehicles) {
-            if(v.exists()) seconds+= v.getWaitingTime();
-        }
-        return seconds;
-    }
+    public int getStoppedTime() { return statistics.getStoppedTime(); }
 
-    public double getMeanSpeed() {
-        double meanspeed = 0;
-        if(this.activeCount == 0) return meanspeed;
-        for(VehicleWrap v : vehicles) {
-            if(v.exists()) {
-                meanspeed += v.getSpeed();
-            }
-        }
-        meanspeed /= this.activeCount;
-        return meanspeed;
-    }
+    public double getMeanSpeed() { return statistics.getMeanSpeed(); }
 
-    public double getSpeedStdDev() {
-        // return 0.0 to avoid division by 0 down the line
-        if(this.activeCount == 0) return 0.0;
-        double meanspeed = this.getMeanSpeed();
-        double sumofsquares = 0;
-        for(VehicleWrap v : vehicles) {
-            if(v.exists()) {
-                double diff = v.getSpeed() - meanspeed;
-                sumofsquares += diff*diff;
-            }
-        }
-        return Math.sqrt(sumofsquares/this.activeCount);
-    }
+    // returns 0.0 without active vehicles to avoid division by 0 down the line
+    public double getSpeedStdDev() { return statistics.getSpeedStdDev(); }
 
     public void deselectAll() {
         for(VehicleWrap v : vehicles) {
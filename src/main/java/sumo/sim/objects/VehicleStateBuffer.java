@@ -0,0 +1,168 @@
+package sumo.sim.objects;
+
+import java.util.Arrays;
+
+/**
+ * Columnar storage of the per-step state of all vehicles on the road network, indexed by {@link VehicleWrap#getSlot()}.
+ * <p>
+ *     Instead of every {@link VehicleWrap} holding its own speed, position, ... each value is kept in a primitive array.
+ *     Updating a vehicle writes into these arrays without allocating, and the {@link FleetStatistics}
+ *     are collected from contiguous arrays instead of following a reference per vehicle.
+ * </p>
+ * <p>
+ *     Written by the simulation thread only ({@link VehicleList#updateAllVehicles()} and the subscription results
+ *     delivered during {@link it.polito.appeal.traci.SumoTraciConnection#do_timestep()}), read by the GUI and renderer.
+ *     The arrays are replaced as a whole when growing, so readers always see a consistent set of columns.
+ * </p>
+ */
+public class VehicleStateBuffer {
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * One set of columns, all with the same length
+     */
+    private static final class Columns {
+        final double[] x, y, angle, speed, pendingSpeed, accel, avgSpeed, maxSpeed;
+        final int[] waitingTime, activeTime, totalLifetime, numberOfStops;
+        final boolean[] active, stopped;
+
+        Columns(int n) {
+            x = new double[n]; y = new double[n]; angle = new double[n];
+            speed = new double[n]; pendingSpeed = new double[n]; accel = new double[n];
+            avgSpeed = new double[n]; maxSpeed = new double[n];
+            waitingTime = new int[n]; activeTime = new int[n]; totalLifetime = new int[n]; numberOfStops = new int[n];
+            active = new boolean[n]; stopped = new boolean[n];
+        }
+
+        Columns(Columns old, int n) {
+            x = Arrays.copyOf(old.x, n); y = Arrays.copyOf(old.y, n); angle = Arrays.copyOf(old.angle, n);
+            speed = Arrays.copyOf(old.speed, n); pendingSpeed = Arrays.copyOf(old.pendingSpeed, n);
+            accel = Arrays.copyOf(old.accel, n);
+            avgSpeed = Arrays.copyOf(old.avgSpeed, n); maxSpeed = Arrays.copyOf(old.maxSpeed, n);
+            waitingTime = Arrays.copyOf(old.waitingTime, n); activeTime = Arrays.copyOf(old.activeTime, n);
+            totalLifetime = Arrays.copyOf(old.totalLifetime, n); numberOfStops = Arrays.copyOf(old.numberOfStops, n);
+            active = Arrays.copyOf(old.active, n); stopped = Arrays.copyOf(old.stopped, n);
+        }
+
+        int length() { return x.length; }
+    }
+
+    private volatile Columns c = new Columns(INITIAL_CAPACITY);
+    private volatile int highWater; // every active slot is below
+
+    /**
+     * Resets a slot to the initial values of a new vehicle and marks it active.
+     * @param slot slot of a vehicle that just entered the road network
+     */
+    void attach(int slot) {
+        ensureCapacity(slot + 1);
+        Columns c = this.c;
+        c.x[slot] = 0; c.y[slot] = 0; c.angle[slot] = 0;
+        c.speed[slot] = 0; c.pendingSpeed[slot] = 0; c.accel[slot] = 0;
+        c.avgSpeed[slot] = 0; c.maxSpeed[slot] = 0;
+        c.waitingTime[slot] = -1;
+        c.activeTime[slot] = 1;
+        c.totalLifetime[slot] = 0;
+        c.numberOfStops[slot] = 0;
+        c.stopped[slot] = false;
+        c.active[slot] = true;
+        if (slot >= highWater) highWater = slot + 1;
+    }
+
+    /**
+     * Marks a slot inactive, its values are no longer part of any aggregation
+     * @param slot slot of an arrived vehicle
+     */
+    void release(int slot) {
+        Columns c = this.c;
+        if (slot < c.length()) c.active[slot] = false;
+    }
+
+    private void ensureCapacity(int n) {
+        int length = c.length();
+        if (n <= length) return;
+        while (length < n) length *= 2;
+        c = new Columns(c, length);
+    }
+
+    void setPosition(int slot, double x, double y) {
+        Columns c = this.c;
+        c.x[slot] = x;
+        c.y[slot] = y;
+    }
+
+    void setAngle(int slot, double angle) { c.angle[slot] = angle; }
+
+    /**
+     * Stores the speed received by subscription, applied by the next {@link VehicleStateBuffer#step(int, double)}
+     */
+    void setPendingSpeed(int slot, double speed) { c.pendingSpeed[slot] = speed; }
+
+    double getPendingSpeed(int slot) { return c.pendingSpeed[slot]; }
+
+    /**
+     * Applies the speed of the current step and calculates the derived values (acceleration, average, stops, ...).
+     * @param slot vehicle slot
+     * @param newSpeed speed in m/s
+     */
+    void step(int slot, double newSpeed) {
+        Columns c = this.c;
+        c.stopped[slot] = false;
+        // retrieve previous frame's speed before updating the vehicle's speed
+        double oldSpeed = c.speed[slot];
+        // determine whether vehicle has been active last frame via oldSpeed
+        boolean activeLastFrame = oldSpeed > 0;
+        c.speed[slot] = newSpeed;
+
+        // since time between calculating acceleration is always 1 second
+        // a = delta v / delta t simplifies to a = delta v
+        // positive acceleration -> speeding up
+        // negative acceleration -> slowing down
+        c.accel[slot] = newSpeed - oldSpeed;
+
+        // calculate cumulative average
+        int lifetime = c.totalLifetime[slot];
+        c.avgSpeed[slot] = ((c.avgSpeed[slot] * lifetime) + newSpeed) / (lifetime + 1);
+
+        if (newSpeed > c.maxSpeed[slot]) {
+            c.maxSpeed[slot] = newSpeed;
+        }
+
+        // determine whether waiting or active
+        if (newSpeed == 0) {
+            c.stopped[slot] = true;
+            c.waitingTime[slot]++;
+            if (activeLastFrame) c.numberOfStops[slot]++;
+        } else {
+            c.activeTime[slot]++;
+        }
+        c.totalLifetime[slot]++;
+    }
+
+    public double getX(int slot) { return c.x[slot]; }
+    public double getY(int slot) { return c.y[slot]; }
+    public double getAngle(int slot) { return c.angle[slot]; }
+    public double getSpeed(int slot) { return c.speed[slot]; }
+    public double getAccel(int slot) { return c.accel[slot]; }
+    public double getAvgSpeed(int slot) { return c.avgSpeed[slot]; }
+    public double getMaxSpeed(int slot) { return c.maxSpeed[slot]; }
+    public int getWaitingTime(int slot) { return c.waitingTime[slot]; }
+    public int getActiveTime(int slot) { return c.activeTime[slot]; }
+    public int getTotalLifetime(int slot) { return c.totalLifetime[slot]; }
+    public int getNumberOfStops(int slot) { return c.numberOfStops[slot]; }
+    public boolean isStopped(int slot) { return c.stopped[slot]; }
+
+    /**
+     * Feeds every active slot into the accumulator, one pass over the arrays.
+     * @param acc reset accumulator
+     */
+    void collect(FleetStatistics.Accumulator acc) {
+        Columns c = this.c;
+        int n = Math.min(highWater, c.length());
+        for (int i = 0; i < n; i++) {
+            if (c.active[i]) {
+                acc.add(c.speed[i], c.x[i], c.y[i], c.stopped[i], c.waitingTime[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package sumo.sim.objects;
+
+import java.lang.ref.Cleaner;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Concurrent storage of the queued and active {@link VehicleWrap} objects, replacing the former {@code CopyOnWriteArrayList}.
+ * <p>
+ *     Every vehicle gets a stable slot index ({@link VehicleWrap#getSlot()}) for as long as it is stored.
+ *     Slots live in fixed size chunks, so adding a vehicle never copies the already stored vehicles:
+ *     a new slot is taken with a single atomic increment (or from the pool of recycled slots) and written with a volatile store.
+ * </p>
+ * <p>
+ *     Iteration is snapshot-like and never blocks: an iterator reads the slots up to the high-water mark
+ *     at the time it was created and skips empty slots. The render thread can therefore iterate while the GUI thread adds vehicles
+ *     and the simulation thread removes arrived ones.
+ * </p>
+ * <p>
+ *     Removed slots are not reused right away. They are retired with the current epoch (advanced once per simulation step
+ *     by {@link VehicleStore#advanceEpoch()}) and only recycled once every iterator that was created up to that epoch is done,
+ *     so an iterator that is still running (e.g. a frame being rendered) does not see another vehicle appear in a slot it just passed.
+ *     A slow reader only delays recycling, new vehicles get fresh slots meanwhile. An iterator counts as done when it
+ *     reached its end, or when it was dropped early (e.g. {@code return} inside a for-each) and garbage collected.
+ * </p>
+ */
+public class VehicleStore implements Iterable<VehicleWrap> {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS; // 1024 vehicles per chunk
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MAX_CHUNKS = 4096; // ~4 million slots
+    private static final int MAX_SLOTS = MAX_CHUNKS * CHUNK_SIZE;
+    private static final Cleaner READER_CLEANER = Cleaner.create(); // releases iterators that were not run to the end
+
+    private final AtomicReferenceArray<AtomicReferenceArray<VehicleWrap>> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+    private final AtomicInteger nextSlot = new AtomicInteger(); // high-water mark, slots below have been handed out
+    private final AtomicInteger size = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Integer> freeSlots = new ConcurrentLinkedQueue<>(); // recyclable slots
+    private final ArrayList<int[]> retired = new ArrayList<>(); // {slot, epoch}, simulation thread only
+    private final Set<Reader> readers = ConcurrentHashMap.newKeySet(); // running iterators
+    private volatile int epoch;
+
+    /**
+     * A running iterator and the epoch it was created in, removes itself from the readers once done
+     */
+    private static final class Reader implements Runnable {
+        private final int epoch;
+        private final Set<Reader> readers;
+
+        private Reader(int epoch, Set<Reader> readers) {
+            this.epoch = epoch;
+            this.readers = readers;
+        }
+
+        @Override
+        public void run() { readers.remove(this); } // must not reference the iterator, else it is never collected
+    }
+
+    /**
+     * Stores a vehicle and assigns its slot, may be called from any thread.
+     * @param v vehicle to store
+     * @return assigned slot
+     */
+    public int add(VehicleWrap v) {
+        Integer recycled = freeSlots.poll();
+        // the high-water mark only moves while there is room, a full store must not hand out slots it cannot hold
+        int slot = recycled != null ? recycled : nextSlot.getAndUpdate(n -> n < MAX_SLOTS ? n + 1 : n);
+        if (slot >= MAX_SLOTS) {
+            throw new IllegalStateException("Vehicle store is full");
+        }
+        v.setSlot(slot);
+        chunk(slot).set(slot & CHUNK_MASK, v);
+        size.incrementAndGet();
+        return slot;
+    }
+
+    /**
+     * Removes a vehicle from its slot. The slot is recycled once the iterators running now are done.
+     * Only called by the simulation thread.
+     * @param v stored vehicle
+     * @return true if the vehicle was stored
+     */
+    public boolean remove(VehicleWrap v) {
+        int slot = v.getSlot();
+        if (slot < 0 || slot >= nextSlot.get()) return false;
+        if (!chunk(slot).compareAndSet(slot & CHUNK_MASK, v, null)) return false;
+        v.setSlot(-1); // not stored anymore, the slot may belong to another vehicle soon
+        size.decrementAndGet();
+        retired.add(new int[]{slot, epoch});
+        return true;
+    }
+
+    /**
+     * Starts a new epoch (once per simulation step) and releases the slots no running iterator can have passed.
+     * Only called by the simulation thread.
+     */
+    public void advanceEpoch() {
+        epoch++;
+        if (retired.isEmpty()) return;
+        int oldestReader = epoch; // readers created from now on never saw the retired vehicles
+        for (Reader r : readers) oldestReader = Math.min(oldestReader, r.epoch);
+        int kept = 0;
+        for (int[] r : retired) {
+            if (r[1] < oldestReader) {
+                freeSlots.add(r[0]);
+            } else {
+                retired.set(kept++, r);
+            }
+        }
+        retired.subList(kept, retired.size()).clear();
+    }
+
+    /**
+     * @param slot slot index
+     * @return vehicle stored in this slot, null if empty
+     */
+    public VehicleWrap get(int slot) {
+        if (slot < 0 || slot >= nextSlot.get()) return null;
+        AtomicReferenceArray<VehicleWrap> c = chunks.get(slot >>> CHUNK_BITS);
+        return c == null ? null : c.get(slot & CHUNK_MASK);
+    }
+
+    /**
+     * @return number of stored vehicles
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return upper bound (exclusive) of all slots handed out so far
+     */
+    public int capacity() {
+        return nextSlot.get();
+    }
+
+    private AtomicReferenceArray<VehicleWrap> chunk(int slot) {
+        int index = slot >>> CHUNK_BITS;
+        AtomicReferenceArray<VehicleWrap> c = chunks.get(index);
+        if (c == null) {
+            // another thread might create the chunk at the same time, the first one wins
+            chunks.compareAndSet(index, null, new AtomicReferenceArray<>(CHUNK_SIZE));
+            c = chunks.get(index);
+        }
+        return c;
+    }
+
+    /**
+     * @return iterator over the vehicles stored when it was created (and possibly some added afterward)
+     */
+    @Override
+    public Iterator<VehicleWrap> iterator() {
+        Reader reader = new Reader(epoch, readers);
+        readers.add(reader); // before the first slot is read
+        final int end = nextSlot.get();
+        return new Iterator<>() {
+            private final Cleaner.Cleanable cleanable = READER_CLEANER.register(this, reader);
+            private int slot = 0;
+            private VehicleWrap next = advance();
+
+            private VehicleWrap advance() {
+                while (slot < end) {
+                    VehicleWrap v = get(slot++);
+                    if (v != null) return v;
+                }
+                cleanable.clean(); // done, the slots it passed may be reused
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public VehicleWrap next() {
+                if (next == null) throw new NoSuchElementException();
+                VehicleWrap v = next;
+                next = advance();
+                return v;
+            }
+        };
+    }
+}
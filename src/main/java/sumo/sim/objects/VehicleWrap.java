@@ -1,11 +1,17 @@
 package sumo.sim.objects;
 
 import de.tudresden.sumo.cmd.Vehicle;
+import de.tudresden.sumo.config.Constants;
+import de.tudresden.sumo.objects.SumoObject;
 import de.tudresden.sumo.objects.SumoPosition2D;
+import de.tudresden.sumo.objects.SumoPrimitive;
+import de.tudresden.sumo.subscription.SubscribtionVariable;
+import de.tudresden.sumo.subscription.VariableSubscription;
 import de.tudresden.sumo.util.SumoCommand;
 import it.polito.appeal.traci.SumoTraciConnection;
 import javafx.scene.paint.Color;
 import java.awt.geom.Point2D;
+import java.util.concurrent.CompletableFuture;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -14,6 +20,9 @@ import java.util.logging.Logger;
  * A wrapper of {@link Vehicle} allowing for instancing of individual vehicles
  * <p>Includes stats tracked by {@link SumoTraciConnection} but also client-side calculated stats like {@link VehicleWrap#avgSpeed},{@link VehicleWrap#accel},
  * {@link VehicleWrap#totalLifetime} and properties critical for rendering such as {@link VehicleWrap#color}
+ * <p>While the vehicle is on the road network these values live in the {@link VehicleStateBuffer} of its {@link VehicleList}
+ * and this class is a view on its slot. On arrival the values are copied back into the fields ({@link VehicleWrap#detach()}),
+ * so archived vehicles keep their stats while the slot is reused.
  */
 public class VehicleWrap extends SelectableObject {
 
@@ -26,12 +35,19 @@ public class VehicleWrap extends SelectableObject {
     private String name; // name = id; -> but can be customized for searching
     private final String type;
     private final SumoTraciConnection con;
+    private final TraciCommandQueue commands; // for changes from the GUI
     private Color color;
     private String routeID; // which route the car is assigned to (could be of RouteWrap if implemented)
 
+    // state while attached lives in the buffer, these fields hold the values before departure and after arrival
+    private volatile VehicleStateBuffer state; // null if not on the road network; volatile, read by the FX and render threads
     private double speed; // m/s
     private Point2D.Double position;
     private double angle;
+    private String roadID; // edge the vehicle is currently on (only known while subscribed)
+
+    // subscription, values are written by VehicleList during do_timestep()
+    private boolean subscribed;
 
     // values which need to be calculated / updated per tick
     private double maxSpeed;
@@ -41,7 +57,6 @@ public class VehicleWrap extends SelectableObject {
     private int waitingTime;
     private int activeTime;
     private int totalLifetime; // = waitingTime + activeTime;
-    private boolean activeLastFrame; // using oldSpeed could render activeLastFrame useless
     private boolean currentlyStopped;
     private boolean exists; // check for despawning in gui?
     private boolean queued;
@@ -49,6 +64,8 @@ public class VehicleWrap extends SelectableObject {
     // could be used for selecting in the GUI later on
     private boolean selected;
 
+    private volatile int slot = -1; // index in the VehicleStore, -1 if not stored; the getters fall back to the fields then
+
     //Logger
     private static final Logger logger = java.util.logging.Logger.getLogger(VehicleWrap.class.getName());
 
@@ -56,15 +73,17 @@ public class VehicleWrap extends SelectableObject {
      * Constructor initializes most values to 0 before they can be set by {@link VehicleWrap#updateVehicle()}
      * @param id Vehicle ID
      * @param con an instance of {@link SumoTraciConnection}
+     * @param commands queue of the connection
      * @param type Vehicle Type
      * @param route Vehicle Route
      * @param color Vehicle Color
      */
-    public VehicleWrap(String id , SumoTraciConnection con, String type, String route, Color color) {
+    public VehicleWrap(String id , SumoTraciConnection con, TraciCommandQueue commands, String type, String route, Color color) {
         super();
         this.id = id;
         this.type = type;
         this.con = con;
+        this.commands = commands;
         this.color = color;
         this.routeID = route;
         this.speed = 0.0;
@@ -75,49 +94,108 @@ public class VehicleWrap extends SelectableObject {
         this.waitingTime = -1;
         this.activeTime = 1;
         this.totalLifetime = 0;
-        this.activeLastFrame = false;
         this.currentlyStopped = false;
         this.queued = true;
     }
 
     /**
-     * Gets called each step by the Simulation, updates all SUMO internal values using {@link SumoTraciConnection#do_job_get(SumoCommand)}
-     * , as well as calculating our live-tracked values.
+     * Moves the dynamic state of this vehicle into a slot of the buffer, called when the vehicle departs.
+     * @param state buffer of the {@link VehicleList}
      */
-    public void updateVehicle() { // updates attributes each step, causes exception (if many cars are updated and delay is changed) needs fixing
+    void attach(VehicleStateBuffer state) {
+        state.attach(slot);
+        this.state = state;
+    }
+
+    /**
+     * Copies the values of the vehicle's slot back into its own fields and releases the slot, called on arrival.
+     */
+    void detach() {
+        VehicleStateBuffer s = this.state;
+        if (s == null) return;
+        this.speed = s.getSpeed(slot);
+        this.position = new Point2D.Double(s.getX(slot), s.getY(slot));
+        this.angle = s.getAngle(slot);
+        this.accel = s.getAccel(slot);
+        this.avgSpeed = s.getAvgSpeed(slot);
+        this.maxSpeed = s.getMaxSpeed(slot);
+        this.numberOfStops = s.getNumberOfStops(slot);
+        this.waitingTime = s.getWaitingTime(slot);
+        this.activeTime = s.getActiveTime(slot);
+        this.totalLifetime = s.getTotalLifetime(slot);
+        this.currentlyStopped = s.isStopped(slot);
+        this.state = null;
+        s.release(slot);
+    }
+
+    /**
+     * Subscribes speed, position, angle and road ID of this vehicle via {@link SumoTraciConnection#do_subscription(de.tudresden.sumo.subscription.Subscription)}.
+     * <p>
+     *     From the next step on SUMO sends these values with the response of {@link SumoTraciConnection#do_timestep()},
+     *     so {@link VehicleWrap#updateVehicle()} no longer needs a round trip per value.
+     *     The results are handed over by {@link VehicleList} via {@link VehicleWrap#setSubscribedValue(int, SumoObject)}.
+     * </p>
+     * @return true if the subscription was accepted, false if the vehicle has to be polled instead
+     */
+    public boolean subscribe() {
         try {
-            this.currentlyStopped = false;
-            // retrieve previous frame's speed before updating the vehicle's speed
-            double oldSpeed = this.speed;
-            // determine whether vehicle has been active last frame via oldSpeed
-            this.activeLastFrame = oldSpeed > 0;
-            this.speed = (double)con.do_job_get(Vehicle.getSpeed(id)); // returns SumoCommand, which is then performed by do_job_get
-            SumoPosition2D pos2D = (SumoPosition2D)con.do_job_get(Vehicle.getPosition(id)); // casted on SumoPosition2d
-            this.position = new Point2D.Double(pos2D.x, pos2D.y); // SumoPosition values stored in Point2d object
-            this.angle = (double)con.do_job_get(Vehicle.getAngle(id));
-
-            // since time between calculating acceleration is always 1 second
-            // a = delta v / delta t simplifies to a = delta v
-            // positive acceleration -> speeding up
-            // negative acceleration -> slowing down
-            this.accel = this.speed - oldSpeed;
-
-            // calculate cumulative average
-            this.avgSpeed = ((this.avgSpeed*this.totalLifetime)+this.speed)/(this.totalLifetime+1);
-
-            if(speed > maxSpeed) {
-                this.maxSpeed = speed;
+            VariableSubscription vs = new VariableSubscription(SubscribtionVariable.vehicle, 0, 100000 * 60, id);
+            vs.addCommand(Constants.VAR_SPEED);
+            vs.addCommand(Constants.VAR_POSITION);
+            vs.addCommand(Constants.VAR_ANGLE);
+            vs.addCommand(Constants.VAR_ROAD_ID);
+            con.do_subscription(vs);
+            this.subscribed = true;
+        } catch (Exception e) {
+            logger.log(Level.FINE, "Failed to subscribe vehicle, using polling instead", e);
+            this.subscribed = false;
+        }
+        return subscribed;
+    }
+
+    /**
+     * Stores one subscribed value delivered with the last simulation step.
+     * @param variable TraCI variable id, e.g. {@link Constants#VAR_SPEED}
+     * @param value the decoded value
+     */
+    void setSubscribedValue(int variable, SumoObject value) {
+        VehicleStateBuffer s = this.state;
+        if (s == null) return;
+        switch (variable) {
+            case Constants.VAR_SPEED -> s.setPendingSpeed(slot, (double) ((SumoPrimitive) value).val);
+            case Constants.VAR_POSITION -> {
+                SumoPosition2D pos2D = (SumoPosition2D) value;
+                s.setPosition(slot, pos2D.x, pos2D.y); // no Point2D per vehicle and step
             }
+            case Constants.VAR_ANGLE -> s.setAngle(slot, (double) ((SumoPrimitive) value).val);
+            case Constants.VAR_ROAD_ID -> this.roadID = (String) ((SumoPrimitive) value).val;
+            default -> { }
+        }
+    }
 
-            // determine whether waiting or active
-            if(this.speed == 0) {
-                this.currentlyStopped = true;
-                this.waitingTime++;
-                if(this.activeLastFrame) this.numberOfStops++;
+    /**
+     * Gets called each step by the Simulation, updates all SUMO internal values, as well as calculating our live-tracked values.
+     * <p>
+     *     Subscribed vehicles already received speed, position and angle with the step response.
+     *     Otherwise the values are polled using {@link SumoTraciConnection#do_job_get(SumoCommand)} (fallback).
+     *     The derived values are calculated by {@link VehicleStateBuffer#step(int, double)}.
+     * </p>
+     */
+    public void updateVehicle() { // updates attributes each step, causes exception (if many cars are updated and delay is changed) needs fixing
+        VehicleStateBuffer s = this.state;
+        if (s == null) return; // not on the road network
+        try {
+            double newSpeed;
+            if (subscribed) {
+                newSpeed = s.getPendingSpeed(slot); // position and angle were already set by setSubscribedValue
             } else {
-                this.activeTime++;
+                newSpeed = (double)con.do_job_get(Vehicle.getSpeed(id)); // returns SumoCommand, which is then performed by do_job_get
+                SumoPosition2D pos2D = (SumoPosition2D)con.do_job_get(Vehicle.getPosition(id)); // casted on SumoPosition2d
+                s.setPosition(slot, pos2D.x, pos2D.y);
+                s.setAngle(slot, (double)con.do_job_get(Vehicle.getAngle(id)));
+                this.roadID = (String)con.do_job_get(Vehicle.getRoadID(id)); // for the street density
             }
-            this.totalLifetime++;
+            s.step(slot, newSpeed);
         } catch (Exception e) {
             logger.log(Level.FINE, "Failed to update specific vehicle", e);
             this.exists = false;
@@ -126,37 +204,47 @@ public class VehicleWrap extends SelectableObject {
 
     /**
      * Allows for setting individual vehicle's speed.
+     * Sent before the next step, only the last of several changes in between is sent.
      * @param speed desired speed in m/s
+     * @return completed once SUMO accepted the speed
      */
-    public void setSpeed(double speed) {
-        try {
-            con.do_job_set(Vehicle.setSpeed(id, speed));
-        } catch (Exception e) {
-            logger.log(Level.FINE, "Failed to set speed of specific Vehicle", e);
-            throw new RuntimeException(e);
-        }
+    public CompletableFuture<Void> setSpeed(double speed) {
+        return commands.set("speed:" + id, Vehicle.setSpeed(id, speed));
     }
 
     /**
      * @return The current speed of the vehicle in m/s.
      */
-    public double getSpeed() { return speed; }
+    public double getSpeed() { VehicleStateBuffer s = state; int i = slot; return s != null && i >= 0 ? s.getSpeed(i) : speed; }
     /**
+     * Allocates a new point while the vehicle is on the road network, use {@link VehicleWrap#getX()} and {@link VehicleWrap#getY()} per frame.
      * @return The current X,Y coordinates of the vehicle.
      */
-    public Point2D.Double getPosition() { return position; }
+    public Point2D.Double getPosition() {
+        VehicleStateBuffer s = state;
+        int i = slot;
+        return s != null && i >= 0 ? new Point2D.Double(s.getX(i), s.getY(i)) : position;
+    }
+    /**
+     * @return The current X coordinate of the vehicle.
+     */
+    public double getX() { VehicleStateBuffer s = state; int i = slot; return s != null && i >= 0 ? s.getX(i) : position.x; }
+    /**
+     * @return The current Y coordinate of the vehicle.
+     */
+    public double getY() { VehicleStateBuffer s = state; int i = slot; return s != null && i >= 0 ? s.getY(i) : position.y; }
     /**
      * @return The angle of the vehicle in degrees (0-360).
      */
-    public double getAngle() { return angle; }
+    public double getAngle() { VehicleStateBuffer s = state; int i = slot; return s != null && i >= 0 ? s.getAngle(i) : angle; }
     /**
      * @return The current acceleration in m/s².
      */
-    public double getAccel() { return accel; }
+    public double getAccel() { VehicleStateBuffer s = state; int i = slot; return s != null && i >= 0 ? s.getAccel(i) : accel; }
     /**
      * @return The average speed over the vehicle's entire trip.
      */
-    public double getAvgSpeed() { return avgSpeed; }
+    public double getAvgSpeed() { VehicleStateBuffer s = state; int i = slot; return s != null && i >= 0 ? s.getAvgSpeed(i) : avgSpeed; }
     /**
      * @return This vehicle's ID.
      */
@@ -168,23 +256,23 @@ public class VehicleWrap extends SelectableObject {
     /**
      * @return The number of times the vehicle has stopped.
      */
-    public int getNumberOfStops() { return numberOfStops; }
+    public int getNumberOfStops() { VehicleStateBuffer s = state; int i = slot; return s != null && i >= 0 ? s.getNumberOfStops(i) : numberOfStops; }
     /**
      * @return The total time (in seconds) the vehicle has spent waiting.
      */
-    public int getWaitingTime() { return waitingTime; }
+    public int getWaitingTime() { VehicleStateBuffer s = state; int i = slot; return s != null && i >= 0 ? s.getWaitingTime(i) : waitingTime; }
     /**
      * @return The maximum recorded speed of this vehicle.
      */
-    public double getMaxSpeed() { return maxSpeed; }
+    public double getMaxSpeed() { VehicleStateBuffer s = state; int i = slot; return s != null && i >= 0 ? s.getMaxSpeed(i) : maxSpeed; }
     /**
      * @return The duration (in seconds) the vehicle has been active (not stopped).
      */
-    public int getActiveTime() { return activeTime; }
+    public int getActiveTime() { VehicleStateBuffer s = state; int i = slot; return s != null && i >= 0 ? s.getActiveTime(i) : activeTime; }
     /**
      * @return The total lifetime of the vehicle.
      */
-    public int getTotalLifetime() { return totalLifetime; }
+    public int getTotalLifetime() { VehicleStateBuffer s = state; int i = slot; return s != null && i >= 0 ? s.getTotalLifetime(i) : totalLifetime; }
     /**
      * @return true if the vehicle is currently active on the road network.
      */
@@ -202,7 +290,20 @@ public class VehicleWrap extends SelectableObject {
      * @return ID of the route this vehicle is following.
      */
     public String getRouteID() { return routeID; }
-    public boolean isCurrentlyStopped() { return this.currentlyStopped; }
+    /**
+     * @return ID of the edge the vehicle is currently on, null if the vehicle is not on the road network yet.
+     */
+    public String getRoadID() { return roadID; }
+    /**
+     * @return true if this vehicle's values are delivered by a subscription.
+     */
+    public boolean isSubscribed() { return subscribed; }
+    /**
+     * @return slot index assigned by {@link VehicleStore}, -1 if the vehicle is not stored (anymore)
+     */
+    public int getSlot() { return slot; }
+    void setSlot(int slot) { this.slot = slot; }
+    public boolean isCurrentlyStopped() { VehicleStateBuffer s = state; int i = slot; return s != null && i >= 0 ? s.isStopped(i) : currentlyStopped; }
     protected void setQueued(boolean queued) { this.queued = queued; }
     protected boolean isQueued()  { return this.queued; }
 }
\ No newline at end of file
@@ -0,0 +1,112 @@
+package sumo.sim.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the String IDs of simulation objects to the objects and to dense integer handles.
+ * <p>
+ *     Used by the list classes ({@code VehicleList}, {@code StreetList}, {@code TrafficLightList}, {@code JunctionList})
+ *     instead of searching their lists linearly. Handles are assigned in insertion order (0, 1, 2, ...) and never reused,
+ *     so they can be used as array indices, e.g. for route generation.
+ * </p>
+ * <p>
+ *     Lookups are safe from any thread, adding and removing is synchronized.
+ * </p>
+ *
+ * @param <T> type of the indexed objects
+ */
+public class IdIndex<T> {
+
+    private final Map<String, Integer> handles = new ConcurrentHashMap<>();
+    private volatile Object[] objects;
+    private int size; // number of assigned handles
+
+    public IdIndex() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize initial capacity, e.g. number of edges read from the .net.xml
+     */
+    public IdIndex(int expectedSize) {
+        this.objects = new Object[Math.max(expectedSize, 1)];
+    }
+
+    /**
+     * Adds an object or replaces the object stored for an already known ID (keeping its handle).
+     * @param id unique ID of the object
+     * @param obj object to store
+     * @return handle of the object
+     */
+    public synchronized int add(String id, T obj) {
+        Integer known = handles.get(id);
+        if (known != null) {
+            objects[known] = obj;
+            return known;
+        }
+        if (size == objects.length) {
+            objects = Arrays.copyOf(objects, size * 2);
+        }
+        int handle = size++;
+        objects[handle] = obj; // written before the handle becomes visible
+        handles.put(id, handle);
+        return handle;
+    }
+
+    /**
+     * Removes an object, its handle stays assigned and is not reused.
+     * @param id ID of the object
+     * @return the removed object, null if unknown
+     */
+    public synchronized T remove(String id) {
+        Integer handle = handles.remove(id);
+        if (handle == null) return null;
+        T obj = get(handle);
+        objects[handle] = null;
+        return obj;
+    }
+
+    /**
+     * @param id ID of the object
+     * @return object with this ID, null if unknown (or id is null)
+     */
+    public T get(String id) {
+        if (id == null) return null;
+        Integer handle = handles.get(id);
+        return handle == null ? null : get(handle);
+    }
+
+    /**
+     * @param handle handle returned by {@link #add(String, Object)}
+     * @return object with this handle, null if removed or out of range
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int handle) {
+        Object[] arr = objects;
+        if (handle < 0 || handle >= arr.length) return null;
+        return (T) arr[handle];
+    }
+
+    /**
+     * @param id ID of the object
+     * @return handle of the object, -1 if unknown
+     */
+    public int getHandle(String id) {
+        if (id == null) return -1;
+        Integer handle = handles.get(id);
+        return handle == null ? -1 : handle;
+    }
+
+    public boolean contains(String id) {
+        return id != null && handles.containsKey(id);
+    }
+
+    /**
+     * @return number of assigned handles (including removed objects), every handle is smaller than this
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,182 @@
+package sumo.sim.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Read-only R-tree over axis-aligned bounding boxes, bulk loaded with Sort-Tile-Recursive (STR) packing.
+ * <p>
+ *     Used for the network elements that never move (streets, junctions, traffic lights): built once after their bounds
+ *     are known, afterwards a rectangle query only visits the nodes overlapping the rectangle, so the cost depends on
+ *     the number of results and not on the size of the network.
+ * </p>
+ * <p>
+ *     All nodes are kept in flat arrays per tree level. Queries do not allocate and are safe from any thread.
+ * </p>
+ *
+ * @param <T> type of the stored elements
+ */
+public class StaticRTree<T> {
+    private static final int NODE_CAPACITY = 16;
+
+    /**
+     * Collects the elements before the tree is packed
+     * @param <T> type of the stored elements
+     */
+    public static class Builder<T> {
+        private final List<Object> items = new ArrayList<>();
+        private final List<double[]> bounds = new ArrayList<>();
+
+        /**
+         * @return this builder
+         */
+        public Builder<T> add(T item, double minX, double maxX, double minY, double maxY) {
+            items.add(item);
+            bounds.add(new double[]{minX, maxX, minY, maxY});
+            return this;
+        }
+
+        public StaticRTree<T> build() {
+            return new StaticRTree<>(items, bounds);
+        }
+    }
+
+    /**
+     * One level of the tree, level 0 holds the elements themselves
+     */
+    private static final class Level {
+        final double[] minX, maxX, minY, maxY;
+        final int[] firstChild; // index of the first entry in the level below (unused on level 0)
+        final int[] childCount;
+
+        Level(int n) {
+            minX = new double[n]; maxX = new double[n]; minY = new double[n]; maxY = new double[n];
+            firstChild = new int[n];
+            childCount = new int[n];
+        }
+
+        int size() { return minX.length; }
+    }
+
+    private final Object[] items; // in the order of level 0
+    private final Level[] levels; // levels[levels.length - 1] is the root level
+    private final int[] stack; // reused by queries, guarded by this (queries must not be nested)
+
+    private StaticRTree(List<Object> unsorted, List<double[]> bounds) {
+        int n = unsorted.size();
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        double[][] b = bounds.toArray(new double[0][]);
+        strSort(order, 0, n, i -> (b[i][0] + b[i][1]) / 2, i -> (b[i][2] + b[i][3]) / 2);
+
+        items = new Object[n];
+        Level leaves = new Level(n);
+        for (int i = 0; i < n; i++) {
+            items[i] = unsorted.get(order[i]);
+            double[] e = b[order[i]];
+            leaves.minX[i] = e[0]; leaves.maxX[i] = e[1]; leaves.minY[i] = e[2]; leaves.maxY[i] = e[3];
+        }
+
+        List<Level> built = new ArrayList<>();
+        built.add(leaves);
+        Level below = leaves;
+        while (below.size() > 1) {
+            below = pack(below);
+            built.add(below);
+        }
+        levels = built.toArray(new Level[0]);
+        // depth-first: at most one node's children per level plus the root entries are waiting
+        stack = new int[(levels.length + 1) * NODE_CAPACITY * 2];
+    }
+
+    private interface Center { double of(int i); }
+
+    /**
+     * Sorts by x center, cuts into vertical slices and sorts every slice by y center
+     */
+    private static void strSort(Integer[] order, int from, int to, Center cx, Center cy) {
+        int n = to - from;
+        Arrays.sort(order, from, to, Comparator.comparingDouble(cx::of));
+        int nodes = (n + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int slices = (int) Math.ceil(Math.sqrt(nodes));
+        int sliceSize = slices * NODE_CAPACITY;
+        for (int s = from; s < to; s += sliceSize) {
+            Arrays.sort(order, s, Math.min(s + sliceSize, to), Comparator.comparingDouble(cy::of));
+        }
+    }
+
+    /**
+     * Groups entries of an already STR sorted level into parent nodes, the parents are STR sorted as well
+     */
+    private static Level pack(Level below) {
+        int n = below.size();
+        int parents = (n + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        Level groups = new Level(parents);
+        for (int p = 0; p < parents; p++) {
+            int first = p * NODE_CAPACITY;
+            int count = Math.min(NODE_CAPACITY, n - first);
+            double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+            for (int i = first; i < first + count; i++) {
+                minX = Math.min(minX, below.minX[i]);
+                maxX = Math.max(maxX, below.maxX[i]);
+                minY = Math.min(minY, below.minY[i]);
+                maxY = Math.max(maxY, below.maxY[i]);
+            }
+            groups.minX[p] = minX; groups.maxX[p] = maxX; groups.minY[p] = minY; groups.maxY[p] = maxY;
+            groups.firstChild[p] = first;
+            groups.childCount[p] = count;
+        }
+        // reorder the parents, their child ranges stay valid
+        Integer[] order = new Integer[parents];
+        for (int i = 0; i < parents; i++) order[i] = i;
+        strSort(order, 0, parents, i -> (groups.minX[i] + groups.maxX[i]) / 2, i -> (groups.minY[i] + groups.maxY[i]) / 2);
+        Level sorted = new Level(parents);
+        for (int i = 0; i < parents; i++) {
+            int o = order[i];
+            sorted.minX[i] = groups.minX[o]; sorted.maxX[i] = groups.maxX[o];
+            sorted.minY[i] = groups.minY[o]; sorted.maxY[i] = groups.maxY[o];
+            sorted.firstChild[i] = groups.firstChild[o];
+            sorted.childCount[i] = groups.childCount[o];
+        }
+        return sorted;
+    }
+
+    /**
+     * Passes every element whose bounding box overlaps the rectangle to the consumer
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void query(double minX, double maxX, double minY, double maxY, Consumer<? super T> consumer) {
+        if (items.length == 0) return;
+        int top = 0;
+        Level root = levels[levels.length - 1];
+        for (int i = 0; i < root.size(); i++) {
+            stack[top++] = levels.length - 1;
+            stack[top++] = i;
+        }
+        while (top > 0) {
+            int index = stack[--top];
+            int depth = stack[--top];
+            Level l = levels[depth];
+            if (l.maxX[index] < minX || l.minX[index] > maxX || l.maxY[index] < minY || l.minY[index] > maxY) continue;
+            if (depth == 0) {
+                consumer.accept((T) items[index]);
+                continue;
+            }
+            int first = l.firstChild[index];
+            for (int c = first; c < first + l.childCount[index]; c++) {
+                stack[top++] = depth - 1;
+                stack[top++] = c;
+            }
+        }
+    }
+
+    /**
+     * @return number of stored elements
+     */
+    public int size() {
+        return items.length;
+    }
+}
@@ -0,0 +1,63 @@
+package sumo.sim.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free triple buffer handing complete objects from one writer thread to one reader thread.
+ * <p>
+ *     The writer fills {@link TripleBuffer#back()} and calls {@link TripleBuffer#publish()},
+ *     the reader always gets the latest published object from {@link TripleBuffer#latest()}.
+ *     Neither side ever waits for the other and the reader never sees an object that is still being written.
+ *     If the writer publishes several times before the reader looks, only the newest object is read.
+ * </p>
+ * <p>
+ *     The three objects are created once and reused, nothing is allocated per exchange.
+ * </p>
+ *
+ * @param <T> type of the exchanged objects
+ */
+public class TripleBuffer<T> {
+    private static final int INDEX_MASK = 3;
+    private static final int DIRTY = 4; // set if the middle buffer was published and not read yet
+
+    private final Object[] buffers = new Object[3];
+    private final AtomicInteger middle = new AtomicInteger(2);
+    private int back = 0; // writer only
+    private int front = 1; // reader only
+
+    /**
+     * @param factory creates the three buffers
+     */
+    public TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = factory.get();
+        }
+    }
+
+    /**
+     * @return the object the writer fills next
+     */
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) buffers[back];
+    }
+
+    /**
+     * Hands the filled back object to the reader and continues with another one.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | DIRTY) & INDEX_MASK;
+    }
+
+    /**
+     * @return latest published object, stays valid until the next call of this method
+     */
+    @SuppressWarnings("unchecked")
+    public T latest() {
+        if ((middle.get() & DIRTY) != 0) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+        }
+        return (T) buffers[front];
+    }
+}
@@ -0,0 +1,121 @@
+package sumo.sim.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Uniform grid over a set of points (e.g. vehicle positions), addressed by the index of the point.
+ * <p>
+ *     {@link UniformGrid#build(double[], double[], int)} sorts the point indices into cells with a counting sort,
+ *     which is linear in the number of points and does not allocate once the arrays are large enough.
+ *     Rectangle and radius queries then only look at the cells they overlap.
+ * </p>
+ */
+public class UniformGrid {
+    private static final int MAX_CELLS_PER_AXIS = 256;
+
+    private final double preferredCellSize;
+    private double cellSize;
+    private double minX;
+    private double minY;
+    private int columns;
+    private int rows;
+    private int[] cellStart = new int[1]; // cell c holds entries[cellStart[c] .. cellStart[c+1])
+    private int[] entries = new int[0]; // point indices ordered by cell
+    private int[] cellOf = new int[0]; // cell of every point
+    private double[] x = new double[0];
+    private double[] y = new double[0];
+    private int size;
+
+    /**
+     * @param cellSize edge length of a cell in m, grows if the points cover a very large area
+     */
+    public UniformGrid(double cellSize) {
+        this.preferredCellSize = cellSize;
+    }
+
+    /**
+     * Rebuilds the grid. The coordinate arrays are referenced, not copied, and must not change until the next build.
+     * @param x x coordinates
+     * @param y y coordinates
+     * @param n number of points (prefix of the arrays)
+     */
+    public void build(double[] x, double[] y, int n) {
+        this.x = x;
+        this.y = y;
+        this.size = n;
+        double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        if (n == 0) {
+            minX = maxX = minY = maxY = 0;
+        }
+        double extent = Math.max(maxX - minX, maxY - minY);
+        this.cellSize = Math.max(preferredCellSize, extent / MAX_CELLS_PER_AXIS);
+        this.minX = minX;
+        this.minY = minY;
+        this.columns = (int) ((maxX - minX) / cellSize) + 1;
+        this.rows = (int) ((maxY - minY) / cellSize) + 1;
+
+        int cells = columns * rows;
+        if (cellStart.length < cells + 1) cellStart = new int[cells + 1];
+        Arrays.fill(cellStart, 0, cells + 1, 0);
+        if (entries.length < n) {
+            entries = new int[Math.max(n, entries.length * 2)];
+            cellOf = new int[entries.length];
+        }
+        // count, prefix sum (end of every cell), then place backwards -> cellStart[c] becomes the start of cell c
+        for (int i = 0; i < n; i++) {
+            int c = cell(x[i], y[i]);
+            cellOf[i] = c;
+            cellStart[c]++;
+        }
+        for (int c = 1; c < cells; c++) cellStart[c] += cellStart[c - 1];
+        cellStart[cells] = n;
+        for (int i = n - 1; i >= 0; i--) {
+            entries[--cellStart[cellOf[i]]] = i;
+        }
+    }
+
+    private int cell(double px, double py) {
+        int c = Math.clamp((int) ((px - minX) / cellSize), 0, columns - 1);
+        int r = Math.clamp((int) ((py - minY) / cellSize), 0, rows - 1);
+        return r * columns + c;
+    }
+
+    /**
+     * Passes the index of every point inside the rectangle to the consumer
+     */
+    public void query(double minX, double maxX, double minY, double maxY, IntConsumer consumer) {
+        if (size == 0 || maxX < this.minX || maxY < this.minY) return;
+        int c0 = Math.clamp((int) Math.floor((minX - this.minX) / cellSize), 0, columns - 1);
+        int c1 = Math.clamp((int) Math.floor((maxX - this.minX) / cellSize), 0, columns - 1);
+        int r0 = Math.clamp((int) Math.floor((minY - this.minY) / cellSize), 0, rows - 1);
+        int r1 = Math.clamp((int) Math.floor((maxY - this.minY) / cellSize), 0, rows - 1);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * columns + c;
+                for (int e = cellStart[cell]; e < cellStart[cell + 1]; e++) {
+                    int i = entries[e];
+                    if (x[i] >= minX && x[i] <= maxX && y[i] >= minY && y[i] <= maxY) consumer.accept(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes the index of every point within the radius to the consumer
+     */
+    public void queryRadius(double cx, double cy, double radius, IntConsumer consumer) {
+        double radiusSq = radius * radius;
+        query(cx - radius, cx + radius, cy - radius, cy + radius, i -> {
+            double dx = x[i] - cx;
+            double dy = y[i] - cy;
+            if (dx * dx + dy * dy <= radiusSq) consumer.accept(i);
+        });
+    }
+}